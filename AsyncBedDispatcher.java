@@ -0,0 +1,275 @@
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Observer that decouples BedManager from slow observers (e.g. file logging).
+ * Events are copied into a bounded ring buffer and a dedicated consumer thread
+ * drains them in batches to the registered downstream observers.
+ */
+public class AsyncBedDispatcher implements BedObserver {
+    private static final Ward[] WARDS = Ward.values();
+    private static final int NOT_PENDING = -1;
+    private static final LatencyHistogram LAG = MetricsRegistry.INSTANCE.histogram("beds.dispatcher.lag");
+
+    private final List<BedObserver> observers = new CopyOnWriteArrayList<>();
+    private final BackPressurePolicy policy;
+    private final int batchSize;
+
+    // Ring buffer stored as parallel primitive arrays to avoid per-event objects
+    private final int[] wardOrdinals;
+    private final int[] freeBeds;
+    private final int[] totalBeds;
+    private final long[] enqueuedAt;
+    private final int[] pendingSlot;
+    private int head;
+    private int count;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Thread consumer;
+    private volatile boolean running = true;
+
+    // Metrics; counters are written under the lock, lag values by the consumer only
+    private volatile long published;
+    private volatile long dropped;
+    private volatile long coalesced;
+    private volatile long dispatched;
+    private volatile long batches;
+    private volatile int maxQueueDepth;
+    private volatile long lastDispatchLagNanos;
+    private volatile long maxDispatchLagNanos;
+    private volatile long totalDispatchLagNanos;
+
+    public AsyncBedDispatcher(int capacity, int batchSize, BackPressurePolicy policy) {
+        if (capacity < WARDS.length) {
+            throw new IllegalArgumentException("Capacity must be at least " + WARDS.length);
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+
+        this.policy = policy;
+        this.batchSize = batchSize;
+        this.wardOrdinals = new int[capacity];
+        this.freeBeds = new int[capacity];
+        this.totalBeds = new int[capacity];
+        this.enqueuedAt = new long[capacity];
+        this.pendingSlot = new int[WARDS.length];
+        Arrays.fill(pendingSlot, NOT_PENDING);
+
+        this.consumer = new Thread(this::drainLoop, "bed-event-dispatcher");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    public void registerObserver(BedObserver observer) {
+        observers.add(observer);
+    }
+
+    public void removeObserver(BedObserver observer) {
+        observers.remove(observer);
+    }
+
+    @Override
+    public void onBedStatusChanged(Ward ward, int freeBeds, int totalBeds) {
+        long now = System.nanoTime();
+        boolean deliverInline = false;
+        lock.lock();
+        try {
+            if (!running) {
+                // After shutdown nothing drains the queue, so deliver inline rather than lose the event
+                deliverInline = true;
+                return;
+            }
+
+            if (policy == BackPressurePolicy.COALESCE_PER_WARD) {
+                int slot = pendingSlot[ward.ordinal()];
+                if (slot != NOT_PENDING) {
+                    // Status is absolute, so the newer event fully supersedes the queued one
+                    this.freeBeds[slot] = freeBeds;
+                    this.totalBeds[slot] = totalBeds;
+                    coalesced++;
+                    published++;
+                    return;
+                }
+            }
+
+            while (count == wardOrdinals.length) {
+                if (policy == BackPressurePolicy.DROP_OLDEST) {
+                    head = (head + 1) % wardOrdinals.length;
+                    count--;
+                    dropped++;
+                } else {
+                    notFull.await();
+                    if (!running) {
+                        // Shut down while waiting: the consumer may already have exited
+                        deliverInline = true;
+                        return;
+                    }
+                }
+            }
+
+            int slot = (head + count) % wardOrdinals.length;
+            wardOrdinals[slot] = ward.ordinal();
+            this.freeBeds[slot] = freeBeds;
+            this.totalBeds[slot] = totalBeds;
+            enqueuedAt[slot] = now;
+            if (policy == BackPressurePolicy.COALESCE_PER_WARD) {
+                pendingSlot[ward.ordinal()] = slot;
+            }
+
+            count++;
+            published++;
+            if (count > maxQueueDepth) {
+                maxQueueDepth = count;
+            }
+            notEmpty.signal();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropped++;
+        } finally {
+            lock.unlock();
+            if (deliverInline) {
+                dispatch(ward, freeBeds, totalBeds);
+            }
+        }
+    }
+
+    private void drainLoop() {
+        int[] batchWards = new int[batchSize];
+        int[] batchFree = new int[batchSize];
+        int[] batchTotal = new int[batchSize];
+        long[] batchEnqueuedAt = new long[batchSize];
+
+        while (true) {
+            int n;
+            lock.lock();
+            try {
+                while (count == 0 && running) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (count == 0) {
+                    return;
+                }
+
+                n = Math.min(count, batchSize);
+                for (int i = 0; i < n; i++) {
+                    int slot = (head + i) % wardOrdinals.length;
+                    batchWards[i] = wardOrdinals[slot];
+                    batchFree[i] = freeBeds[slot];
+                    batchTotal[i] = totalBeds[slot];
+                    batchEnqueuedAt[i] = enqueuedAt[slot];
+                    if (pendingSlot[wardOrdinals[slot]] == slot) {
+                        pendingSlot[wardOrdinals[slot]] = NOT_PENDING;
+                    }
+                }
+                head = (head + n) % wardOrdinals.length;
+                count -= n;
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            long now = System.nanoTime();
+            for (int i = 0; i < n; i++) {
+                long lag = now - batchEnqueuedAt[i];
+                LAG.record(lag);
+                lastDispatchLagNanos = lag;
+                totalDispatchLagNanos += lag;
+                if (lag > maxDispatchLagNanos) {
+                    maxDispatchLagNanos = lag;
+                }
+                dispatch(WARDS[batchWards[i]], batchFree[i], batchTotal[i]);
+            }
+            dispatched += n;
+            batches++;
+        }
+    }
+
+    private void dispatch(Ward ward, int freeBeds, int totalBeds) {
+        for (BedObserver observer : observers) {
+            try {
+                observer.onBedStatusChanged(ward, freeBeds, totalBeds);
+            } catch (RuntimeException e) {
+                System.err.println("Bed observer failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Stops accepting queued events, delivers everything already queued and
+     * waits for the consumer thread to finish.
+     */
+    public void shutdown() {
+        lock.lock();
+        try {
+            running = false;
+            notEmpty.signalAll();
+            // Producers waiting for room deliver inline instead
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public BackPressurePolicy getPolicy() {
+        return policy;
+    }
+
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    public long getPublishedCount() {
+        return published;
+    }
+
+    public long getDispatchedCount() {
+        return dispatched;
+    }
+
+    public long getDroppedCount() {
+        return dropped;
+    }
+
+    public long getCoalescedCount() {
+        return coalesced;
+    }
+
+    public long getBatchCount() {
+        return batches;
+    }
+
+    public long getLastDispatchLagNanos() {
+        return lastDispatchLagNanos;
+    }
+
+    public long getMaxDispatchLagNanos() {
+        return maxDispatchLagNanos;
+    }
+
+    public double getAverageDispatchLagNanos() {
+        long events = dispatched;
+        return events == 0 ? 0.0 : totalDispatchLagNanos / (double) events;
+    }
+}
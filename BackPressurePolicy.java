@@ -0,0 +1,12 @@
+
+/**
+ * What an asynchronous bed event queue does when producers outrun the consumer.
+ */
+public enum BackPressurePolicy {
+    /** Producer waits until the consumer frees a slot */
+    BLOCK,
+    /** Oldest queued event is overwritten by the new one */
+    DROP_OLDEST,
+    /** At most one pending event per ward; newer status replaces the queued one */
+    COALESCE_PER_WARD
+}
@@ -0,0 +1,8 @@
+
+/**
+ * Called when a queued bed request gets a bed. Runs on the thread that freed
+ * the bed (usually a discharge), so it should be quick and must not block.
+ */
+public interface BedAssignment {
+    void onBedAssigned(BedRequest request, int bedNo);
+}
@@ -1,19 +1,68 @@
 
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
+/**
+ * Per-ward bed allocation. Occupancy counters are reserved with compare-and-set,
+ * so a full ward is refused without taking a lock. Picking the bed itself
+ * holds the ward's FreeBedIndex lock for a few word operations, so concurrent
+ * allocations in one ward briefly queue there.
+ *
+ * When a ward is full, patients can wait in the ward's priority queue
+ * (requestBed). A released bed is handed straight to the first waiter, so it
+ * never becomes free for others to take; while anyone waits, tryAllocate
+ * refuses, so newcomers cannot overtake the queue.
+ *
+ * Each ward's occupancy shares one word with its running count of releases,
+ * so the compare-and-set that moves occupancy also counts the event, and
+ * allocations are releases plus occupancy. Metrics read these through
+ * getAllocatedCount and getReleasedCount rather than a counter per call.
+ */
 public class BedManager {
-    private Map<Ward, Integer> totalBeds;
-    private Map<Ward, Integer> occupiedBeds;
-    private List<BedObserver> observers;
+    public static final int NO_BED = -1;
+
+    // Low bits of a ward's state are occupied beds, the rest count releases
+    private static final int OCCUPIED_BITS = 24;
+    private static final long OCCUPIED_MASK = (1L << OCCUPIED_BITS) - 1;
+    private static final long ONE_RELEASE = 1L << OCCUPIED_BITS;
+
+    private static final LatencyHistogram NOTIFY_LATENCY = MetricsRegistry.INSTANCE.histogram("beds.notify", 64);
+    private static final Counter QUEUED = MetricsRegistry.INSTANCE.counter("beds.queued");
+    private static final Counter HANDED_OFF = MetricsRegistry.INSTANCE.counter("beds.handedOff");
+    private static final LatencyHistogram QUEUE_WAIT = MetricsRegistry.INSTANCE.histogram("beds.queueWait", 64);
+
+    // Indexed by Ward.ordinal(); capacities never change after construction
+    private final int[] totalBeds;
+    private final AtomicLongArray bedStates;
+    private final FreeBedIndex[] freeBeds;
+    private final List<BedObserver> observers;
+    private final BedWaitQueue[] waitQueues;
+    // Waiters per ward; changed under the queue's lock but read without it (see releaseBed)
+    private final AtomicIntegerArray waiting;
+    private final AtomicLong requestSequence = new AtomicLong();
 
     public BedManager(Map<Ward, Integer> totalBeds) {
-        this.totalBeds = new HashMap<>(totalBeds);
-        this.occupiedBeds = new HashMap<>();
-        this.observers = new ArrayList<>();
+        Ward[] wards = Ward.values();
+        this.totalBeds = new int[wards.length];
+        this.bedStates = new AtomicLongArray(wards.length);
+        this.freeBeds = new FreeBedIndex[wards.length];
+        this.observers = new CopyOnWriteArrayList<>();
+        this.waitQueues = new BedWaitQueue[wards.length];
+        this.waiting = new AtomicIntegerArray(wards.length);
 
-        // Initialize occupied beds to 0
-        for (Ward ward : totalBeds.keySet()) {
-            occupiedBeds.put(ward, 0);
+        // Wards without a configured capacity have no beds
+        for (Map.Entry<Ward, Integer> entry : new EnumMap<>(totalBeds).entrySet()) {
+            if (entry.getValue() > OCCUPIED_MASK) {
+                throw new IllegalArgumentException("Too many beds in " + entry.getKey() + ": " + entry.getValue());
+            }
+            this.totalBeds[entry.getKey().ordinal()] = entry.getValue();
+        }
+        for (Ward ward : wards) {
+            freeBeds[ward.ordinal()] = new FreeBedIndex(this.totalBeds[ward.ordinal()]);
+            waitQueues[ward.ordinal()] = new BedWaitQueue();
         }
     }
 
@@ -25,52 +74,309 @@ public class BedManager {
         observers.remove(observer);
     }
 
-    private void notifyObservers(Ward ward) {
-        int total = totalBeds.get(ward);
-        int occupied = occupiedBeds.get(ward);
+    private void notifyObservers(Ward ward, int occupied) {
+        int total = totalBeds[ward.ordinal()];
         int free = total - occupied;
 
+        long start = NOTIFY_LATENCY.startTimer();
         for (BedObserver observer : observers) {
             observer.onBedStatusChanged(ward, free, total);
         }
+        NOTIFY_LATENCY.stopTimer(start);
+    }
+
+    /**
+     * Claims the lowest free bed without throwing; returns NO_BED when the ward is
+     * full or patients are queued for it. The occupancy counter is reserved with
+     * compare-and-set first, so concurrent callers can never over-allocate and
+     * the bed lookup below always succeeds.
+     */
+    public int tryAllocate(Ward ward) {
+        int index = ward.ordinal();
+        int bedNo = waiting.get(index) > 0 ? NO_BED : claimFreeBed(index);
+        if (bedNo == NO_BED) {
+            return NO_BED;
+        }
+
+        notifyObservers(ward, occupied(bedStates.get(index)));
+        return bedNo;
+    }
+
+    private int claimFreeBed(int index) {
+        if (!reserve(index)) {
+            return NO_BED;
+        }
+        return freeBeds[index].allocate() + 1;
     }
 
-    public void allocateBed(Ward ward) throws BedUnavailableException {
-        int total = totalBeds.get(ward);
-        int occupied = occupiedBeds.get(ward);
+    /**
+     * Claims a bed now if one is free and nobody is queued, otherwise queues the
+     * request by triage level and arrival. The listener is called once a bed is
+     * assigned: before this method returns if one was free, otherwise on the
+     * thread whose releaseBed frees it.
+     */
+    public BedRequest requestBed(Ward ward, Triage triage, BedAssignment listener) {
+        int index = ward.ordinal();
+        BedRequest request = new BedRequest(this, ward, triage, requestSequence.getAndIncrement(),
+                QUEUE_WAIT.startTimer(), listener);
+        BedWaitQueue queue = waitQueues[index];
+        int bedNo;
+
+        synchronized (queue) {
+            // Announce the waiter before looking for a bed; releaseBed frees a bed
+            // before checking for waiters, so one of the two always sees the other
+            waiting.incrementAndGet(index);
+            bedNo = queue.isEmpty() ? claimFreeBed(index) : NO_BED;
+            if (bedNo == NO_BED) {
+                queue.add(request);
+                QUEUED.increment();
+                return request;
+            }
+            waiting.decrementAndGet(index);
+            request.assign(bedNo);
+        }
+
+        notifyObservers(ward, occupied(bedStates.get(index)));
+        deliver(request, bedNo);
+        return request;
+    }
 
-        if (occupied >= total) {
+    boolean cancelRequest(BedRequest request) {
+        int index = request.getWard().ordinal();
+        synchronized (waitQueues[index]) {
+            if (!waitQueues[index].remove(request)) {
+                return false;
+            }
+            waiting.decrementAndGet(index);
+            request.markCancelled();
+            return true;
+        }
+    }
+
+    public int getWaitingCount(Ward ward) {
+        return waiting.get(ward.ordinal());
+    }
+
+    /**
+     * Requests queued for the ward, in the order they will be served.
+     */
+    public BedRequest[] getWaiting(Ward ward) {
+        BedWaitQueue queue = waitQueues[ward.ordinal()];
+        synchronized (queue) {
+            return queue.toSortedArray();
+        }
+    }
+
+    public int allocateBed(Ward ward) throws BedUnavailableException {
+        int bedNo = tryAllocate(ward);
+        if (bedNo == NO_BED) {
+            int total = totalBeds[ward.ordinal()];
             throw new BedUnavailableException(
                     "No beds available in " + ward + " ward. All " + total + " beds are occupied.");
         }
+        return bedNo;
+    }
+
+    /**
+     * Claims a specific bed, e.g. when restoring admitted patients at startup.
+     * Returns false if the bed number is out of range or already taken.
+     */
+    public boolean occupyBed(Ward ward, int bedNo) {
+        int index = ward.ordinal();
+        if (!reserve(index)) {
+            return false;
+        }
+
+        if (!freeBeds[index].claim(bedNo - 1)) {
+            bedStates.decrementAndGet(index);
+            return false;
+        }
+
+        notifyObservers(ward, occupied(bedStates.get(index)));
+        return true;
+    }
+
+    /**
+     * Frees a bed, or hands it straight to the first queued request for the ward.
+     */
+    public void releaseBed(Ward ward, int bedNo) {
+        int index = ward.ordinal();
+        if (waiting.get(index) > 0 && handOff(ward, bedNo)) {
+            return;
+        }
+
+        if (freeBeds[index].release(bedNo - 1)) {
+            int occupied = occupied(bedStates.addAndGet(index, ONE_RELEASE - 1));
+            notifyObservers(ward, occupied);
+
+            // A request may have been queued after the check above, having found
+            // no free bed before this one was released
+            if (waiting.get(index) > 0) {
+                serveWaiters(ward);
+            }
+        }
+    }
+
+    /**
+     * Applies a batch of changes to one ward as a single net delta: frees
+     * releasedBeds, then claims up to admissions beds, moving the occupancy
+     * counter with one compare-and-set and notifying observers once. As in
+     * releaseBed, freed beds go to queued requests first, and no beds are
+     * claimed while anyone waits. Returns the claimed bed numbers, which may
+     * be fewer than admissions.
+     */
+    public int[] applyBatch(Ward ward, int[] releasedBeds, int admissions) {
+        int index = ward.ordinal();
+        int[] slots = new int[Math.max(releasedBeds.length, admissions)];
+        int toFree = 0;
+        for (int bedNo : releasedBeds) {
+            if (waiting.get(index) > 0 && handOff(ward, bedNo)) {
+                continue;
+            }
+            slots[toFree++] = bedNo - 1;
+        }
+        // Beds are freed before the counter drops, so a concurrent reserve never
+        // finds capacity without a free bed behind it
+        int released = freeBeds[index].release(slots, toFree);
+
+        int total = totalBeds[index];
+        int claimed;
+        while (true) {
+            long state = bedStates.get(index);
+            int free = total - (occupied(state) - released);
+            claimed = waiting.get(index) > 0 ? 0 : Math.min(admissions, free);
+            if (bedStates.compareAndSet(index, state, state + released * (ONE_RELEASE - 1) + claimed)) {
+                break;
+            }
+        }
+        freeBeds[index].allocate(slots, claimed);
+        int[] beds = new int[claimed];
+        for (int i = 0; i < claimed; i++) {
+            beds[i] = slots[i] + 1;
+        }
+
+        if (released > 0 || claimed > 0) {
+            notifyObservers(ward, occupied(bedStates.get(index)));
+        }
+        if (released > 0 && waiting.get(index) > 0) {
+            serveWaiters(ward);
+        }
+        return beds;
+    }
+
+    /**
+     * Gives an occupied bed to the first waiter without freeing it in between.
+     */
+    private boolean handOff(Ward ward, int bedNo) {
+        int index = ward.ordinal();
+        BedWaitQueue queue = waitQueues[index];
+        BedRequest next;
+        synchronized (queue) {
+            if (queue.isEmpty() || freeBeds[index].isFree(bedNo - 1)) {
+                return false;
+            }
+            next = queue.poll();
+            waiting.decrementAndGet(index);
+            next.assign(bedNo);
+        }
 
-        occupiedBeds.put(ward, occupied + 1);
-        notifyObservers(ward);
+        // Released and allocated again: occupancy stays, the release still counts
+        bedStates.addAndGet(index, ONE_RELEASE);
+        HANDED_OFF.increment();
+        QUEUE_WAIT.stopTimer(next.getWaitTimer());
+        deliver(next, bedNo);
+        return true;
     }
 
-    public void releaseBed(Ward ward) {
-        int occupied = occupiedBeds.get(ward);
-        if (occupied > 0) {
-            occupiedBeds.put(ward, occupied - 1);
-            notifyObservers(ward);
+    private void serveWaiters(Ward ward) {
+        int index = ward.ordinal();
+        BedWaitQueue queue = waitQueues[index];
+        while (true) {
+            BedRequest next;
+            int bedNo;
+            synchronized (queue) {
+                if (queue.isEmpty()) {
+                    return;
+                }
+                bedNo = claimFreeBed(index);
+                if (bedNo == NO_BED) {
+                    return;
+                }
+                next = queue.poll();
+                waiting.decrementAndGet(index);
+                next.assign(bedNo);
+            }
+            notifyObservers(ward, occupied(bedStates.get(index)));
+            HANDED_OFF.increment();
+            QUEUE_WAIT.stopTimer(next.getWaitTimer());
+            deliver(next, bedNo);
         }
     }
 
+    private void deliver(BedRequest request, int bedNo) {
+        try {
+            request.getListener().onBedAssigned(request, bedNo);
+        } catch (RuntimeException e) {
+            // Do not strand the bed: pass it on to the next waiter or free it
+            System.out.println("Bed assignment failed for " + request.getWard() + " bed " + bedNo + ": "
+                    + e.getMessage());
+            request.markFailed();
+            releaseBed(request.getWard(), bedNo);
+        }
+    }
+
+    public boolean isBedFree(Ward ward, int bedNo) {
+        return freeBeds[ward.ordinal()].isFree(bedNo - 1);
+    }
+
+    private boolean reserve(int index) {
+        int total = totalBeds[index];
+
+        while (true) {
+            long state = bedStates.get(index);
+            if (occupied(state) >= total) {
+                return false;
+            }
+            if (bedStates.compareAndSet(index, state, state + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private static int occupied(long state) {
+        return (int) (state & OCCUPIED_MASK);
+    }
+
     public int getTotalBeds(Ward ward) {
-        return totalBeds.get(ward);
+        return totalBeds[ward.ordinal()];
     }
 
     public int getOccupiedBeds(Ward ward) {
-        return occupiedBeds.get(ward);
+        return occupied(bedStates.get(ward.ordinal()));
     }
 
     public int getFreeBeds(Ward ward) {
-        return totalBeds.get(ward) - occupiedBeds.get(ward);
+        return totalBeds[ward.ordinal()] - getOccupiedBeds(ward);
+    }
+
+    /**
+     * Beds released in the ward since startup, including beds handed straight to a waiter.
+     */
+    public long getReleasedCount(Ward ward) {
+        return bedStates.get(ward.ordinal()) >>> OCCUPIED_BITS;
+    }
+
+    /**
+     * Beds allocated in the ward since startup, by any path.
+     */
+    public long getAllocatedCount(Ward ward) {
+        long state = bedStates.get(ward.ordinal());
+        return (state >>> OCCUPIED_BITS) + occupied(state);
     }
 
     public double getOccupancyPercentage(Ward ward) {
-        int total = totalBeds.get(ward);
-        int occupied = occupiedBeds.get(ward);
+        int total = totalBeds[ward.ordinal()];
+        int occupied = getOccupiedBeds(ward);
         return (occupied / (double) total) * 100.0;
     }
 }
\ No newline at end of file
@@ -0,0 +1,69 @@
+
+/**
+ * Where ClusterNode.allocateBed found a bed. For a local bed only the bed is
+ * claimed and the caller admits the patient; for a remote bed the other site
+ * has already admitted the patient under its own patient id, unless the
+ * outcome is unknown.
+ */
+public class BedPlacement {
+    public static final int NO_PATIENT = -1;
+
+    private final String site;
+    private final boolean local;
+    private final Ward ward;
+    private final int bedNumber;
+    private final int patientId;
+    private final boolean outcomeKnown;
+
+    BedPlacement(String site, boolean local, Ward ward, int bedNumber, int patientId) {
+        this(site, local, ward, bedNumber, patientId, true);
+    }
+
+    BedPlacement(String site, boolean local, Ward ward, int bedNumber, int patientId, boolean outcomeKnown) {
+        this.site = site;
+        this.local = local;
+        this.ward = ward;
+        this.bedNumber = bedNumber;
+        this.patientId = patientId;
+        this.outcomeKnown = outcomeKnown;
+    }
+
+    /**
+     * The outcome of a remote transfer whose confirmation was sent but never
+     * answered: the other site may or may not have admitted the patient.
+     */
+    static BedPlacement unknown(String site, Ward ward, int bedNumber) {
+        return new BedPlacement(site, false, ward, bedNumber, NO_PATIENT, false);
+    }
+
+    public String getSite() {
+        return site;
+    }
+
+    public boolean isLocal() {
+        return local;
+    }
+
+    public Ward getWard() {
+        return ward;
+    }
+
+    public int getBedNumber() {
+        return bedNumber;
+    }
+
+    /**
+     * Patient id at the remote site, or NO_PATIENT for a local bed or an unknown outcome.
+     */
+    public int getPatientId() {
+        return patientId;
+    }
+
+    /**
+     * False if the other site never answered the confirmation. The patient must
+     * not be admitted anywhere else until that site has been checked.
+     */
+    public boolean isOutcomeKnown() {
+        return outcomeKnown;
+    }
+}
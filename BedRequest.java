@@ -0,0 +1,98 @@
+
+/**
+ * A patient waiting for a bed in one ward, created by BedManager.requestBed.
+ * Requests are served by triage level, then in order of arrival.
+ */
+public class BedRequest {
+    public enum State {
+        // FAILED: a bed was assigned but the listener threw, so the bed went to the next waiter
+        WAITING, ASSIGNED, CANCELLED, FAILED
+    }
+
+    private final BedManager owner;
+    private final Ward ward;
+    private final Triage triage;
+    private final long sequence;
+    private final long waitTimer;
+    private final BedAssignment listener;
+    private volatile State state = State.WAITING;
+    private volatile int bedNumber = BedManager.NO_BED;
+
+    // Position in the ward's BedWaitQueue heap, -1 when not queued; guarded by the queue
+    int heapIndex = -1;
+
+    BedRequest(BedManager owner, Ward ward, Triage triage, long sequence, long waitTimer, BedAssignment listener) {
+        this.owner = owner;
+        this.ward = ward;
+        this.triage = triage;
+        this.sequence = sequence;
+        this.waitTimer = waitTimer;
+        this.listener = listener;
+    }
+
+    /**
+     * Leaves the queue; returns false if a bed was already assigned (or the
+     * request was cancelled before).
+     */
+    public boolean cancel() {
+        return owner.cancelRequest(this);
+    }
+
+    public Ward getWard() {
+        return ward;
+    }
+
+    public Triage getTriage() {
+        return triage;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * The assigned bed, or BedManager.NO_BED while waiting.
+     */
+    public int getBedNumber() {
+        return bedNumber;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * LatencyHistogram timer started when the request was made.
+     */
+    long getWaitTimer() {
+        return waitTimer;
+    }
+
+    BedAssignment getListener() {
+        return listener;
+    }
+
+    void assign(int bedNo) {
+        bedNumber = bedNo;
+        state = State.ASSIGNED;
+    }
+
+    void markCancelled() {
+        state = State.CANCELLED;
+    }
+
+    void markFailed() {
+        bedNumber = BedManager.NO_BED;
+        state = State.FAILED;
+    }
+
+    /**
+     * Queue order: more urgent first, then first come first served.
+     */
+    boolean isBefore(BedRequest other) {
+        if (triage != other.triage) {
+            return triage.ordinal() < other.triage.ordinal();
+        }
+        return sequence < other.sequence;
+    }
+}
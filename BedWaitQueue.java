@@ -0,0 +1,116 @@
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of one ward's waiting BedRequests, ordered by triage level
+ * then arrival. Each request knows its heap slot, so cancelling is O(log n)
+ * like add and poll. Not thread-safe: BedManager locks the queue around every call.
+ */
+public class BedWaitQueue {
+    private BedRequest[] heap = new BedRequest[16];
+    private int size;
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void add(BedRequest request) {
+        if (size == heap.length) {
+            heap = Arrays.copyOf(heap, size * 2);
+        }
+        place(request, size);
+        size++;
+        siftUp(request.heapIndex);
+    }
+
+    /**
+     * Removes and returns the most urgent, longest waiting request, or null.
+     */
+    public BedRequest poll() {
+        if (size == 0) {
+            return null;
+        }
+        BedRequest head = heap[0];
+        removeAt(0);
+        return head;
+    }
+
+    /**
+     * Removes a request wherever it is; returns false if it is not queued here.
+     */
+    public boolean remove(BedRequest request) {
+        int index = request.heapIndex;
+        if (index < 0 || index >= size || heap[index] != request) {
+            return false;
+        }
+        removeAt(index);
+        return true;
+    }
+
+    /**
+     * Waiting requests in the order they will be served.
+     */
+    public BedRequest[] toSortedArray() {
+        BedRequest[] sorted = Arrays.copyOf(heap, size);
+        Arrays.sort(sorted, (a, b) -> a == b ? 0 : a.isBefore(b) ? -1 : 1);
+        return sorted;
+    }
+
+    private void removeAt(int index) {
+        BedRequest removed = heap[index];
+        removed.heapIndex = -1;
+        size--;
+        if (index == size) {
+            heap[size] = null;
+            return;
+        }
+
+        BedRequest last = heap[size];
+        heap[size] = null;
+        place(last, index);
+        siftDown(index);
+        if (heap[index] == last) {
+            siftUp(index);
+        }
+    }
+
+    private void siftUp(int index) {
+        BedRequest request = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!request.isBefore(heap[parent])) {
+                break;
+            }
+            place(heap[parent], index);
+            index = parent;
+        }
+        place(request, index);
+    }
+
+    private void siftDown(int index) {
+        BedRequest request = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if (right < size && heap[right].isBefore(heap[child])) {
+                child = right;
+            }
+            if (!heap[child].isBefore(request)) {
+                break;
+            }
+            place(heap[child], index);
+            index = child;
+        }
+        place(request, index);
+    }
+
+    private void place(BedRequest request, int index) {
+        heap[index] = request;
+        request.heapIndex = index;
+    }
+}
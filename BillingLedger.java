@@ -0,0 +1,171 @@
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Appends billing records to billing.txt from a single long-lived writer thread.
+ * Discharges only enqueue a record; the writer drains the bounded queue in
+ * batches, formats each batch into one reused StringBuilder and the appender's
+ * direct buffer, and makes it durable per batch or per record.
+ * Everything queued is written before close() returns or the JVM exits.
+ */
+public class BillingLedger implements Closeable {
+    private static final int MAX_BATCH = 256;
+    private static final long SUBMIT_TIMEOUT_MILLIS = 2000;
+
+    private final BlockingQueue<BillingRecord> queue;
+    private final BufferedLogAppender appender;
+    private final Thread writer;
+    private final Thread shutdownHook;
+    // Submitters hold the read lock from the accepting check until their record is
+    // queued; close() takes the write lock to stop accepting, so none slips in after
+    private final ReadWriteLock acceptLock = new ReentrantReadWriteLock();
+    private volatile boolean accepting = true;
+    private volatile long written;
+
+    public BillingLedger(Path file, int queueCapacity, FsyncPolicy durability) throws IOException {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        // The writer commits after each batch; the appender's own timer is only a backstop
+        this.appender = new BufferedLogAppender(file, 64 * 1024, Integer.MAX_VALUE, 1000,
+                durability, 0, 0, false);
+
+        this.writer = new Thread(this::writeLoop, "billing-ledger-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+
+        this.shutdownHook = new Thread(this::close, "billing-ledger-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Queues a record, waiting up to two seconds if the queue is full. Returns
+     * false if the record was not queued: the ledger is closed or still full.
+     */
+    public boolean submit(BillingRecord record) {
+        acceptLock.readLock().lock();
+        try {
+            return accepting && queue.offer(record, SUBMIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            acceptLock.readLock().unlock();
+        }
+    }
+
+    private void writeLoop() {
+        List<BillingRecord> batch = new ArrayList<>(MAX_BATCH);
+        StringBuilder line = new StringBuilder(128);
+
+        while (accepting || !queue.isEmpty()) {
+            try {
+                BillingRecord first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            writeBatch(batch, line);
+        }
+    }
+
+    private void writeBatch(List<BillingRecord> batch, StringBuilder line) {
+        for (BillingRecord record : batch) {
+            format(record, line);
+            if (!appender.append(line)) {
+                System.err.println("Failed to write billing record for patient " + record.getPatientId());
+            }
+        }
+        appender.flush();
+        written += batch.size();
+        batch.clear();
+    }
+
+    /**
+     * Same layout as the original printf: id, name, ward, days, rate, charges.
+     */
+    private static void format(BillingRecord record, StringBuilder line) {
+        line.setLength(0);
+        line.append(record.getPatientId()).append(", ")
+                .append(record.getPatientName()).append(", ")
+                .append(record.getWard()).append(", ")
+                .append(record.getDaysStayed()).append(", ");
+        appendFixed2(line, record.getDailyRate());
+        line.append(", ");
+        appendFixed2(line, record.getCharges());
+    }
+
+    /**
+     * Appends value as printf("%.2f") does: half-up rounding of the shortest
+     * decimal form (so 1.005 gives 1.01), NaN and Infinity spelled out, and the
+     * sign kept for values that round to zero.
+     */
+    private static void appendFixed2(StringBuilder sb, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            sb.append(value);
+            return;
+        }
+        if (Math.copySign(1.0, value) < 0) {
+            sb.append('-');
+        }
+        sb.append(BigDecimal.valueOf(Math.abs(value)).setScale(2, RoundingMode.HALF_UP).toPlainString());
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getWrittenCount() {
+        return written;
+    }
+
+    /**
+     * Stops accepting records, writes everything still queued and closes the file.
+     */
+    @Override
+    public void close() {
+        // No interrupt: it would close the FileChannel mid-write. The writer polls
+        // with a timeout and exits once the queue is empty. Waits for submits in
+        // progress, so nothing is queued after the writer's last drain.
+        acceptLock.writeLock().lock();
+        try {
+            accepting = false;
+        } finally {
+            acceptLock.writeLock().unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Records left behind if the writer stopped early
+        List<BillingRecord> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            writeBatch(remaining, new StringBuilder(128));
+        }
+        appender.close();
+
+        if (Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // JVM is already shutting down; the hook is running or has run
+            }
+        }
+    }
+}
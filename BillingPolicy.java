@@ -3,4 +3,12 @@
 public interface BillingPolicy {
     double computeTotal(double dailyRate, long daysStayed);
     String getPolicyName();
+
+    /**
+     * Patient-aware variant used by BillingService, for policies whose rules
+     * depend on ward or age. Defaults to the rate/days calculation.
+     */
+    default double computeTotal(Patient patient, double dailyRate, long daysStayed) {
+        return computeTotal(dailyRate, daysStayed);
+    }
 }
\ No newline at end of file
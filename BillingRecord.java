@@ -0,0 +1,46 @@
+
+/**
+ * One line of billing.txt, captured at discharge.
+ */
+public class BillingRecord {
+    private final int patientId;
+    private final String patientName;
+    private final Ward ward;
+    private final long daysStayed;
+    private final double dailyRate;
+    private final double charges;
+
+    public BillingRecord(int patientId, String patientName, Ward ward, long daysStayed,
+                         double dailyRate, double charges) {
+        this.patientId = patientId;
+        this.patientName = patientName;
+        this.ward = ward;
+        this.daysStayed = daysStayed;
+        this.dailyRate = dailyRate;
+        this.charges = charges;
+    }
+
+    public int getPatientId() {
+        return patientId;
+    }
+
+    public String getPatientName() {
+        return patientName;
+    }
+
+    public Ward getWard() {
+        return ward;
+    }
+
+    public long getDaysStayed() {
+        return daysStayed;
+    }
+
+    public double getDailyRate() {
+        return dailyRate;
+    }
+
+    public double getCharges() {
+        return charges;
+    }
+}
@@ -1,26 +1,77 @@
 
+import java.util.*;
+import java.util.stream.IntStream;
 
 public abstract class BillingService implements Service {
+    // Below this many patients the fork-join overhead outweighs the gain
+    private static final int PARALLEL_THRESHOLD = 10_000;
+
+    private static final Counter BILLED = MetricsRegistry.INSTANCE.counter("billing.patients");
+    private static final LatencyHistogram SINGLE_LATENCY = MetricsRegistry.INSTANCE.histogram("billing.calculate", 64);
+    private static final LatencyHistogram BATCH_LATENCY = MetricsRegistry.INSTANCE.histogram("billing.batch");
 
     /**
      * Template method pattern - final method that uses hook methods
      */
     public final double calculateCharges(Patient patient) {
+        return calculateCharges(patient, getDailyRate(patient.getWard()));
+    }
+
+    /**
+     * calculateCharges at a daily rate the caller has already looked up, so the
+     * rate it records alongside the charges is the one charged.
+     */
+    public final double calculateCharges(Patient patient, double dailyRate) {
+        long start = SINGLE_LATENCY.startTimer();
         validatePatient(patient);
 
-        double dailyRate = getDailyRate(patient.getWard());
         long daysStayed = patient.getStayLengthInDays();
 
         BillingPolicy policy = selectPolicy(patient);
 
-        return policy.computeTotal(dailyRate, daysStayed);
+        double charges = policy.computeTotal(patient, dailyRate, daysStayed);
+        SINGLE_LATENCY.stopTimer(start);
+        return charges;
+    }
+
+    /**
+     * Batch variant of calculateCharges for bulk runs. result[i] is the charge for
+     * the i-th patient in iteration order. Daily rates are resolved once per ward
+     * and large batches run on the common fork-join pool. Fails like
+     * calculateCharges if any patient is invalid.
+     */
+    public final double[] calculateCharges(Collection<Patient> patients) {
+        long start = System.nanoTime();
+        Patient[] batch = patients.toArray(new Patient[0]);
+        int n = batch.length;
+        boolean parallel = n >= PARALLEL_THRESHOLD;
+
+        Ward[] wards = Ward.values();
+        double[] dailyRates = new double[wards.length];
+        for (Ward ward : wards) {
+            dailyRates[ward.ordinal()] = getDailyRate(ward);
+        }
+
+        // One pass: each patient's policy is looked up directly, so there is
+        // nothing to gain from grouping patients by ward and policy first
+        double[] charges = new double[n];
+        IntStream indexes = IntStream.range(0, n);
+        (parallel ? indexes.parallel() : indexes).forEach(i -> {
+            Patient patient = batch[i];
+            validatePatient(patient);
+            charges[i] = selectPolicy(patient).computeTotal(patient, dailyRates[patient.getWard().ordinal()],
+                    patient.getStayLengthInDays());
+        });
+        BILLED.add(n);
+        BATCH_LATENCY.recordSince(start);
+        return charges;
     }
 
     /**
      * Hook method - validate patient state
      */
     protected void validatePatient(Patient patient) {
-        if (patient.getAdmitDate() == null) {
+        if (patient.getAdmitEpochDay() == Patient.NO_DATE) {
             throw new InvalidPatientStateException(
                     "Cannot calculate billing: Patient has no admission date");
         }
@@ -0,0 +1,229 @@
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived append-only text log backed by a FileChannel and a reusable
+ * direct buffer. Lines are group-committed: the buffer is written out every
+ * N records or every T milliseconds, whichever comes first. The file is rotated
+ * to name.1, name.2, ... once it exceeds the configured size.
+ */
+public class BufferedLogAppender implements Closeable {
+    private static final Counter BYTES_WRITTEN = MetricsRegistry.INSTANCE.counter("file.log.bytesWritten");
+    private static final LatencyHistogram COMMIT_LATENCY = MetricsRegistry.INSTANCE.histogram("file.log.commit");
+
+    private final Path file;
+    private final ByteBuffer buffer;
+    private final int commitEveryRecords;
+    private final FsyncPolicy fsyncPolicy;
+    private final long maxFileBytes;
+    private final int maxBackups;
+    private final ScheduledExecutorService committer;
+    private final Thread shutdownHook;
+
+    private FileChannel channel;
+    private long fileSize;
+    private int pendingRecords;
+    private boolean closed;
+
+    public BufferedLogAppender(Path file, int bufferBytes, int commitEveryRecords, long commitIntervalMillis,
+                               FsyncPolicy fsyncPolicy, long maxFileBytes, int maxBackups) throws IOException {
+        this(file, bufferBytes, commitEveryRecords, commitIntervalMillis, fsyncPolicy, maxFileBytes, maxBackups, true);
+    }
+
+    /**
+     * @param closeOnShutdown false when the owner closes the appender from its own
+     *                        shutdown hook (e.g. after draining a queue into it)
+     */
+    public BufferedLogAppender(Path file, int bufferBytes, int commitEveryRecords, long commitIntervalMillis,
+                               FsyncPolicy fsyncPolicy, long maxFileBytes, int maxBackups,
+                               boolean closeOnShutdown) throws IOException {
+        this.file = file;
+        this.buffer = ByteBuffer.allocateDirect(bufferBytes);
+        this.commitEveryRecords = Math.max(1, commitEveryRecords);
+        this.fsyncPolicy = fsyncPolicy;
+        this.maxFileBytes = maxFileBytes;
+        this.maxBackups = maxBackups;
+        openChannel();
+
+        this.committer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "log-committer-" + file.getFileName());
+            t.setDaemon(true);
+            return t;
+        });
+        this.committer.scheduleWithFixedDelay(this::flush, commitIntervalMillis, commitIntervalMillis,
+                TimeUnit.MILLISECONDS);
+
+        // Make sure buffered records reach the file even if the JVM exits without close()
+        if (closeOnShutdown) {
+            this.shutdownHook = new Thread(this::close, "log-shutdown-" + file.getFileName());
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        } else {
+            this.shutdownHook = null;
+        }
+    }
+
+    private void openChannel() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        fileSize = channel.size();
+    }
+
+    /**
+     * Appends one line (a newline is added). Returns false if the appender is closed
+     * or the write failed.
+     */
+    public synchronized boolean append(CharSequence line) {
+        if (closed) {
+            return false;
+        }
+
+        try {
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (Character.isHighSurrogate(c) && i + 1 < line.length()
+                        && Character.isLowSurrogate(line.charAt(i + 1))) {
+                    putCodePoint(Character.toCodePoint(c, line.charAt(++i)));
+                } else {
+                    putCodePoint(c);
+                }
+            }
+            putCodePoint('\n');
+
+            pendingRecords++;
+            if (pendingRecords >= commitEveryRecords || fsyncPolicy == FsyncPolicy.PER_RECORD) {
+                commit();
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("Failed to append to " + file + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void putCodePoint(int cp) throws IOException {
+        if (buffer.remaining() < 4) {
+            writeBuffer();
+        }
+
+        if (cp < 0x80) {
+            buffer.put((byte) cp);
+        } else if (cp < 0x800) {
+            buffer.put((byte) (0xC0 | (cp >> 6)));
+            buffer.put((byte) (0x80 | (cp & 0x3F)));
+        } else if (cp < 0x10000) {
+            buffer.put((byte) (0xE0 | (cp >> 12)));
+            buffer.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+            buffer.put((byte) (0x80 | (cp & 0x3F)));
+        } else {
+            buffer.put((byte) (0xF0 | (cp >> 18)));
+            buffer.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+            buffer.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+            buffer.put((byte) (0x80 | (cp & 0x3F)));
+        }
+    }
+
+    /**
+     * Commits buffered records to the file now.
+     */
+    public synchronized void flush() {
+        if (closed || (pendingRecords == 0 && buffer.position() == 0)) {
+            return;
+        }
+
+        try {
+            commit();
+        } catch (IOException e) {
+            System.err.println("Failed to flush " + file + ": " + e.getMessage());
+        }
+    }
+
+    private void commit() throws IOException {
+        long start = System.nanoTime();
+        writeBuffer();
+        if (fsyncPolicy != FsyncPolicy.NEVER) {
+            channel.force(false);
+        }
+        pendingRecords = 0;
+        COMMIT_LATENCY.recordSince(start);
+
+        if (maxFileBytes > 0 && fileSize >= maxFileBytes) {
+            rotate();
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        BYTES_WRITTEN.add(buffer.remaining());
+        while (buffer.hasRemaining()) {
+            fileSize += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void rotate() throws IOException {
+        channel.close();
+
+        if (maxBackups > 0) {
+            for (int i = maxBackups - 1; i >= 1; i--) {
+                Path older = backupPath(i);
+                if (Files.exists(older)) {
+                    Files.move(older, backupPath(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(file, backupPath(1), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.deleteIfExists(file);
+        }
+
+        openChannel();
+    }
+
+    private Path backupPath(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+
+    public synchronized long getFileSize() {
+        return fileSize + buffer.position();
+    }
+
+    /**
+     * Commits everything still buffered, forces it to disk and releases the file.
+     * Safe to call more than once.
+     */
+    @Override
+    public void close() {
+        committer.shutdown();
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            try {
+                writeBuffer();
+                channel.force(true);
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Failed to close " + file + ": " + e.getMessage());
+            }
+            closed = true;
+        }
+
+        if (shutdownHook != null && Thread.currentThread() != shutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // JVM is already shutting down; the hook is running or has run
+            }
+        }
+    }
+}
@@ -0,0 +1,295 @@
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Imports a batch of admit/discharge events, e.g. a feed from the registration
+ * system. Each record is checked against the patient's current state and a
+ * bad record is rejected on its own without stopping the batch. Beds are
+ * settled once per ward through BedManager.applyBatch, so observers hear of
+ * each ward once per batch instead of once per patient. Discharges are
+ * applied first: beds they free are available to the batch's admissions, which
+ * are given beds in record order.
+ *
+ * File format, one event per line ('#' starts a comment, a missing date means today):
+ * <pre>
+ * ADMIT,name,age,ward[,yyyy-MM-dd]
+ * DISCHARGE,patientId[,yyyy-MM-dd]
+ * </pre>
+ */
+public class BulkImporter {
+    private static final Counter RECORDS = MetricsRegistry.INSTANCE.counter("import.records");
+    private static final Counter REJECTED = MetricsRegistry.INSTANCE.counter("import.rejected");
+    private static final LatencyHistogram BATCH_LATENCY = MetricsRegistry.INSTANCE.histogram("import.batch");
+
+    private final PatientService service;
+    private final PatientRepository repository;
+    private final BedManager bedManager;
+
+    public BulkImporter(PatientService service, PatientRepository repository, BedManager bedManager) {
+        this.service = service;
+        this.repository = repository;
+        this.bedManager = bedManager;
+    }
+
+    public static class Rejection {
+        private final int record;
+        private final String reason;
+
+        Rejection(int record, String reason) {
+            this.record = record;
+            this.reason = reason;
+        }
+
+        public int getRecord() {
+            return record;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            return "Record " + record + ": " + reason;
+        }
+    }
+
+    public static class ImportResult {
+        private final List<Patient> admitted;
+        private final List<Patient> discharged;
+        private final List<Rejection> rejections;
+        private final double totalCharges;
+        private final int billingRecordsQueued;
+
+        ImportResult(List<Patient> admitted, List<Patient> discharged, List<Rejection> rejections,
+                     double totalCharges, int billingRecordsQueued) {
+            this.admitted = admitted;
+            this.discharged = discharged;
+            this.rejections = rejections;
+            this.totalCharges = totalCharges;
+            this.billingRecordsQueued = billingRecordsQueued;
+        }
+
+        public List<Patient> getAdmitted() {
+            return admitted;
+        }
+
+        public List<Patient> getDischarged() {
+            return discharged;
+        }
+
+        /**
+         * Rejected records in record order.
+         */
+        public List<Rejection> getRejections() {
+            return rejections;
+        }
+
+        public double getTotalCharges() {
+            return totalCharges;
+        }
+
+        public int getBillingRecordsQueued() {
+            return billingRecordsQueued;
+        }
+    }
+
+    public ImportResult importFile(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importLines(reader);
+        }
+    }
+
+    /**
+     * Imports events given as text in the file format.
+     */
+    public ImportResult importText(String text) {
+        try {
+            return importLines(new BufferedReader(new StringReader(text)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public ImportResult importEvents(List<ImportEvent> events) {
+        return apply(events, new ArrayList<>());
+    }
+
+    private ImportResult importLines(BufferedReader reader) throws IOException {
+        List<ImportEvent> events = new ArrayList<>();
+        List<Rejection> rejections = new ArrayList<>();
+        int record = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            record++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                events.add(parse(record, line));
+            } catch (IllegalArgumentException e) {
+                rejections.add(new Rejection(record, e.getMessage()));
+            }
+        }
+        return apply(events, rejections);
+    }
+
+    static ImportEvent parse(int record, String line) {
+        String[] fields = line.split(",", -1);
+        String type = fields[0].trim().toUpperCase();
+        if (type.equals("ADMIT") && (fields.length == 4 || fields.length == 5)) {
+            return ImportEvent.admit(record, fields[1].trim(), parseNumber("age", fields[2]), parseWard(fields[3]),
+                    fields.length == 5 ? parseDay(fields[4]) : HospitalClock.todayEpochDay());
+        }
+        if (type.equals("DISCHARGE") && (fields.length == 2 || fields.length == 3)) {
+            return ImportEvent.discharge(record, parseNumber("patient ID", fields[1]),
+                    fields.length == 3 ? parseDay(fields[2]) : HospitalClock.todayEpochDay());
+        }
+        throw new IllegalArgumentException("expected ADMIT,name,age,ward[,date] or DISCHARGE,patientId[,date]");
+    }
+
+    private static int parseNumber(String field, String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(field + " must be a number: " + value);
+        }
+    }
+
+    private static Ward parseWard(String value) {
+        try {
+            return Ward.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown ward: " + value);
+        }
+    }
+
+    private static int parseDay(String value) {
+        if (value.trim().isEmpty()) {
+            return HospitalClock.todayEpochDay();
+        }
+        long epochDay;
+        try {
+            epochDay = LocalDate.parse(value.trim()).toEpochDay();
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("date must be yyyy-MM-dd: " + value);
+        }
+        if (!HospitalClock.isRecordDay(epochDay)) {
+            throw new IllegalArgumentException("date is too far from today: " + value);
+        }
+        return (int) epochDay;
+    }
+
+    private ImportResult apply(List<ImportEvent> events, List<Rejection> rejections) {
+        long start = System.nanoTime();
+        int parseRejections = rejections.size();
+        Ward[] wards = Ward.values();
+        IntList[] freedBeds = new IntList[wards.length];
+        List<List<ImportEvent>> admissions = new ArrayList<>(wards.length);
+        for (int i = 0; i < wards.length; i++) {
+            freedBeds[i] = new IntList();
+            admissions.add(new ArrayList<>());
+        }
+
+        // Discharges update the repository and journal now; their beds stay
+        // occupied until the ward's batch is applied below
+        List<Patient> discharged = new ArrayList<>();
+        for (ImportEvent event : events) {
+            String problem = event.getType() == ImportEvent.Type.ADMIT
+                    ? checkAdmission(event) : checkDischarge(event);
+            if (problem != null) {
+                rejections.add(new Rejection(event.getRecord(), problem));
+            } else if (event.getType() == ImportEvent.Type.ADMIT) {
+                admissions.get(event.getWard().ordinal()).add(event);
+            } else {
+                try {
+                    Patient patient = service.dischargeKeepingBed(event.getPatientId(), event.getEpochDay());
+                    if (patient == null) {
+                        rejections.add(new Rejection(event.getRecord(), "patient " + event.getPatientId() + " not found"));
+                    } else {
+                        discharged.add(patient);
+                        freedBeds[patient.getWard().ordinal()].add(patient.getBedNumber());
+                    }
+                } catch (InvalidPatientStateException e) {
+                    rejections.add(new Rejection(event.getRecord(), e.getMessage()));
+                }
+            }
+        }
+
+        List<Patient> admitted = new ArrayList<>();
+        for (Ward ward : wards) {
+            List<ImportEvent> wardAdmissions = admissions.get(ward.ordinal());
+            IntList wardFreed = freedBeds[ward.ordinal()];
+            if (wardAdmissions.isEmpty() && wardFreed.isEmpty()) {
+                continue;
+            }
+
+            int[] beds = bedManager.applyBatch(ward, wardFreed.toArray(), wardAdmissions.size());
+            for (int i = 0; i < wardAdmissions.size(); i++) {
+                ImportEvent event = wardAdmissions.get(i);
+                if (i < beds.length) {
+                    admitted.add(service.admitToBed(event.getName(), event.getAge(), ward, beds[i],
+                            event.getEpochDay()));
+                } else {
+                    rejections.add(new Rejection(event.getRecord(), bedManager.getWaitingCount(ward) > 0
+                            ? "patients are waiting for a " + ward + " bed" : "no free bed in " + ward + " ward"));
+                }
+            }
+        }
+
+        double totalCharges = 0;
+        int billed = 0;
+        for (Patient patient : discharged) {
+            BillingRecord record = service.bill(patient);
+            totalCharges += record.getCharges();
+            if (service.submitBillingRecord(record)) {
+                billed++;
+            }
+        }
+
+        rejections.sort(Comparator.comparingInt(Rejection::getRecord));
+        RECORDS.add(events.size() + parseRejections);
+        REJECTED.add(rejections.size());
+        BATCH_LATENCY.recordSince(start);
+        return new ImportResult(admitted, discharged, rejections, totalCharges, billed);
+    }
+
+    private static String checkAdmission(ImportEvent event) {
+        if (event.getName() == null || event.getName().isEmpty()) {
+            return "name is required";
+        }
+        if (event.getWard() == null) {
+            return "ward is required";
+        }
+        if (event.getAge() < 0) {
+            return "age must not be negative: " + event.getAge();
+        }
+        return null;
+    }
+
+    private String checkDischarge(ImportEvent event) {
+        Patient patient = repository.findById(event.getPatientId());
+        if (patient == null) {
+            return "patient " + event.getPatientId() + " not found";
+        }
+        if (!patient.isAdmitted()) {
+            return "patient " + event.getPatientId() + " is already discharged";
+        }
+        if (event.getEpochDay() < patient.getAdmitEpochDay()) {
+            return "discharge date is before admission on " + patient.getAdmitDate();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,703 @@
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One site of a multi-campus bed cluster. Each site keeps sole ownership of its
+ * own BedManager; sites only tell each other how full their wards are and
+ * reserve beds on each other's behalf.
+ *
+ * Occupancy: the node observes the local BedManager, but the observer only
+ * flags the ward as changed. A publisher thread sends the changed wards' counts
+ * to every peer over TCP (a few bytes per ward) and all counts every heartbeat,
+ * so local admissions never wait on the network.
+ *
+ * Transfers: allocateBed tries sites from least to most loaded for the ward.
+ * A remote bed is taken in two phases: RESERVE makes the remote site claim a bed
+ * and hold it for a few seconds, CONFIRM hands over the patient's details and
+ * the remote site admits the patient into the held bed. Reservations that are
+ * never confirmed are released when they expire. CONFIRM is idempotent by
+ * reservation token: the site remembers what each token admitted, so a
+ * CONFIRM whose reply was lost can be sent again and gets the same answer.
+ *
+ * Every site connects to every peer it is given, so peers are listed on both
+ * sides: site A with --peers B, site B with --peers A.
+ */
+public class ClusterNode implements BedObserver, Closeable {
+    /**
+     * Admits a patient sent by another site into a bed already claimed for it.
+     */
+    public interface TransferHandler {
+        /**
+         * @return the patient's id at this site
+         */
+        int admitTransfer(String name, int age, Ward ward, int bedNo, int admitDay);
+    }
+
+    private static final Ward[] WARDS = Ward.values();
+    private static final long HEARTBEAT_MILLIS = 2000;
+    private static final long PUBLISH_DELAY_MILLIS = 10;
+    private static final long STALE_AFTER_MILLIS = 3 * HEARTBEAT_MILLIS;
+    private static final long RECONNECT_MILLIS = 1000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+    private static final long REQUEST_TIMEOUT_MILLIS = 1000;
+    private static final long RESERVATION_MILLIS = 5000;
+    private static final int CONFIRM_ATTEMPTS = 3;
+    private static final long CONFIRMED_KEPT_MILLIS = 10 * 60_000;
+
+    // Message types; every message is one type byte followed by its fields
+    private static final byte HELLO = 1;      // site name
+    private static final byte HELLO_ACK = 2;  // site name
+    private static final byte OCCUPANCY = 3;  // count, then (ward, occupied, total) per ward
+    private static final byte RESERVE = 4;    // request id, ward
+    private static final byte RESERVED = 5;   // request id, token, bed number
+    private static final byte CONFIRM = 6;    // request id, token, name, age, admit day
+    private static final byte CONFIRMED = 7;  // request id, patient id
+    private static final byte CANCEL = 8;     // token
+    private static final byte REFUSED = 9;    // request id
+
+    private static final Counter TRANSFERS_OUT = MetricsRegistry.INSTANCE.counter("cluster.transfers.out");
+    private static final Counter TRANSFERS_IN = MetricsRegistry.INSTANCE.counter("cluster.transfers.in");
+    private static final Counter RESERVATIONS_EXPIRED = MetricsRegistry.INSTANCE.counter("cluster.reservations.expired");
+
+    private final String siteName;
+    private final int port;
+    private final BedManager bedManager;
+    private final TransferHandler transferHandler;
+    private final List<PeerLink> links = new ArrayList<>();
+    private final Map<String, RemoteSite> remoteSites = new ConcurrentHashMap<>();
+    private final Map<Long, Reservation> reservations = new ConcurrentHashMap<>();
+    // Admissions made for CONFIRMs, by token, so a repeated CONFIRM is answered the same way
+    private final Map<Long, Transfer> confirmed = new ConcurrentHashMap<>();
+    private final Set<Socket> inbound = ConcurrentHashMap.newKeySet();
+    private final AtomicIntegerArray changedWards = new AtomicIntegerArray(WARDS.length);
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    private ServerSocket serverSocket;
+    private volatile Thread publisher;
+    private volatile boolean running;
+
+    public ClusterNode(String siteName, int port, List<InetSocketAddress> peers, BedManager bedManager,
+                       TransferHandler transferHandler) {
+        this.siteName = siteName;
+        this.port = port;
+        this.bedManager = bedManager;
+        this.transferHandler = transferHandler;
+        for (InetSocketAddress peer : peers) {
+            links.add(new PeerLink(peer));
+        }
+    }
+
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port);
+        running = true;
+        publisher = startThread(this::publishLoop, "cluster-publish");
+        bedManager.registerObserver(this);
+
+        startThread(this::acceptLoop, "cluster-accept");
+        for (PeerLink link : links) {
+            startThread(link::connectLoop, "cluster-link-" + link.address.getPort());
+        }
+    }
+
+    private static Thread startThread(Runnable task, String name) {
+        Thread t = new Thread(task, name);
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    public String getSiteName() {
+        return siteName;
+    }
+
+    public int getPort() {
+        return serverSocket != null ? serverSocket.getLocalPort() : port;
+    }
+
+    @Override
+    public void onBedStatusChanged(Ward ward, int freeBeds, int totalBeds) {
+        // Runs on the allocating thread: flag only, the publisher reads the counts.
+        // Only the first change since the last publish wakes the publisher.
+        int index = ward.ordinal();
+        if (changedWards.get(index) == 0 && changedWards.getAndSet(index, 1) == 0) {
+            LockSupport.unpark(publisher);
+        }
+    }
+
+    /**
+     * This site first, then every peer that has reported within the last few heartbeats.
+     */
+    public List<SiteOccupancy> getSites() {
+        List<SiteOccupancy> sites = new ArrayList<>();
+        int[] occupied = new int[WARDS.length];
+        int[] total = new int[WARDS.length];
+        for (Ward ward : WARDS) {
+            occupied[ward.ordinal()] = bedManager.getOccupiedBeds(ward);
+            total[ward.ordinal()] = bedManager.getTotalBeds(ward);
+        }
+        long now = System.currentTimeMillis();
+        sites.add(new SiteOccupancy(siteName, true, occupied, total, now));
+
+        for (RemoteSite remote : remoteSites.values()) {
+            SiteOccupancy site = remote.snapshot();
+            if (now - site.getUpdatedMillis() <= STALE_AFTER_MILLIS) {
+                sites.add(site);
+            }
+        }
+        return sites;
+    }
+
+    /**
+     * Finds a bed at the least loaded site with room in the ward. A local bed is
+     * claimed without any network traffic and left for the caller to fill; a
+     * remote bed is reserved and confirmed, after which the other site has
+     * admitted the patient. Returns null if no reachable site has a free bed.
+     *
+     * Once a CONFIRM has been sent no other site is tried: if the site never
+     * answers, the placement's outcome is unknown and the caller must not
+     * admit the patient elsewhere.
+     */
+    public BedPlacement allocateBed(Ward ward, String name, int age, int admitDay) {
+        List<SiteOccupancy> sites = getSites();
+        sites.sort(Comparator.comparingDouble(site -> site.getLoad(ward)));
+
+        for (SiteOccupancy site : sites) {
+            if (site.getFreeBeds(ward) <= 0) {
+                continue;
+            }
+            if (site.isLocal()) {
+                int bedNo = bedManager.tryAllocate(ward);
+                if (bedNo != BedManager.NO_BED) {
+                    return new BedPlacement(siteName, true, ward, bedNo, BedPlacement.NO_PATIENT);
+                }
+                continue;
+            }
+
+            PeerLink link = linkTo(site.getSite());
+            BedPlacement placement = link != null ? transfer(link, ward, name, age, admitDay) : null;
+            if (placement != null) {
+                if (placement.isOutcomeKnown()) {
+                    TRANSFERS_OUT.increment();
+                }
+                return placement;
+            }
+            // Refused: the site's figures were stale or it is unreachable; try the next one
+        }
+        return null;
+    }
+
+    private PeerLink linkTo(String site) {
+        for (PeerLink link : links) {
+            if (site.equals(link.site) && link.isConnected()) {
+                return link;
+            }
+        }
+        return null;
+    }
+
+    private BedPlacement transfer(PeerLink link, Ward ward, String name, int age, int admitDay) {
+        long reserveId = nextId.getAndIncrement();
+        Reply reserved = link.request(reserveId, out -> {
+            out.writeByte(RESERVE);
+            out.writeLong(reserveId);
+            out.writeByte(ward.ordinal());
+        });
+        if (reserved == null || reserved.type != RESERVED) {
+            return null;
+        }
+
+        // From here on the peer may have admitted the patient: only a definite
+        // answer ends the transfer, so a lost reply is asked again by token
+        for (int attempt = 1; attempt <= CONFIRM_ATTEMPTS; attempt++) {
+            long confirmId = nextId.getAndIncrement();
+            Reply reply = link.request(confirmId, out -> {
+                out.writeByte(CONFIRM);
+                out.writeLong(confirmId);
+                out.writeLong(reserved.token);
+                out.writeUTF(name);
+                out.writeInt(age);
+                out.writeInt(admitDay);
+            });
+            if (reply != null && reply.type == CONFIRMED) {
+                return new BedPlacement(link.site, false, ward, reserved.bedNo, reply.patientId);
+            }
+            if (reply != null) {
+                // Refused: the reservation expired or admission failed, and the bed is free again
+                return null;
+            }
+            if (!link.isConnected()) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(RECONNECT_MILLIS));
+            }
+        }
+        System.out.println("Cluster: no answer from " + link.site + " to CONFIRM " + reserved.token
+                + "; the patient may have been admitted there");
+        return BedPlacement.unknown(link.site, ward, reserved.bedNo);
+    }
+
+    // ---------------------------------------------------------------- publishing
+
+    private void publishLoop() {
+        long nextHeartbeat = 0;
+        int[] wards = new int[WARDS.length];
+        while (running) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(HEARTBEAT_MILLIS));
+            // Let a burst of changes collect; flagged wards do not wake this thread again
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(PUBLISH_DELAY_MILLIS));
+            long now = System.currentTimeMillis();
+            expireReservations(now);
+
+            boolean heartbeat = now >= nextHeartbeat;
+            if (heartbeat) {
+                nextHeartbeat = now + HEARTBEAT_MILLIS;
+            }
+            int count = 0;
+            for (int w = 0; w < WARDS.length; w++) {
+                if (changedWards.getAndSet(w, 0) == 1 || heartbeat) {
+                    wards[w] = 1;
+                    count++;
+                } else {
+                    wards[w] = 0;
+                }
+            }
+            if (count == 0) {
+                continue;
+            }
+
+            int changed = count;
+            for (PeerLink link : links) {
+                link.sendQuietly(out -> writeOccupancy(out, wards, changed));
+            }
+        }
+    }
+
+    private void writeOccupancy(DataOutputStream out, int[] wards, int count) throws IOException {
+        out.writeByte(OCCUPANCY);
+        out.writeByte(count);
+        for (int w = 0; w < wards.length; w++) {
+            if (wards[w] == 1) {
+                out.writeByte(w);
+                out.writeInt(bedManager.getOccupiedBeds(WARDS[w]));
+                out.writeInt(bedManager.getTotalBeds(WARDS[w]));
+            }
+        }
+    }
+
+    private void expireReservations(long now) {
+        for (Iterator<Reservation> it = reservations.values().iterator(); it.hasNext(); ) {
+            Reservation reservation = it.next();
+            if (reservation.expiresMillis <= now && reservations.remove(reservation.token, reservation)) {
+                bedManager.releaseBed(reservation.ward, reservation.bedNo);
+                RESERVATIONS_EXPIRED.increment();
+            }
+        }
+        confirmed.values().removeIf(transfer -> transfer.keptUntilMillis <= now);
+    }
+
+    // ---------------------------------------------------------------- serving peers
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                inbound.add(socket);
+                startThread(() -> serve(socket), "cluster-peer");
+            } catch (IOException e) {
+                if (running) {
+                    System.out.println("Cluster: accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles one peer's connection: its occupancy reports and its bed requests.
+     * Only this thread writes to the socket, so replies need no locking.
+     */
+    private void serve(Socket socket) {
+        String peer = null;
+        try (Socket s = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            while (running) {
+                byte type = in.readByte();
+                switch (type) {
+                    case HELLO:
+                        peer = in.readUTF();
+                        out.writeByte(HELLO_ACK);
+                        out.writeUTF(siteName);
+                        break;
+                    case OCCUPANCY:
+                        readOccupancy(peer, in);
+                        continue;
+                    case RESERVE:
+                        reserve(in.readLong(), readWard(in), out);
+                        break;
+                    case CONFIRM:
+                        confirm(in.readLong(), in.readLong(), in.readUTF(), in.readInt(), in.readInt(), out);
+                        break;
+                    case CANCEL:
+                        cancel(in.readLong());
+                        continue;
+                    default:
+                        throw new IOException("Unknown message type " + type);
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            if (running && peer != null) {
+                System.out.println("Cluster: lost connection from " + peer
+                        + (e.getMessage() != null ? ": " + e.getMessage() : ""));
+            }
+        } finally {
+            inbound.remove(socket);
+        }
+    }
+
+    private void readOccupancy(String peer, DataInputStream in) throws IOException {
+        if (peer == null) {
+            throw new IOException("Occupancy before HELLO");
+        }
+        int count = in.readByte();
+        if (count < 0 || count > WARDS.length) {
+            throw new IOException("Bad ward count " + count + " from " + peer);
+        }
+        int[] wards = new int[count];
+        int[] occupied = new int[count];
+        int[] total = new int[count];
+        for (int i = 0; i < count; i++) {
+            wards[i] = readWard(in).ordinal();
+            occupied[i] = in.readInt();
+            total[i] = in.readInt();
+        }
+
+        RemoteSite remote = remoteSites.computeIfAbsent(peer, RemoteSite::new);
+        synchronized (remote) {
+            for (int i = 0; i < count; i++) {
+                remote.occupied[wards[i]] = occupied[i];
+                remote.total[wards[i]] = total[i];
+            }
+            remote.updatedMillis = System.currentTimeMillis();
+        }
+    }
+
+    private static Ward readWard(DataInputStream in) throws IOException {
+        int ordinal = in.readByte();
+        if (ordinal < 0 || ordinal >= WARDS.length) {
+            throw new IOException("Bad ward " + ordinal);
+        }
+        return WARDS[ordinal];
+    }
+
+    private void reserve(long requestId, Ward ward, DataOutputStream out) throws IOException {
+        int bedNo = bedManager.tryAllocate(ward);
+        if (bedNo == BedManager.NO_BED) {
+            out.writeByte(REFUSED);
+            out.writeLong(requestId);
+            return;
+        }
+
+        long token = nextId.getAndIncrement();
+        reservations.put(token, new Reservation(token, ward, bedNo, System.currentTimeMillis() + RESERVATION_MILLIS));
+        out.writeByte(RESERVED);
+        out.writeLong(requestId);
+        out.writeLong(token);
+        out.writeInt(bedNo);
+    }
+
+    private void confirm(long requestId, long token, String name, int age, int admitDay, DataOutputStream out)
+            throws IOException {
+        Transfer transfer = admitReserved(token, name, age, admitDay);
+        if (transfer == null) {
+            out.writeByte(REFUSED);
+            out.writeLong(requestId);
+            return;
+        }
+        out.writeByte(CONFIRMED);
+        out.writeLong(requestId);
+        out.writeInt(transfer.patientId);
+    }
+
+    /**
+     * Admits the patient into the token's bed, or returns the earlier admission
+     * for a repeated token; null if the token holds no bed. Synchronized so a
+     * retry arriving on another connection cannot pass a CONFIRM still admitting.
+     */
+    private synchronized Transfer admitReserved(long token, String name, int age, int admitDay) {
+        Transfer done = confirmed.get(token);
+        if (done != null) {
+            return done;
+        }
+        Reservation reservation = reservations.remove(token);
+        if (reservation == null) {
+            return null;
+        }
+        try {
+            int patientId = transferHandler.admitTransfer(name, age, reservation.ward, reservation.bedNo, admitDay);
+            Transfer transfer = new Transfer(patientId, System.currentTimeMillis() + CONFIRMED_KEPT_MILLIS);
+            confirmed.put(token, transfer);
+            TRANSFERS_IN.increment();
+            return transfer;
+        } catch (RuntimeException e) {
+            System.out.println("Cluster: could not admit transferred patient: " + e.getMessage());
+            bedManager.releaseBed(reservation.ward, reservation.bedNo);
+            return null;
+        }
+    }
+
+    private void cancel(long token) {
+        Reservation reservation = reservations.remove(token);
+        if (reservation != null) {
+            bedManager.releaseBed(reservation.ward, reservation.bedNo);
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        bedManager.removeObserver(this);
+        LockSupport.unpark(publisher);
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            // Already closed
+        }
+        for (PeerLink link : links) {
+            link.disconnect();
+        }
+        for (Socket socket : inbound) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+        // Beds held for peers would otherwise stay occupied
+        for (Reservation reservation : reservations.values()) {
+            cancel(reservation.token);
+        }
+    }
+
+    // ---------------------------------------------------------------- connections to peers
+
+    private interface Message {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Outgoing connection to one peer, reconnected whenever it drops. Requests
+     * are matched to replies by request id, so several can be in flight at once.
+     */
+    private class PeerLink {
+        final InetSocketAddress address;
+        volatile String site;
+        private final Map<Long, CompletableFuture<Reply>> pending = new ConcurrentHashMap<>();
+        private Socket socket;
+        private DataOutputStream out;
+
+        PeerLink(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        void connectLoop() {
+            while (running) {
+                try (Socket s = new Socket()) {
+                    s.connect(address, CONNECT_TIMEOUT_MILLIS);
+                    s.setTcpNoDelay(true);
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+                    synchronized (this) {
+                        socket = s;
+                        out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+                        out.writeByte(HELLO);
+                        out.writeUTF(siteName);
+                        out.flush();
+                    }
+                    readReplies(in);
+                } catch (IOException e) {
+                    // Peer not up yet or gone; retry below
+                }
+
+                synchronized (this) {
+                    socket = null;
+                    out = null;
+                }
+                for (CompletableFuture<Reply> request : pending.values()) {
+                    request.complete(null);
+                }
+                pending.clear();
+                if (running) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(RECONNECT_MILLIS));
+                }
+            }
+        }
+
+        private void readReplies(DataInputStream in) throws IOException {
+            while (running) {
+                byte type = in.readByte();
+                Reply reply = new Reply(type);
+                long requestId;
+                switch (type) {
+                    case HELLO_ACK:
+                        String previous = site;
+                        site = in.readUTF();
+                        if (previous == null) {
+                            System.out.println("Cluster: connected to site " + site + " at " + address);
+                        }
+                        continue;
+                    case RESERVED:
+                        requestId = in.readLong();
+                        reply.token = in.readLong();
+                        reply.bedNo = in.readInt();
+                        break;
+                    case CONFIRMED:
+                        requestId = in.readLong();
+                        reply.patientId = in.readInt();
+                        break;
+                    case REFUSED:
+                        requestId = in.readLong();
+                        break;
+                    default:
+                        throw new IOException("Unknown reply type " + type);
+                }
+                CompletableFuture<Reply> request = pending.remove(requestId);
+                if (request != null) {
+                    request.complete(reply);
+                }
+            }
+        }
+
+        boolean isConnected() {
+            synchronized (this) {
+                return out != null;
+            }
+        }
+
+        /**
+         * Sends a request and waits for its reply; null on timeout or a dropped connection.
+         */
+        Reply request(long requestId, Message message) {
+            CompletableFuture<Reply> reply = new CompletableFuture<>();
+            pending.put(requestId, reply);
+            try {
+                send(message);
+                return reply.get(REQUEST_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (IOException | ExecutionException | TimeoutException e) {
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } finally {
+                pending.remove(requestId);
+            }
+        }
+
+        synchronized void send(Message message) throws IOException {
+            if (out == null) {
+                throw new IOException("Not connected to " + address);
+            }
+            message.write(out);
+            out.flush();
+        }
+
+        void sendQuietly(Message message) {
+            try {
+                send(message);
+            } catch (IOException e) {
+                // The reader notices the broken connection and reconnects
+            }
+        }
+
+        synchronized void disconnect() {
+            try {
+                if (socket != null) {
+                    socket.close();
+                }
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    private static class Reply {
+        final byte type;
+        long token;
+        int bedNo;
+        int patientId;
+
+        Reply(byte type) {
+            this.type = type;
+        }
+    }
+
+    /**
+     * A bed claimed at this site for a peer, awaiting CONFIRM.
+     */
+    private static class Reservation {
+        final long token;
+        final Ward ward;
+        final int bedNo;
+        final long expiresMillis;
+
+        Reservation(long token, Ward ward, int bedNo, long expiresMillis) {
+            this.token = token;
+            this.ward = ward;
+            this.bedNo = bedNo;
+            this.expiresMillis = expiresMillis;
+        }
+    }
+
+    /**
+     * A patient admitted for a CONFIRM, remembered for repeats of it.
+     */
+    private static class Transfer {
+        final int patientId;
+        final long keptUntilMillis;
+
+        Transfer(int patientId, long keptUntilMillis) {
+            this.patientId = patientId;
+            this.keptUntilMillis = keptUntilMillis;
+        }
+    }
+
+    /**
+     * Latest counts reported by one peer; guarded by its own monitor.
+     */
+    private static class RemoteSite {
+        final String name;
+        final int[] occupied = new int[WARDS.length];
+        final int[] total = new int[WARDS.length];
+        long updatedMillis;
+
+        RemoteSite(String name) {
+            this.name = name;
+        }
+
+        synchronized SiteOccupancy snapshot() {
+            return new SiteOccupancy(name, false, occupied.clone(), total.clone(), updatedMillis);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic event counter. Backed by a LongAdder, so concurrent increments
+ * land in separate cells instead of contending on one field. An increment is
+ * still an atomic add, 10-15 ns on the benchmark machine, so per-operation hot
+ * paths count with state they already update instead (see BedManager).
+ */
+public class Counter {
+    private final String name;
+    private final LongAdder count = new LongAdder();
+
+    Counter(String name) {
+        this.name = name;
+    }
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void add(long amount) {
+        count.add(amount);
+    }
+
+    public long get() {
+        return count.sum();
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,70 @@
+
+import java.util.Arrays;
+
+/**
+ * Binary indexed tree over long values: point updates and prefix sums in
+ * O(log n). Grows on demand; indexes are 0-based.
+ */
+public class FenwickTree {
+    private long[] tree;
+    private long[] values;
+
+    public FenwickTree(int initialCapacity) {
+        this.tree = new long[Math.max(1, initialCapacity) + 1];
+        this.values = new long[Math.max(1, initialCapacity)];
+    }
+
+    public void add(int index, long delta) {
+        if (index >= values.length) {
+            grow(index + 1);
+        }
+        values[index] += delta;
+        for (int i = index + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * Sum of values[0..index], inclusive. Indexes past the end include every value.
+     */
+    public long prefixSum(int index) {
+        long sum = 0;
+        for (int i = Math.min(index + 1, tree.length - 1); i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Sum of values[from..to], inclusive.
+     */
+    public long rangeSum(int from, int to) {
+        if (to < from) {
+            return 0;
+        }
+        return prefixSum(to) - (from > 0 ? prefixSum(from - 1) : 0);
+    }
+
+    public long get(int index) {
+        return index < values.length ? values[index] : 0;
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, values.length * 2);
+        values = Arrays.copyOf(values, capacity);
+
+        // Rebuild in O(n): push each node's sum to its parent
+        tree = new long[capacity + 1];
+        for (int i = 1; i <= capacity; i++) {
+            tree[i] += values[i - 1];
+            int parent = i + (i & -i);
+            if (parent <= capacity) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+}
@@ -1,13 +1,40 @@
 
 import java.io.*;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
-public class FileBedAlert implements BedObserver {
+public class FileBedAlert implements BedObserver, Closeable {
     private static final String LOG_FILE = "bed_alerts.log";
     private static final DateTimeFormatter TIMESTAMP_FORMAT =
             DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
+    private final BufferedLogAppender appender;
+
+    // Reused per alert; alerts arrive from one dispatcher thread, but guard anyway
+    private final StringBuilder line = new StringBuilder(128);
+    private long cachedSecond = Long.MIN_VALUE;
+    private String cachedTimestamp;
+
+    public FileBedAlert() {
+        this(openDefaultAppender());
+    }
+
+    public FileBedAlert(BufferedLogAppender appender) {
+        this.appender = appender;
+    }
+
+    private static BufferedLogAppender openDefaultAppender() {
+        try {
+            // Group commit every 32 alerts or 200 ms; rotate at 10 MB keeping 5 old logs
+            return new BufferedLogAppender(Paths.get(LOG_FILE), 64 * 1024, 32, 200,
+                    FsyncPolicy.PER_BATCH, 10L * 1024 * 1024, 5);
+        } catch (IOException e) {
+            System.err.println("Failed to open bed alert log: " + e.getMessage());
+            return null;
+        }
+    }
+
     @Override
     public void onBedStatusChanged(Ward ward, int freeBeds, int totalBeds) {
         int occupied = totalBeds - freeBeds;
@@ -18,13 +45,36 @@ public class FileBedAlert implements BedObserver {
         }
     }
 
-    private void logAlert(Ward ward, int occupied, int totalBeds, double occupancyPercent) {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(LOG_FILE, true))) {
-            String timestamp = LocalDateTime.now().format(TIMESTAMP_FORMAT);
-            pw.printf("[%s] ALERT: %s ward - %d/%d beds occupied (%.1f%%)%n",
-                    timestamp, ward, occupied, totalBeds, occupancyPercent);
-        } catch (IOException e) {
-            System.err.println("Failed to write bed alert to log: " + e.getMessage());
+    private synchronized void logAlert(Ward ward, int occupied, int totalBeds, double occupancyPercent) {
+        if (appender == null) {
+            return;
+        }
+
+        long tenths = Math.round(occupancyPercent * 10);
+        line.setLength(0);
+        line.append('[').append(timestamp()).append("] ALERT: ").append(ward)
+                .append(" ward - ").append(occupied).append('/').append(totalBeds)
+                .append(" beds occupied (").append(tenths / 10).append('.').append(tenths % 10).append("%)");
+
+        if (!appender.append(line)) {
+            System.err.println("Failed to write bed alert to log: " + LOG_FILE);
+        }
+    }
+
+    private String timestamp() {
+        // Alerts come in bursts, so format at most once per second
+        long second = System.currentTimeMillis() / 1000;
+        if (second != cachedSecond) {
+            cachedSecond = second;
+            cachedTimestamp = LocalDateTime.now().format(TIMESTAMP_FORMAT);
+        }
+        return cachedTimestamp;
+    }
+
+    @Override
+    public void close() {
+        if (appender != null) {
+            appender.close();
         }
     }
 }
\ No newline at end of file
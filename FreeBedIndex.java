@@ -0,0 +1,148 @@
+
+/**
+ * Tracks which physical beds of a ward are free using a hierarchical bitset.
+ * Level 0 has one bit per bed (set = free); each higher level has one bit per
+ * word of the level below (set = that word still has a free bed). Finding the
+ * lowest free bed walks one word per level, so even 250k beds take 3 steps.
+ * Every method synchronizes on the index; the work under the lock is those
+ * few word reads and writes, so it is held only briefly.
+ */
+public class FreeBedIndex {
+    private static final int WORD_SHIFT = 6;
+    private static final int WORD_MASK = 63;
+
+    private final int capacity;
+    private final long[][] levels;
+
+    public FreeBedIndex(int capacity) {
+        this.capacity = capacity;
+
+        int levelCount = 1;
+        for (int words = wordsFor(capacity); words > 1; words = wordsFor(words)) {
+            levelCount++;
+        }
+
+        this.levels = new long[levelCount][];
+        int bits = capacity;
+        for (int level = 0; level < levelCount; level++) {
+            levels[level] = new long[Math.max(1, wordsFor(bits))];
+            bits = levels[level].length;
+        }
+
+        // All beds start free
+        for (int slot = 0; slot < capacity; slot++) {
+            setFree(slot);
+        }
+    }
+
+    private static int wordsFor(int bits) {
+        return (bits + WORD_MASK) >>> WORD_SHIFT;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Claims the lowest-numbered free slot, or returns -1 if none is free.
+     */
+    public synchronized int allocate() {
+        int index = 0;
+        for (int level = levels.length - 1; level >= 0; level--) {
+            long word = levels[level][index];
+            if (word == 0) {
+                return -1;
+            }
+            index = (index << WORD_SHIFT) + Long.numberOfTrailingZeros(word);
+        }
+
+        setOccupied(index);
+        return index;
+    }
+
+    /**
+     * Claims a specific slot; returns false if it is out of range or already taken.
+     */
+    public synchronized boolean claim(int slot) {
+        if (!isFreeSlot(slot)) {
+            return false;
+        }
+        setOccupied(slot);
+        return true;
+    }
+
+    /**
+     * Returns a slot to the free list; returns false if it was not occupied.
+     */
+    public synchronized boolean release(int slot) {
+        if (slot < 0 || slot >= capacity || isFreeSlot(slot)) {
+            return false;
+        }
+        setFree(slot);
+        return true;
+    }
+
+    /**
+     * Claims up to count of the lowest free slots under one lock, writing them
+     * to slots; returns how many were claimed.
+     */
+    public synchronized int allocate(int[] slots, int count) {
+        for (int i = 0; i < count; i++) {
+            slots[i] = allocate();
+            if (slots[i] < 0) {
+                return i;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Frees the first count listed slots under one lock; returns how many were
+     * actually occupied and freed.
+     */
+    public synchronized int release(int[] slots, int count) {
+        int released = 0;
+        for (int i = 0; i < count; i++) {
+            if (release(slots[i])) {
+                released++;
+            }
+        }
+        return released;
+    }
+
+    public synchronized boolean isFree(int slot) {
+        return isFreeSlot(slot);
+    }
+
+    private boolean isFreeSlot(int slot) {
+        if (slot < 0 || slot >= capacity) {
+            return false;
+        }
+        return (levels[0][slot >>> WORD_SHIFT] & (1L << (slot & WORD_MASK))) != 0;
+    }
+
+    private void setFree(int slot) {
+        int index = slot;
+        for (long[] words : levels) {
+            int wordIndex = index >>> WORD_SHIFT;
+            boolean wasEmpty = words[wordIndex] == 0;
+            words[wordIndex] |= 1L << (index & WORD_MASK);
+            if (!wasEmpty) {
+                return;
+            }
+            index = wordIndex;
+        }
+    }
+
+    private void setOccupied(int slot) {
+        int index = slot;
+        for (long[] words : levels) {
+            int wordIndex = index >>> WORD_SHIFT;
+            words[wordIndex] &= ~(1L << (index & WORD_MASK));
+            if (words[wordIndex] != 0) {
+                return;
+            }
+            index = wordIndex;
+        }
+    }
+}
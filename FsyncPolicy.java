@@ -0,0 +1,12 @@
+
+/**
+ * How often a log writer forces written data to stable storage.
+ */
+public enum FsyncPolicy {
+    /** Leave it to the operating system */
+    NEVER,
+    /** Force once per group commit / batch */
+    PER_BATCH,
+    /** Force after every record */
+    PER_RECORD
+}
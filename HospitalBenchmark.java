@@ -0,0 +1,619 @@
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Benchmarks for the bed allocation, observer, billing and persistence hot paths.
+ * Every benchmark is warmed up first, then timed over several rounds; the best
+ * and mean cost per operation are reported. Input files are generated with
+ * PatientDataGenerator (fixed seed), so runs on different machines use identical data.
+ *
+ * Usage: java HospitalBenchmark [--rows N] [--threads N] [--rounds N] [--out file] [filter...]
+ *   filter  run only benchmarks whose name starts with one of the given prefixes
+ *           (bed, notify, billing, persist, name, census, metrics)
+ *
+ * Baseline results are kept in benchmarks/; compare a new run against them
+ * after changing any of these paths. Threaded rows are skipped when the machine
+ * has fewer CPUs than --threads. The same paths are also covered by the JMH
+ * module in jmh/ (see pom.xml), whose results are in benchmarks/jmh-baseline.txt.
+ */
+public class HospitalBenchmark {
+    private static final long SEED = 42L;
+    private static final Path DATA_DIR = Paths.get("bench-data");
+
+    // Keeps results observable so the JIT cannot drop the measured work
+    private static volatile long sink;
+
+    private final int rows;
+    private final int threads;
+    private final int rounds;
+    private final List<String> filters;
+    private final PrintStream out;
+
+    private HospitalBenchmark(int rows, int threads, int rounds, List<String> filters, PrintStream out) {
+        this.rows = rows;
+        this.threads = threads;
+        this.rounds = rounds;
+        this.filters = filters;
+        this.out = out;
+    }
+
+    /**
+     * One timed invocation; returns the number of operations it performed.
+     */
+    private interface Workload {
+        long run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = 100_000;
+        int threads = 4;
+        int rounds = 5;
+        String outFile = null;
+        List<String> filters = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--rows":
+                    rows = Integer.parseInt(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--rounds":
+                    rounds = Integer.parseInt(args[++i]);
+                    break;
+                case "--out":
+                    outFile = args[++i];
+                    break;
+                default:
+                    filters.add(args[i]);
+            }
+        }
+
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        PrintStream tee = new PrintStream(new TeeOutputStream(System.out, report), true, "UTF-8");
+        new HospitalBenchmark(rows, threads, rounds, filters, tee).runAll();
+
+        if (outFile != null) {
+            Files.write(Paths.get(outFile), report.toByteArray());
+            System.out.println("Results written to " + outFile);
+        }
+    }
+
+    private void runAll() throws Exception {
+        out.printf("# java %s (%s), %d cpu(s), rows=%d, threads=%d, rounds=%d%n",
+                System.getProperty("java.version"), System.getProperty("java.vm.name"),
+                Runtime.getRuntime().availableProcessors(), rows, threads, rounds);
+        out.printf("%-36s %14s %14s %14s%n", "benchmark", "ops/round", "best ns/op", "mean ns/op");
+
+        benchBeds();
+        benchWaitQueue();
+        benchObservers();
+        benchBilling();
+        benchPersistence();
+        benchNameSearch();
+        benchCensus();
+        benchMetrics();
+    }
+
+    private boolean selected(String name) {
+        if (filters.isEmpty()) {
+            return true;
+        }
+        for (String filter : filters) {
+            if (name.startsWith(filter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void measure(String name, Workload workload) throws Exception {
+        if (!selected(name)) {
+            return;
+        }
+
+        // Warm up for at least two invocations and half a second
+        long warmupEnd = System.nanoTime() + 500_000_000L;
+        for (int i = 0; i < 2 || System.nanoTime() < warmupEnd; i++) {
+            workload.run();
+        }
+
+        double best = Double.MAX_VALUE;
+        double total = 0;
+        long ops = 0;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            ops = workload.run();
+            double nsPerOp = (System.nanoTime() - start) / (double) ops;
+            best = Math.min(best, nsPerOp);
+            total += nsPerOp;
+        }
+        out.printf("%-36s %14d %14.1f %14.1f%n", name, ops, best, total / rounds);
+    }
+
+    /**
+     * Runs perThread on every thread at once. With fewer CPUs than threads the
+     * threads only take turns, which measures the scheduler rather than
+     * contention, so the row is skipped with a note instead.
+     */
+    private void measureThreaded(String name, Workload perThread) throws Exception {
+        String threadedName = name + ".threads" + threads;
+        int cpus = Runtime.getRuntime().availableProcessors();
+        if (threads > cpus) {
+            if (selected(threadedName)) {
+                out.printf("%-36s skipped: %d threads on %d cpu(s)%n", threadedName, threads, cpus);
+            }
+            return;
+        }
+        measure(threadedName, () -> runThreads(threads, perThread));
+    }
+
+    // ---------------------------------------------------------------- beds
+
+    private static BedManager newBedManager(int bedsPerWard) {
+        Map<Ward, Integer> capacity = new EnumMap<>(Ward.class);
+        for (Ward ward : Ward.values()) {
+            capacity.put(ward, bedsPerWard);
+        }
+        return new BedManager(capacity);
+    }
+
+    /**
+     * Fills a ward and empties it again; one op is one allocate or one release.
+     */
+    private static long allocateReleaseCycles(BedManager beds, Ward ward, int bedCount, int cycles) {
+        int[] allocated = new int[bedCount];
+        long checksum = 0;
+        for (int c = 0; c < cycles; c++) {
+            for (int i = 0; i < bedCount; i++) {
+                allocated[i] = beds.tryAllocate(ward);
+            }
+            for (int i = 0; i < bedCount; i++) {
+                checksum += allocated[i];
+                beds.releaseBed(ward, allocated[i]);
+            }
+        }
+        sink += checksum;
+        return 2L * bedCount * cycles;
+    }
+
+    private void benchBeds() throws Exception {
+        BedManager single = newBedManager(1000);
+        measure("bed.allocateRelease.single", () -> allocateReleaseCycles(single, Ward.GENERAL, 1000, 200));
+
+        // Same with a cluster node observing the ward: it must only flag changes, never block on peers
+        BedManager clustered = newBedManager(1000);
+        try (ClusterNode node = new ClusterNode("bench", 0, Collections.emptyList(), clustered,
+                (name, age, ward, bedNo, admitDay) -> BedPlacement.NO_PATIENT)) {
+            node.start();
+            measure("bed.allocateRelease.clusterNode", () -> allocateReleaseCycles(clustered, Ward.GENERAL, 1000, 200));
+        }
+
+        // The same fill and empty as single, but as two BulkImporter-style batches per cycle
+        BedManager batched = newBedManager(1000);
+        int[] none = new int[0];
+        measure("bed.applyBatch", () -> {
+            long checksum = 0;
+            for (int c = 0; c < 200; c++) {
+                int[] allocated = batched.applyBatch(Ward.GENERAL, none, 1000);
+                checksum += allocated.length;
+                batched.applyBatch(Ward.GENERAL, allocated, 0);
+            }
+            sink += checksum;
+            return 2L * 1000 * 200;
+        });
+
+        // Every thread cycles part of the same ward, so CAS and bitmap contention is real
+        BedManager shared = newBedManager(threads * 250);
+        measureThreaded("bed.allocateRelease", () -> allocateReleaseCycles(shared, Ward.ICU, 250, 200));
+
+        // Full ward: the rejection path that admissions hit under load
+        BedManager full = newBedManager(10);
+        for (int i = 0; i < 10; i++) {
+            full.tryAllocate(Ward.PRIVATE);
+        }
+        measure("bed.tryAllocate.fullWard", () -> {
+            long rejected = 0;
+            for (int i = 0; i < 1_000_000; i++) {
+                if (full.tryAllocate(Ward.PRIVATE) == BedManager.NO_BED) {
+                    rejected++;
+                }
+            }
+            sink += rejected;
+            return 1_000_000;
+        });
+    }
+
+    private static long runThreads(int count, Workload perThread) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        long[] ops = new long[count];
+        Thread[] workers = new Thread[count];
+        Exception[] failure = new Exception[1];
+
+        for (int t = 0; t < count; t++) {
+            int slot = t;
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                    ops[slot] = perThread.run();
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        long total = 0;
+        for (int t = 0; t < count; t++) {
+            workers[t].join();
+            total += ops[t];
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return total;
+    }
+
+    // ---------------------------------------------------------- wait queue
+
+    private static final int QUEUE_BEDS = 100;
+    private static final int QUEUE_WAITERS = 64;
+    private static final Triage[] TRIAGES = Triage.values();
+
+    /**
+     * Fills the ICU and queues waiters behind it; assigned beds go to the given listener.
+     */
+    private static BedManager newFullWard(Collection<Integer> held, BedAssignment listener) {
+        BedManager beds = newBedManager(QUEUE_BEDS);
+        for (int i = 0; i < QUEUE_BEDS; i++) {
+            held.add(beds.tryAllocate(Ward.ICU));
+        }
+        for (int i = 0; i < QUEUE_WAITERS; i++) {
+            beds.requestBed(Ward.ICU, TRIAGES[i % TRIAGES.length], listener);
+        }
+        return beds;
+    }
+
+    /**
+     * Sustained 100% occupancy: every discharge hands its bed to the most urgent
+     * waiter and a new patient joins the queue. One op is one release plus one request.
+     */
+    private void benchWaitQueue() throws Exception {
+        if (!selected("bed.waitQueue")) {
+            return;
+        }
+
+        Deque<Integer> held = new ArrayDeque<>();
+        BedAssignment keep = (request, bedNo) -> held.add(bedNo);
+        BedManager full = newFullWard(held, keep);
+        measure("bed.waitQueue.handOff", () -> {
+            for (int i = 0; i < 200_000; i++) {
+                full.releaseBed(Ward.ICU, held.poll());
+                full.requestBed(Ward.ICU, TRIAGES[i % TRIAGES.length], keep);
+            }
+            return 200_000;
+        });
+
+        Queue<Integer> sharedHeld = new java.util.concurrent.ConcurrentLinkedQueue<>();
+        BedAssignment keepShared = (request, bedNo) -> sharedHeld.add(bedNo);
+        BedManager shared = newFullWard(sharedHeld, keepShared);
+        measureThreaded("bed.waitQueue.handOff", () -> {
+            int ops = 0;
+            for (int i = 0; ops < 50_000; i++) {
+                Integer bedNo = sharedHeld.poll();
+                if (bedNo == null) {
+                    continue;
+                }
+                shared.releaseBed(Ward.ICU, bedNo);
+                shared.requestBed(Ward.ICU, TRIAGES[i % TRIAGES.length], keepShared);
+                ops++;
+            }
+            return ops;
+        });
+
+        // Time from releaseBed being called to the waiter's listener running
+        LatencyHistogram latency = new LatencyHistogram("bench.handOff", 1);
+        long[] releasedAt = new long[1];
+        Deque<Integer> timedHeld = new ArrayDeque<>();
+        BedAssignment timed = (request, bedNo) -> {
+            latency.recordSince(releasedAt[0]);
+            timedHeld.add(bedNo);
+        };
+        BedManager timedWard = newFullWard(timedHeld, timed);
+        for (int i = 0; i < 500_000; i++) {
+            int bedNo = timedHeld.poll();
+            releasedAt[0] = System.nanoTime();
+            timedWard.releaseBed(Ward.ICU, bedNo);
+            timedWard.requestBed(Ward.ICU, TRIAGES[i % TRIAGES.length], timed);
+        }
+        out.printf("%-36s %14s %14s %14s%n", "  release-to-listener ns", "p50 " + latency.getPercentile(50),
+                "p99 " + latency.getPercentile(99), "p99.9 " + latency.getPercentile(99.9));
+    }
+
+    // ----------------------------------------------------------- observers
+
+    private void benchObservers() throws Exception {
+        // Cycles stay below 90% occupancy, so these measure dispatch, not console output
+        BedManager console = newBedManager(1000);
+        console.registerObserver(new ConsoleBedAlert());
+        measure("notify.console.quiet", () -> allocateReleaseCycles(console, Ward.GENERAL, 800, 200));
+
+        // Cycles run the ward to 100%, so about a fifth of the events write an alert line
+        Path alertLog = Files.createTempFile("bench-alerts", ".log");
+        try (BufferedLogAppender appender = new BufferedLogAppender(alertLog, 64 * 1024, 32, 200,
+                FsyncPolicy.NEVER, 0, 0, false)) {
+            FileBedAlert fileAlert = new FileBedAlert(appender);
+            BedManager direct = newBedManager(50);
+            direct.registerObserver(fileAlert);
+            measure("notify.file.direct", () -> allocateReleaseCycles(direct, Ward.GENERAL, 50, 2000));
+
+            AsyncBedDispatcher dispatcher = new AsyncBedDispatcher(1024, 64, BackPressurePolicy.COALESCE_PER_WARD);
+            dispatcher.registerObserver(fileAlert);
+            BedManager async = newBedManager(50);
+            async.registerObserver(dispatcher);
+            measure("notify.file.async", () -> allocateReleaseCycles(async, Ward.GENERAL, 50, 2000));
+            dispatcher.shutdown();
+        } finally {
+            Files.deleteIfExists(alertLog);
+        }
+    }
+
+    // ------------------------------------------------------------- billing
+
+    private void benchBilling() throws Exception {
+        if (!selected("billing")) {
+            return;
+        }
+        List<Patient> patients = new PatientCsvLoader().load(dataFile(rows)).getPatients();
+        BillingService billing = new StandardBillingServiceImpl(RateTable::defaults);
+
+        for (BillingPolicy policy : new BillingPolicy[]{
+                StandardBillingPolicy.INSTANCE, WeekendDiscountBillingPolicy.INSTANCE}) {
+            for (Patient patient : patients) {
+                patient.setBillingPolicy(policy);
+            }
+            String label = policy == StandardBillingPolicy.INSTANCE ? "standard" : "weekend";
+
+            measure("billing." + label + ".perPatient", () -> {
+                double total = 0;
+                for (Patient patient : patients) {
+                    total += billing.calculateCharges(patient);
+                }
+                sink += (long) total;
+                return patients.size();
+            });
+            measure("billing." + label + ".batch", () -> {
+                double[] charges = billing.calculateCharges(patients);
+                sink += (long) charges[charges.length - 1];
+                return charges.length;
+            });
+        }
+    }
+
+    // --------------------------------------------------------- persistence
+
+    private void benchPersistence() throws Exception {
+        if (!selected("persist")) {
+            return;
+        }
+        Path csv = dataFile(rows);
+        Path snapshot = DATA_DIR.resolve("patients_" + rows + ".snap");
+        Path csvOut = DATA_DIR.resolve("out_" + rows + ".csv");
+        List<Patient> patients = new PatientCsvLoader().load(csv).getPatients();
+        PatientSnapshot.write(snapshot, patients);
+
+        // Startup: Main.loadPatients reads the CSV only when there is no snapshot
+        measure("persist.load.csv", () -> new PatientCsvLoader().load(csv).getPatients().size());
+        measure("persist.load.snapshot", () -> loadSnapshotIntoRepository(snapshot).size());
+
+        // Exit: Main.saveAndExit writes a snapshot when there is no journal
+        PatientRepository repository = loadSnapshotIntoRepository(snapshot);
+        measure("persist.save.snapshot", () -> {
+            PatientSnapshot.write(snapshot, repository.getColumns());
+            return repository.size();
+        });
+        measure("persist.save.csv", () -> {
+            PatientCsvWriter.write(csvOut, patients);
+            return patients.size();
+        });
+        Files.deleteIfExists(csvOut);
+    }
+
+    // ------------------------------------------------------------- metrics
+
+    /**
+     * Cost of the instrumentation itself, to compare against the paths it measures.
+     */
+    private void benchMetrics() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter counter = registry.counter("bench.counter");
+        LatencyHistogram histogram = registry.histogram("bench.histogram");
+
+        measure("metrics.counter.increment", () -> {
+            for (int i = 0; i < 10_000_000; i++) {
+                counter.increment();
+            }
+            return 10_000_000;
+        });
+        measureThreaded("metrics.counter.increment", () -> {
+            for (int i = 0; i < 2_000_000; i++) {
+                counter.increment();
+            }
+            return 2_000_000;
+        });
+        measure("metrics.histogram.record", () -> {
+            for (int i = 0; i < 10_000_000; i++) {
+                histogram.record(i & 0xFFFF);
+            }
+            return 10_000_000;
+        });
+        LatencyHistogram sampled = registry.histogram("bench.sampled", 64);
+        measure("metrics.histogram.timer.sampled64", () -> {
+            for (int i = 0; i < 10_000_000; i++) {
+                sampled.stopTimer(sampled.startTimer());
+            }
+            return 10_000_000;
+        });
+        measure("metrics.histogram.recordSince", () -> {
+            for (int i = 0; i < 10_000_000; i++) {
+                histogram.recordSince(System.nanoTime());
+            }
+            return 10_000_000;
+        });
+        sink += counter.get() + histogram.getCount();
+    }
+
+    /**
+     * The snapshot half of Main.loadPatients. Generated data is fully discharged,
+     * so every row goes straight into the column store.
+     */
+    // --------------------------------------------------------- name search
+
+    private void benchNameSearch() throws Exception {
+        if (!selected("name")) {
+            return;
+        }
+        List<Patient> patients = new PatientCsvLoader().load(dataFile(rows)).getPatients();
+        String[] names = new String[patients.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = patients.get(i).getName();
+        }
+
+        // What indexing adds to every admission and to startup
+        measure("name.index.add", () -> {
+            PatientNameIndex index = new PatientNameIndex(null);
+            for (int row = 0; row < names.length; row++) {
+                index.add(row, names[row]);
+            }
+            sink += index.getTokenCount();
+            return names.length;
+        });
+
+        // One op is one 20-row page, from cursors spread over the whole history
+        PatientRepository repository = new PatientRepository();
+        for (Patient patient : patients) {
+            repository.add(patient);
+        }
+        measureSearch("name.search.prefix", repository, "pri", false);
+        measureSearch("name.search.twoTerms", repository, "liam mur", false);
+        measureSearch("name.search.fuzzy", repository, "jhon smiht", true);
+    }
+
+    private void measureSearch(String name, PatientRepository repository, String query, boolean fuzzy)
+            throws Exception {
+        int queries = 1000;
+        long step = Math.max(1, rows / queries);
+        measure(name, () -> {
+            long found = 0;
+            for (int i = 0; i < queries; i++) {
+                found += repository.findByName(query, fuzzy, PatientFilter.ALL, i * step, 20).size();
+            }
+            sink += found;
+            return queries;
+        });
+    }
+
+    // -------------------------------------------------------------- census
+
+    private void benchCensus() throws Exception {
+        if (!selected("census")) {
+            return;
+        }
+        Path snapshot = DATA_DIR.resolve("patients_" + rows + ".snap");
+        PatientSnapshot.write(snapshot, new PatientCsvLoader().load(dataFile(rows)).getPatients());
+        PatientRepository repository = loadSnapshotIntoRepository(snapshot);
+        WardAnalytics analytics = repository.getAnalytics();
+
+        // Query days spread over the ten years PatientDataGenerator admits in; one op is one query
+        int firstDay = HospitalClock.epochDay(2015, 1, 1);
+        int days = 3650;
+        int queries = 1000;
+        measure("census.findStays.day", () -> {
+            long found = 0;
+            for (int i = 0; i < queries; i++) {
+                int day = firstDay + (int) ((long) i * days / queries);
+                found += repository.findStays(Ward.ICU, day, day, PatientPage.FIRST, 20).size();
+            }
+            sink += found;
+            return queries;
+        });
+        measure("census.findStays.quarter", () -> {
+            long found = 0;
+            for (int i = 0; i < queries; i++) {
+                int day = firstDay + (int) ((long) i * days / queries);
+                found += repository.findStays(Ward.ICU, day, day + 90, PatientPage.FIRST, 20).size();
+            }
+            sink += found;
+            return queries;
+        });
+        measure("census.patientDays.quarter", () -> {
+            long total = 0;
+            for (int i = 0; i < queries; i++) {
+                int day = firstDay + (int) ((long) i * days / queries);
+                total += analytics.getPatientDays(Ward.GENERAL, day, day + 90)
+                        + analytics.getStayCount(Ward.GENERAL, day, day + 90);
+            }
+            sink += total;
+            return queries;
+        });
+    }
+
+    private static PatientRepository loadSnapshotIntoRepository(Path file) throws IOException {
+        PatientRepository repository = new PatientRepository();
+        try (PatientSnapshot snapshot = PatientSnapshot.open(file)) {
+            for (int row = 0; row < snapshot.size(); row++) {
+                repository.addDischarged(snapshot.getId(row), snapshot.getName(row), snapshot.getAge(row),
+                        snapshot.getWard(row), snapshot.getBedNumber(row),
+                        snapshot.getAdmitEpochDay(row), snapshot.getDischargeEpochDay(row));
+            }
+        }
+        return repository;
+    }
+
+    private static Path dataFile(int rows) throws IOException {
+        Files.createDirectories(DATA_DIR);
+        Path file = DATA_DIR.resolve("patients_" + rows + ".csv");
+        if (!Files.exists(file)) {
+            System.out.println("# generating " + rows + " rows into " + file);
+            PatientDataGenerator.generate(file.toFile(), rows, 0, SEED);
+        }
+        return file;
+    }
+
+    /**
+     * Writes to the console and keeps a copy for the --out file.
+     */
+    private static class TeeOutputStream extends OutputStream {
+        private final OutputStream first;
+        private final OutputStream second;
+
+        TeeOutputStream(OutputStream first, OutputStream second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            first.write(b);
+            second.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            first.write(b, off, len);
+            second.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            first.flush();
+            second.flush();
+        }
+    }
+}
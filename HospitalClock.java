@@ -0,0 +1,136 @@
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Today's date as an epoch day, shared by everything that needs "now" for
+ * stay lengths. The value is a volatile int refreshed by a daemon thread just
+ * after local midnight, so readers never touch the system clock or allocate.
+ * The refresh also runs at least hourly, to follow clock or time zone changes.
+ */
+public final class HospitalClock {
+    private static final long MAX_REFRESH_DELAY_MILLIS = TimeUnit.HOURS.toMillis(1);
+    // Window for admission and discharge dates entered by clerks or feeds
+    private static final int MAX_RECORD_DAYS_BACK = 10 * 366;
+    private static final int MAX_RECORD_DAYS_AHEAD = 366;
+
+    private static volatile int today;
+    private static final ScheduledExecutorService refresher;
+
+    static {
+        refresh();
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "hospital-clock");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduleNextRefresh();
+    }
+
+    private HospitalClock() {
+    }
+
+    public static int todayEpochDay() {
+        return today;
+    }
+
+    public static LocalDate today() {
+        return LocalDate.ofEpochDay(today);
+    }
+
+    /**
+     * Whether an admission or discharge date is close enough to today (ten
+     * years back, one ahead) to be a real one rather than a typo. Analytics and
+     * stay indexes are sized by the span of recorded days, so a single absurd
+     * date would make them huge.
+     */
+    public static boolean isRecordDay(long epochDay) {
+        return epochDay >= today - MAX_RECORD_DAYS_BACK && epochDay <= today + MAX_RECORD_DAYS_AHEAD;
+    }
+
+    /**
+     * Re-reads the system clock now.
+     */
+    public static void refresh() {
+        today = (int) LocalDate.now().toEpochDay();
+    }
+
+    private static void scheduleNextRefresh() {
+        ZonedDateTime now = ZonedDateTime.now(ZoneId.systemDefault());
+        ZonedDateTime midnight = now.toLocalDate().plusDays(1).atStartOfDay(now.getZone());
+        long delay = Math.min(MAX_REFRESH_DELAY_MILLIS,
+                midnight.toInstant().toEpochMilli() - now.toInstant().toEpochMilli() + 1);
+        refresher.schedule(() -> {
+            refresh();
+            scheduleNextRefresh();
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Epoch day of a calendar date without creating a LocalDate; throws
+     * DateTimeException for dates that do not exist, like LocalDate.of.
+     */
+    public static int epochDay(int year, int month, int day) {
+        if (month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            throw new DateTimeException("Invalid date " + year + "-" + month + "-" + day);
+        }
+        // Days from civil (proleptic Gregorian), counting years from March
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Appends an epoch day as yyyy-MM-dd (years 0-9999) without creating a LocalDate.
+     */
+    public static void appendDate(StringBuilder sb, int epochDay) {
+        // Civil from days, the inverse of epochDay()
+        int z = epochDay + 719468;
+        int era = Math.floorDiv(z, 146097);
+        int dayOfEra = z - era * 146097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        appendPadded(sb, year, 4);
+        sb.append('-');
+        appendPadded(sb, month, 2);
+        sb.append('-');
+        appendPadded(sb, day, 2);
+    }
+
+    private static void appendPadded(StringBuilder sb, int value, int width) {
+        for (int limit = 10, digits = 1; digits < width; limit *= 10, digits++) {
+            if (value < limit) {
+                sb.append('0');
+            }
+        }
+        sb.append(value);
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+}
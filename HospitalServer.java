@@ -0,0 +1,697 @@
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
+
+/**
+ * Headless HTTP front end, so several clerks (or systems) can work at once.
+ * Requests run one per virtual thread when the JVM has them (Java 21+), and on
+ * a fixed pool of platform threads otherwise. Parameters come from the query
+ * string or a form-encoded body; responses are JSON. There is no
+ * authentication, so by default only this machine can connect.
+ *
+ *   POST /patients                   name, age, ward[, admitDate, triage]
+ *                                    -> 201; if the ward is full 409, or with triage (1-5) queued:
+ *                                       201 if a bed came free meanwhile, else 202 and a request id
+ *   GET  /admissions/{id}            queued admission: waiting, admitted (with the patient) or cancelled;
+ *                                    once resolved, kept until one GET reports it or for about 10 minutes
+ *   DELETE /admissions/{id}          cancel a queued admission -> 200, or 409 if a bed was already assigned
+ *   GET  /patients/{id}
+ *   POST /patients/{id}/discharge    [dischargeDate]               -> patient and charges
+ *   GET  /patients                   [status, ward, from, to, name, fuzzy, cursor, limit] -> one page
+ *   POST /patients/import            events (BulkImporter lines)   -> counts and rejected records
+ *   GET  /occupancy
+ *   GET  /census                     ward, from[, to, cursor, limit] -> stay and patient-day counts, one page of stays
+ */
+public class HospitalServer {
+    public static final int DEFAULT_PORT = 8080;
+
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int FALLBACK_THREADS = 64;
+    // How long an admitted, cancelled or failed request stays visible to GET /admissions/{id}
+    private static final long RESOLVED_ADMISSION_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final Counter REQUESTS = MetricsRegistry.INSTANCE.counter("server.requests");
+    private static final Counter ERRORS = MetricsRegistry.INSTANCE.counter("server.errors");
+    private static final LatencyHistogram REQUEST_LATENCY = MetricsRegistry.INSTANCE.histogram("server.request");
+
+    static {
+        // Headers and body leave as separate writes; with Nagle's algorithm the body then
+        // waits for the client's delayed ACK, adding ~40 ms to every response
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    private final PatientService service;
+    private final PatientRepository repository;
+    private final BedManager bedManager;
+    private final BulkImporter importer;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+
+    // Queued admissions by request id, until a GET has reported the outcome, the request
+    // is cancelled, or it has been resolved for RESOLVED_ADMISSION_MILLIS
+    private final Map<Integer, QueuedAdmission> admissions = new ConcurrentHashMap<>();
+    private final AtomicInteger nextAdmissionId = new AtomicInteger(1);
+
+    /**
+     * Serves on the loopback interface only.
+     */
+    public HospitalServer(PatientService service, PatientRepository repository, BedManager bedManager,
+                          int port) throws IOException {
+        this(service, repository, bedManager, InetAddress.getLoopbackAddress(), port);
+    }
+
+    /**
+     * Serves on the given address; any address other than loopback exposes
+     * patient data to the network without authentication.
+     */
+    public HospitalServer(PatientService service, PatientRepository repository, BedManager bedManager,
+                          InetAddress bindAddress, int port) throws IOException {
+        this.service = service;
+        this.repository = repository;
+        this.bedManager = bedManager;
+        this.importer = new BulkImporter(service, repository, bedManager);
+        this.server = HttpServer.create(new InetSocketAddress(bindAddress, port), 0);
+
+        ExecutorService virtual = newVirtualThreadExecutor();
+        this.virtualThreads = virtual != null;
+        this.executor = virtual != null ? virtual : Executors.newFixedThreadPool(FALLBACK_THREADS, r -> {
+            Thread t = new Thread(r, "http-worker");
+            t.setDaemon(true);
+            return t;
+        });
+
+        server.setExecutor(executor);
+        server.createContext("/patients", this::handle);
+        server.createContext("/occupancy", this::handle);
+        server.createContext("/census", this::handle);
+        server.createContext("/admissions", this::handle);
+    }
+
+    // Looked up reflectively so the code still compiles and runs on Java 17
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests and waits up to a few seconds for running ones.
+     */
+    public void stop() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        REQUESTS.increment();
+        Response response;
+        try {
+            response = route(exchange.getRequestMethod(), exchange.getRequestURI().getPath(), readParams(exchange));
+        } catch (BadRequestException e) {
+            response = Response.error(400, e.getMessage());
+        } catch (RuntimeException e) {
+            response = Response.error(500, "Internal error: " + e);
+        }
+        if (response.status >= 400) {
+            ERRORS.increment();
+        }
+
+        byte[] body = response.body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+        REQUEST_LATENCY.recordSince(start);
+    }
+
+    private Response route(String method, String path, Map<String, String> params) {
+        String[] parts = path.split("/");
+        // parts[0] is the empty string before the leading slash
+        if (parts.length == 2 && parts[1].equals("occupancy")) {
+            return "GET".equals(method) ? occupancy() : Response.methodNotAllowed();
+        }
+        if (parts.length == 2 && parts[1].equals("census")) {
+            return "GET".equals(method) ? census(params) : Response.methodNotAllowed();
+        }
+        if (parts.length == 3 && parts[1].equals("admissions")) {
+            int requestId = parseInt("id", parts[2]);
+            if ("GET".equals(method)) {
+                return admissionStatus(requestId);
+            }
+            return "DELETE".equals(method) ? cancelAdmission(requestId) : Response.methodNotAllowed();
+        }
+        if (parts.length < 2 || !parts[1].equals("patients")) {
+            return Response.error(404, "Not found: " + path);
+        }
+
+        if (parts.length == 2) {
+            if ("GET".equals(method)) {
+                return list(params);
+            }
+            return "POST".equals(method) ? admit(params) : Response.methodNotAllowed();
+        }
+        if (parts.length == 3 && parts[2].equals("import")) {
+            return "POST".equals(method) ? importEvents(params) : Response.methodNotAllowed();
+        }
+        int id = parseInt("id", parts[2]);
+        if (parts.length == 3) {
+            return "GET".equals(method) ? get(id) : Response.methodNotAllowed();
+        }
+        if (parts.length == 4 && parts[3].equals("discharge")) {
+            return "POST".equals(method) ? discharge(id, params) : Response.methodNotAllowed();
+        }
+        return Response.error(404, "Not found: " + path);
+    }
+
+    private Response admit(Map<String, String> params) {
+        String name = required(params, "name");
+        int age = parseInt("age", required(params, "age"));
+        Ward ward = parseWard(required(params, "ward"));
+        int admitDay = parseRecordDate("admitDate", params.get("admitDate"));
+
+        Triage triage = params.containsKey("triage") ? parseTriage(params.get("triage")) : null;
+
+        try {
+            Patient patient = service.admit(name, age, ward, admitDay);
+            StringBuilder json = new StringBuilder(256);
+            appendPatient(json, patient);
+            return new Response(201, json.toString());
+        } catch (BedUnavailableException e) {
+            if (triage == null) {
+                return Response.error(409, e.getMessage());
+            }
+        }
+
+        // Full ward and a triage level given: wait for the next bed instead. If one
+        // came free meanwhile, the patient is admitted before queueAdmission returns
+        expireResolvedAdmissions();
+        QueuedAdmission admission = new QueuedAdmission(nextAdmissionId.getAndIncrement(), ward, triage);
+        admission.request = service.queueAdmission(name, age, ward, triage, admission::admitted);
+        if (admission.patient != null) {
+            StringBuilder json = new StringBuilder(256);
+            appendPatient(json, admission.patient);
+            return new Response(201, json.toString());
+        }
+        if (admission.request.getState() == BedRequest.State.FAILED) {
+            return Response.error(500, "A bed was assigned but the admission could not be recorded");
+        }
+        admissions.put(admission.id, admission);
+        return new Response(202, admissionJson(admission));
+    }
+
+    /**
+     * Drops requests resolved long ago whose client never came back for them.
+     * Resolution is timed from the assignment, or from the first sweep to see it.
+     */
+    private void expireResolvedAdmissions() {
+        long now = System.currentTimeMillis();
+        admissions.values().removeIf(admission -> {
+            if (admission.isWaiting()) {
+                return false;
+            }
+            if (admission.resolvedMillis == 0) {
+                admission.resolvedMillis = now;
+            }
+            return now - admission.resolvedMillis >= RESOLVED_ADMISSION_MILLIS;
+        });
+    }
+
+    private Response admissionStatus(int requestId) {
+        QueuedAdmission admission = admissions.get(requestId);
+        if (admission == null) {
+            return Response.error(404, "Admission request " + requestId + " not found");
+        }
+        String json = admissionJson(admission);
+        if (!admission.isWaiting()) {
+            admissions.remove(requestId);
+        }
+        return new Response(200, json);
+    }
+
+    private Response cancelAdmission(int requestId) {
+        QueuedAdmission admission = admissions.get(requestId);
+        if (admission == null) {
+            return Response.error(404, "Admission request " + requestId + " not found");
+        }
+        if (!admission.request.cancel()) {
+            return Response.error(409, "Admission request " + requestId + " is no longer waiting; see GET /admissions/"
+                    + requestId);
+        }
+        admissions.remove(requestId);
+        return new Response(200, admissionJson(admission));
+    }
+
+    private String admissionJson(QueuedAdmission admission) {
+        StringBuilder json = new StringBuilder(320);
+        json.append("{\"request\":").append(admission.id)
+                .append(",\"ward\":\"").append(admission.ward.name())
+                .append("\",\"triage\":").append(admission.triage.getLevel())
+                .append(",\"status\":\"");
+        Patient patient = admission.patient;
+        BedRequest.State state = admission.request.getState();
+        if (patient != null) {
+            json.append("ADMITTED\",\"patient\":");
+            appendPatient(json, patient);
+        } else if (state == BedRequest.State.CANCELLED || state == BedRequest.State.FAILED) {
+            json.append(state.name()).append('"');
+        } else {
+            // Also ASSIGNED while the patient record is still being written
+            json.append("WAITING\",\"waiting\":").append(bedManager.getWaitingCount(admission.ward));
+        }
+        return json.append('}').toString();
+    }
+
+    private Response get(int id) {
+        Patient patient = repository.findById(id);
+        if (patient == null) {
+            return Response.error(404, "Patient " + id + " not found");
+        }
+        StringBuilder json = new StringBuilder(256);
+        appendPatient(json, patient);
+        return new Response(200, json.toString());
+    }
+
+    private Response discharge(int id, Map<String, String> params) {
+        int dischargeDay = parseRecordDate("dischargeDate", params.get("dischargeDate"));
+
+        Patient patient;
+        try {
+            patient = service.discharge(id, dischargeDay);
+        } catch (InvalidPatientStateException e) {
+            return Response.error(409, e.getMessage());
+        }
+        if (patient == null) {
+            return Response.error(404, "Patient " + id + " not found");
+        }
+
+        BillingRecord record = service.bill(patient);
+        boolean billed = service.submitBillingRecord(record);
+
+        StringBuilder json = new StringBuilder(320);
+        json.append("{\"patient\":");
+        appendPatient(json, patient);
+        json.append(",\"charges\":").append(Math.round(record.getCharges() * 100) / 100.0);
+        json.append(",\"billingRecordQueued\":").append(billed).append('}');
+        return new Response(200, json.toString());
+    }
+
+    private Response importEvents(Map<String, String> params) {
+        BulkImporter.ImportResult result = importer.importText(required(params, "events"));
+
+        StringBuilder json = new StringBuilder(128 + result.getRejections().size() * 64);
+        json.append("{\"admitted\":[");
+        for (int i = 0; i < result.getAdmitted().size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            Patient patient = result.getAdmitted().get(i);
+            json.append("{\"id\":").append(patient.getId())
+                    .append(",\"ward\":\"").append(patient.getWard().name())
+                    .append("\",\"bedNumber\":").append(patient.getBedNumber()).append('}');
+        }
+        json.append("],\"discharged\":").append(result.getDischarged().size());
+        json.append(",\"charges\":").append(Math.round(result.getTotalCharges() * 100) / 100.0);
+        json.append(",\"billingRecordsQueued\":").append(result.getBillingRecordsQueued());
+        json.append(",\"rejected\":[");
+        for (int i = 0; i < result.getRejections().size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            BulkImporter.Rejection rejection = result.getRejections().get(i);
+            json.append("{\"record\":").append(rejection.getRecord()).append(",\"reason\":");
+            appendString(json, rejection.getReason());
+            json.append('}');
+        }
+        json.append("]}");
+        return new Response(200, json.toString());
+    }
+
+    private Response list(Map<String, String> params) {
+        PatientFilter filter = PatientFilter.ALL;
+        String status = params.get("status");
+        if (status != null) {
+            try {
+                filter = filter.withStatus(PatientFilter.Status.valueOf(status.toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("status must be all, admitted or discharged");
+            }
+        }
+        if (params.containsKey("ward")) {
+            filter = filter.withWard(parseWard(params.get("ward")));
+        }
+        if (params.containsKey("from") || params.containsKey("to")) {
+            filter = filter.withAdmittedBetween(parseDate("from", params.get("from"), Patient.NO_DATE),
+                    parseDate("to", params.get("to"), Patient.NO_DATE));
+        }
+        long cursor = parseCursor(params);
+        int limit = parseLimit(params);
+
+        String name = params.containsKey("name") ? required(params, "name") : null;
+        boolean fuzzy = Boolean.parseBoolean(params.get("fuzzy"));
+        PatientFilter selected = filter;
+
+        StringBuilder json = new StringBuilder(64 + limit * 180);
+        json.append('{');
+        appendPage(json, () -> name != null
+                ? repository.findByName(name, fuzzy, selected, cursor, limit)
+                : repository.findPage(selected, cursor, limit));
+        json.append('}');
+        return new Response(200, json.toString());
+    }
+
+    private Response census(Map<String, String> params) {
+        Ward ward = parseWard(required(params, "ward"));
+        int fromDay = parseDate("from", required(params, "from"), Patient.NO_DATE);
+        int toDay = parseDate("to", params.get("to"), fromDay);
+        if (toDay < fromDay) {
+            throw new BadRequestException("to must not be before from");
+        }
+        long cursor = parseCursor(params);
+        int limit = parseLimit(params);
+
+        WardAnalytics analytics = repository.getAnalytics();
+        StringBuilder json = new StringBuilder(160 + limit * 180);
+        json.append("{\"ward\":\"").append(ward.name()).append("\",\"from\":\"");
+        HospitalClock.appendDate(json, fromDay);
+        json.append("\",\"to\":\"");
+        HospitalClock.appendDate(json, toDay);
+        json.append("\",\"stays\":").append(analytics.getStayCount(ward, fromDay, toDay))
+                .append(",\"patientDays\":").append(analytics.getPatientDays(ward, fromDay, toDay)).append(',');
+        appendPage(json, () -> repository.findStays(ward, fromDay, toDay, cursor, limit));
+        json.append('}');
+        return new Response(200, json.toString());
+    }
+
+    /**
+     * Appends "patients" and "nextCursor" for one page of the query.
+     */
+    private void appendPage(StringBuilder json, Supplier<PatientPage> query) {
+        // Render under the read lock so no row changes between paging and rendering
+        Lock readLock = repository.getLock().readLock();
+        readLock.lock();
+        try {
+            PatientPage page = query.get();
+            PatientColumns.View view = repository.getColumns().view();
+            json.append("\"patients\":[");
+            for (int i = 0; i < page.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                view.moveTo(page.getRow(i));
+                appendPatient(json, view.getId(), view.getName(), view.getAge(), view.getWard(),
+                        view.getBedNumber(), view.getAdmitDay(), view.getDischargeDay());
+            }
+            json.append("],\"nextCursor\":");
+            if (page.hasMore()) {
+                json.append(page.getNextCursor());
+            } else {
+                json.append("null");
+            }
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private static long parseCursor(Map<String, String> params) {
+        long cursor = params.containsKey("cursor") ? parseLong("cursor", params.get("cursor")) : PatientPage.FIRST;
+        if (cursor < PatientPage.FIRST) {
+            throw new BadRequestException("cursor must not be negative");
+        }
+        return cursor;
+    }
+
+    private static int parseLimit(Map<String, String> params) {
+        int limit = params.containsKey("limit") ? parseInt("limit", params.get("limit")) : DEFAULT_PAGE_SIZE;
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new BadRequestException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return limit;
+    }
+
+    private Response occupancy() {
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"wards\":[");
+        int totalBeds = 0;
+        int totalOccupied = 0;
+        Ward[] wards = Ward.values();
+        for (int i = 0; i < wards.length; i++) {
+            int total = bedManager.getTotalBeds(wards[i]);
+            int occupied = bedManager.getOccupiedBeds(wards[i]);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"ward\":\"").append(wards[i].name())
+                    .append("\",\"totalBeds\":").append(total)
+                    .append(",\"occupied\":").append(occupied)
+                    .append(",\"free\":").append(total - occupied).append('}');
+            totalBeds += total;
+            totalOccupied += occupied;
+        }
+        json.append("],\"totalBeds\":").append(totalBeds)
+                .append(",\"occupied\":").append(totalOccupied).append('}');
+        return new Response(200, json.toString());
+    }
+
+    private static void appendPatient(StringBuilder json, Patient patient) {
+        appendPatient(json, patient.getId(), patient.getName(), patient.getAge(), patient.getWard(),
+                patient.getBedNumber(), patient.getAdmitEpochDay(), patient.getDischargeEpochDay());
+    }
+
+    private static void appendPatient(StringBuilder json, int id, String name, int age, Ward ward, int bedNumber,
+                                      int admitDay, int dischargeDay) {
+        boolean admitted = dischargeDay == Patient.NO_DATE;
+        int endDay = admitted ? HospitalClock.todayEpochDay() : dischargeDay;
+
+        json.append("{\"id\":").append(id).append(",\"name\":");
+        appendString(json, name);
+        json.append(",\"age\":").append(age)
+                .append(",\"ward\":\"").append(ward.name())
+                .append("\",\"bedNumber\":").append(bedNumber)
+                .append(",\"admitDate\":\"");
+        HospitalClock.appendDate(json, admitDay);
+        json.append("\",\"dischargeDate\":");
+        if (admitted) {
+            json.append("null");
+        } else {
+            json.append('"');
+            HospitalClock.appendDate(json, dischargeDay);
+            json.append('"');
+        }
+        json.append(",\"status\":\"").append(admitted ? "ADMITTED" : "DISCHARGED")
+                .append("\",\"daysStayed\":").append(Math.max(1, endDay - admitDay)).append('}');
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    private static Map<String, String> readParams(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        parseForm(exchange.getRequestURI().getRawQuery(), params);
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readAllBytes();
+            if (body.length > 0) {
+                parseForm(new String(body, StandardCharsets.UTF_8), params);
+            }
+        }
+        return params;
+    }
+
+    private static void parseForm(String form, Map<String, String> params) {
+        if (form == null || form.isEmpty()) {
+            return;
+        }
+        for (String pair : form.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            try {
+                params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("Malformed parameter: " + pair);
+            }
+        }
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.trim().isEmpty()) {
+            throw new BadRequestException("Missing parameter: " + name);
+        }
+        return value.trim();
+    }
+
+    private static int parseInt(String name, String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new BadRequestException(name + " must be a number: " + value);
+        }
+    }
+
+    private static long parseLong(String name, String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new BadRequestException(name + " must be a number: " + value);
+        }
+    }
+
+    private static Ward parseWard(String value) {
+        try {
+            return Ward.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Unknown ward: " + value);
+        }
+    }
+
+    private static Triage parseTriage(String value) {
+        try {
+            return Triage.ofLevel(parseInt("triage", value));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+    }
+
+    private static int parseDate(String name, String value, int defaultDay) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultDay;
+        }
+        long epochDay;
+        try {
+            epochDay = LocalDate.parse(value.trim()).toEpochDay();
+        } catch (DateTimeParseException e) {
+            throw new BadRequestException(name + " must be yyyy-MM-dd: " + value);
+        }
+        if (epochDay != (int) epochDay) {
+            throw new BadRequestException(name + " is out of range: " + value);
+        }
+        return (int) epochDay;
+    }
+
+    /**
+     * An admission or discharge date, today if not given.
+     */
+    private static int parseRecordDate(String name, String value) {
+        int epochDay = parseDate(name, value, HospitalClock.todayEpochDay());
+        if (!HospitalClock.isRecordDay(epochDay)) {
+            throw new BadRequestException(name + " is too far from today: " + value);
+        }
+        return epochDay;
+    }
+
+    private static class Response {
+        final int status;
+        final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        static Response error(int status, String message) {
+            StringBuilder json = new StringBuilder(message.length() + 16);
+            json.append("{\"error\":");
+            appendString(json, message);
+            json.append('}');
+            return new Response(status, json.toString());
+        }
+
+        static Response methodNotAllowed() {
+            return error(405, "Method not allowed");
+        }
+    }
+
+    /**
+     * An admission waiting in a ward's queue, as seen through /admissions/{id}.
+     */
+    private static class QueuedAdmission {
+        final int id;
+        final Ward ward;
+        final Triage triage;
+        volatile BedRequest request;
+        volatile Patient patient;
+        volatile long resolvedMillis;
+
+        QueuedAdmission(int id, Ward ward, Triage triage) {
+            this.id = id;
+            this.ward = ward;
+            this.triage = triage;
+        }
+
+        void admitted(Patient admittedPatient) {
+            resolvedMillis = System.currentTimeMillis();
+            patient = admittedPatient;
+        }
+
+        boolean isWaiting() {
+            BedRequest.State state = request.getState();
+            return patient == null && state != BedRequest.State.CANCELLED && state != BedRequest.State.FAILED;
+        }
+    }
+
+    private static class BadRequestException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        BadRequestException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+
+/**
+ * One admit or discharge record for BulkImporter. Records are numbered from 1
+ * in the order they were given (the line number for an imported file), and
+ * rejections refer to that number.
+ */
+public class ImportEvent {
+    public enum Type {
+        ADMIT, DISCHARGE
+    }
+
+    private final int record;
+    private final Type type;
+    private final int patientId;
+    private final String name;
+    private final int age;
+    private final Ward ward;
+    private final int epochDay;
+
+    private ImportEvent(int record, Type type, int patientId, String name, int age, Ward ward, int epochDay) {
+        this.record = record;
+        this.type = type;
+        this.patientId = patientId;
+        this.name = name;
+        this.age = age;
+        this.ward = ward;
+        this.epochDay = epochDay;
+    }
+
+    public static ImportEvent admit(int record, String name, int age, Ward ward, int admitDay) {
+        return new ImportEvent(record, Type.ADMIT, 0, name, age, ward, admitDay);
+    }
+
+    public static ImportEvent discharge(int record, int patientId, int dischargeDay) {
+        return new ImportEvent(record, Type.DISCHARGE, patientId, null, 0, null, dischargeDay);
+    }
+
+    public int getRecord() {
+        return record;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * The patient to discharge; unused for admissions.
+     */
+    public int getPatientId() {
+        return patientId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getAge() {
+        return age;
+    }
+
+    public Ward getWard() {
+        return ward;
+    }
+
+    /**
+     * Admission or discharge date as an epoch day.
+     */
+    public int getEpochDay() {
+        return epochDay;
+    }
+}
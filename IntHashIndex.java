@@ -0,0 +1,99 @@
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from int keys to non-negative int values, with no
+ * boxing or per-entry objects. Used to index records by their int id.
+ */
+public class IntHashIndex {
+    public static final int NOT_FOUND = -1;
+
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    public IntHashIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2) - 1) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+    }
+
+    private static int slotFor(int key, int mask) {
+        // Spread sequential ids across the table
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    public int get(int key) {
+        for (int slot = slotFor(key, mask); ; slot = (slot + 1) & mask) {
+            int k = keys[slot];
+            if (k == key) {
+                return values[slot];
+            }
+            if (k == EMPTY) {
+                return NOT_FOUND;
+            }
+        }
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != NOT_FOUND;
+    }
+
+    /**
+     * Associates key with value; returns the previous value or NOT_FOUND.
+     */
+    public int put(int key, int value) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Key " + key + " is reserved");
+        }
+
+        for (int slot = slotFor(key, mask); ; slot = (slot + 1) & mask) {
+            int k = keys[slot];
+            if (k == key) {
+                int previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            if (k == EMPTY) {
+                keys[slot] = key;
+                values[slot] = value;
+                if (++size > (keys.length >>> 1)) {
+                    grow();
+                }
+                return NOT_FOUND;
+            }
+        }
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(oldKeys.length << 1);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            int key = oldKeys[i];
+            if (key != EMPTY) {
+                int slot = slotFor(key, mask);
+                while (keys[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,70 @@
+
+import java.time.LocalDate;
+import java.util.function.Function;
+
+/**
+ * Applies replayed journal events on top of the loaded snapshot. Replay is
+ * idempotent: events already contained in the snapshot are skipped. An
+ * admission whose bed is taken moves to a free bed of the ward; if the ward
+ * is full it is not applied, since two patients would otherwise share a bed,
+ * and is counted in getSkipped so the caller can keep the journal.
+ */
+public class JournalRecovery implements PatientJournal.ReplayHandler {
+    private final PatientRepository repository;
+    private final BedManager bedManager;
+    private final Function<Ward, BillingPolicy> policyForWard;
+    private int nextPatientId;
+    private int skipped;
+
+    public JournalRecovery(PatientRepository repository, BedManager bedManager,
+                           Function<Ward, BillingPolicy> policyForWard, int nextPatientId) {
+        this.repository = repository;
+        this.bedManager = bedManager;
+        this.policyForWard = policyForWard;
+        this.nextPatientId = nextPatientId;
+    }
+
+    @Override
+    public void onAdmit(int id, String name, int age, Ward ward, int bedNo, LocalDate admitDate) {
+        if (repository.findById(id) != null) {
+            return;
+        }
+        // Skipped or not, the id is used in the journal and must not be handed out again
+        nextPatientId = Math.max(nextPatientId, id + 1);
+
+        if (!bedManager.occupyBed(ward, bedNo)) {
+            int freeBed = bedManager.tryAllocate(ward);
+            if (freeBed == BedManager.NO_BED) {
+                System.out.println("Skipping recovered patient " + id + ": bed " + bedNo + " in " + ward
+                        + " is taken and the ward is full");
+                skipped++;
+                return;
+            }
+            bedNo = freeBed;
+        }
+        repository.add(new Patient(id, name, age, ward, bedNo, admitDate, policyForWard.apply(ward)));
+    }
+
+    @Override
+    public void onDischarge(int id, LocalDate dischargeDate) {
+        Patient patient = repository.findById(id);
+        if (patient == null || !patient.isAdmitted()) {
+            return;
+        }
+
+        patient.setDischargeDate(dischargeDate);
+        repository.markDischarged(patient);
+        bedManager.releaseBed(patient.getWard(), patient.getBedNumber());
+    }
+
+    public int getNextPatientId() {
+        return nextPatientId;
+    }
+
+    /**
+     * Admissions that could not be applied because their ward was full.
+     */
+    public int getSkipped() {
+        return skipped;
+    }
+}
@@ -0,0 +1,147 @@
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram in nanoseconds with log-linear buckets, in the style of
+ * HdrHistogram: values below 32 get exact buckets, and every power of two above
+ * that is split into 32 linear sub-buckets, so any recorded value is reported
+ * within about 3%. Recording is one bucket-index computation and an atomic add;
+ * nothing is allocated. Values of 2^41 ns (about 36 minutes) and above land
+ * in the last bucket.
+ *
+ * Reading the clock costs more than recording, so hot paths time only one call
+ * in sampleEvery through startTimer()/stopTimer().
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKET_COUNT = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    /** Returned by startTimer() when the call is not sampled. */
+    public static final long NOT_SAMPLED = 0;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+    private final int sampleMask;
+
+    // Racy on purpose: lost updates only shift which calls get sampled
+    private int sampleTick;
+
+    LatencyHistogram(String name, int sampleEvery) {
+        if (Integer.bitCount(sampleEvery) != 1) {
+            throw new IllegalArgumentException("sampleEvery must be a power of two: " + sampleEvery);
+        }
+        this.name = name;
+        this.sampleMask = sampleEvery - 1;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) Math.max(0, value);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * Midpoint of the values that map to a bucket.
+     */
+    static long bucketValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        long subBucket = SUB_BUCKETS + (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return (subBucket << shift) + ((1L << shift) >>> 1);
+    }
+
+    public void record(long nanos) {
+        buckets.incrementAndGet(bucketIndex(nanos));
+        count.increment();
+        sum.add(nanos);
+        if (nanos > max.get()) {
+            max.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    /**
+     * Starts timing a call if it is sampled; pass the result to stopTimer().
+     */
+    public long startTimer() {
+        if ((++sampleTick & sampleMask) != 0) {
+            return NOT_SAMPLED;
+        }
+        long now = System.nanoTime();
+        return now == NOT_SAMPLED ? 1 : now;
+    }
+
+    public void stopTimer(long start) {
+        if (start != NOT_SAMPLED) {
+            recordSince(start);
+        }
+    }
+
+    /**
+     * Records the time elapsed since a System.nanoTime() reading.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : sum.sum() / (double) n;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Approximate value at the given percentile (0-100), or 0 if nothing was recorded.
+     * Concurrent recording may make the result slightly stale, never invalid.
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(bucketValue(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getSampleEvery() {
+        return sampleMask + 1;
+    }
+}
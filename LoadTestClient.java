@@ -0,0 +1,198 @@
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Load generator for server mode (java Main --server). Each simulated clerk
+ * loops through one admission, a page of admitted patients, the occupancy view
+ * and the discharge of the patient just admitted, as fast as the server answers.
+ * The run is repeated for each client count, so throughput can be compared as
+ * concurrency grows.
+ *
+ * Usage: java LoadTestClient [--url http://localhost:8080] [--clients 1,2,4,8,16,32]
+ *                            [--seconds N] [--out file]
+ *
+ * Every cycle admits and then discharges a patient, so the store and the
+ * journal grow with each run; point the server at a scratch directory.
+ */
+public class LoadTestClient {
+    private static final Pattern ID = Pattern.compile("\"id\":(\\d+)");
+    private static final Ward[] WARDS = Ward.values();
+
+    private final String baseUrl;
+
+    private LoadTestClient(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = "http://localhost:" + HospitalServer.DEFAULT_PORT;
+        String clients = "1,2,4,8,16,32";
+        int seconds = 10;
+        String outFile = null;
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--url":
+                    url = args[++i];
+                    break;
+                case "--clients":
+                    clients = args[++i];
+                    break;
+                case "--seconds":
+                    seconds = Integer.parseInt(args[++i]);
+                    break;
+                case "--out":
+                    outFile = args[++i];
+                    break;
+                default:
+                    System.out.println("Unknown option: " + args[i]);
+                    return;
+            }
+        }
+
+        LoadTestClient client = new LoadTestClient(url.endsWith("/") ? url.substring(0, url.length() - 1) : url);
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("# java %s, %d cpu(s), %s, %d s per level%n",
+                System.getProperty("java.version"), Runtime.getRuntime().availableProcessors(), url, seconds));
+        report.append(String.format("%8s %10s %10s %10s %10s %10s %8s %8s%n",
+                "clients", "requests", "req/s", "mean ms", "p50 ms", "p99 ms", "full", "errors"));
+        System.out.print(report);
+
+        // Warm up the server's JIT before the first measured level
+        client.run(4, Math.min(seconds, 3));
+
+        for (String level : clients.split(",")) {
+            String line = client.run(Integer.parseInt(level.trim()), seconds).toString();
+            System.out.println(line);
+            report.append(line).append(System.lineSeparator());
+        }
+
+        if (outFile != null) {
+            Files.write(Paths.get(outFile), report.toString().getBytes(StandardCharsets.UTF_8));
+            System.out.println("Results written to " + outFile);
+        }
+    }
+
+    private Result run(int clients, int seconds) throws InterruptedException {
+        LatencyHistogram latency = new LatencyHistogram("load", 1);
+        AtomicLong full = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        CountDownLatch finished = new CountDownLatch(clients);
+        long start = System.nanoTime();
+        long deadline = start + seconds * 1_000_000_000L;
+
+        for (int c = 0; c < clients; c++) {
+            int clerk = c;
+            Thread t = new Thread(() -> {
+                try {
+                    for (long cycle = 0; System.nanoTime() < deadline; cycle++) {
+                        runCycle(WARDS[(int) ((clerk + cycle) % WARDS.length)], latency, full, errors);
+                    }
+                } finally {
+                    finished.countDown();
+                }
+            }, "load-client-" + c);
+            t.start();
+        }
+        finished.await();
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        return new Result(clients, latency, elapsedSeconds, full.get(), errors.get());
+    }
+
+    private void runCycle(Ward ward, LatencyHistogram latency, AtomicLong full, AtomicLong errors) {
+        Reply admitted = call("POST", "/patients", "name=Load+Test&age=40&ward=" + ward.name(), latency, errors);
+        call("GET", "/patients?status=admitted&limit=20", null, latency, errors);
+        call("GET", "/occupancy", null, latency, errors);
+
+        if (admitted.status == 409) {
+            full.incrementAndGet();
+            return;
+        }
+        Matcher id = ID.matcher(admitted.body);
+        if (admitted.status == 201 && id.find()) {
+            call("POST", "/patients/" + id.group(1) + "/discharge", "", latency, errors);
+        }
+    }
+
+    private Reply call(String method, String path, String form, LatencyHistogram latency, AtomicLong errors) {
+        long start = System.nanoTime();
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+            connection.setRequestMethod(method);
+            if (form != null) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(form.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+
+            int status = connection.getResponseCode();
+            // Read the body to the end so the keep-alive connection is reused
+            InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            String body = in != null ? readFully(in) : "";
+            latency.recordSince(start);
+            if (status >= 400 && status != 409) {
+                errors.incrementAndGet();
+            }
+            return new Reply(status, body);
+        } catch (IOException e) {
+            errors.incrementAndGet();
+            return new Reply(-1, "");
+        }
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(512);
+            stream.transferTo(buffer);
+            return buffer.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static class Reply {
+        final int status;
+        final String body;
+
+        Reply(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    private static class Result {
+        final int clients;
+        final LatencyHistogram latency;
+        final double elapsedSeconds;
+        final long full;
+        final long errors;
+
+        Result(int clients, LatencyHistogram latency, double elapsedSeconds, long full, long errors) {
+            this.clients = clients;
+            this.latency = latency;
+            this.elapsedSeconds = elapsedSeconds;
+            this.full = full;
+            this.errors = errors;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%8d %10d %10.0f %10.2f %10.2f %10.2f %8d %8d", clients, latency.getCount(),
+                    latency.getCount() / elapsedSeconds, latency.getMean() / 1e6,
+                    latency.getPercentile(50) / 1e6, latency.getPercentile(99) / 1e6, full, errors);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+
+import java.io.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the line-by-line split() loader with PatientCsvLoader on a generated file.
+ * Usage: java LoaderBenchmark [rows] [file]   (default 10,000,000 rows)
+ */
+public class LoaderBenchmark {
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        File file = new File(args.length > 1 ? args[1] : "bench_patients_" + rows + ".csv");
+
+        if (!file.exists()) {
+            System.out.println("Generating " + rows + " rows into " + file + "...");
+            PatientDataGenerator.generate(file, rows, 0, 42L);
+        }
+        System.out.printf("File size: %.1f MB%n", file.length() / (1024.0 * 1024.0));
+
+        for (int round = 1; round <= 3; round++) {
+            long start = System.nanoTime();
+            int splitCount = loadWithSplit(file);
+            long splitMillis = (System.nanoTime() - start) / 1_000_000;
+
+            start = System.nanoTime();
+            int mappedCount = new PatientCsvLoader().load(file.toPath()).getPatients().size();
+            long mappedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            System.out.printf("Round %d: split() %d rows in %d ms, mapped parallel %d rows in %d ms%n",
+                    round, splitCount, splitMillis, mappedCount, mappedMillis);
+        }
+    }
+
+    /** The original Main.loadPatients parsing loop, kept here as the baseline. */
+    private static int loadWithSplit(File file) throws IOException {
+        List<Patient> patients = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            String line = br.readLine(); // Skip header
+            while ((line = br.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length >= 6) {
+                    int id = Integer.parseInt(parts[0].trim());
+                    String name = parts[1].trim();
+                    int age = Integer.parseInt(parts[2].trim());
+                    Ward ward = Ward.valueOf(parts[3].trim());
+                    int bedNo = Integer.parseInt(parts[4].trim());
+                    LocalDate admitDate = LocalDate.parse(parts[5].trim(), DATE_FORMATTER);
+                    Patient patient = new Patient(id, name, age, ward, bedNo, admitDate, new StandardBillingPolicy());
+                    if (parts.length > 6 && !parts[6].trim().isEmpty()) {
+                        patient.setDischargeDate(LocalDate.parse(parts[6].trim(), DATE_FORMATTER));
+                    }
+                    patients.add(patient);
+                }
+            }
+        }
+        return patients.size();
+    }
+}
@@ -1,27 +1,104 @@
 
 
 import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongFunction;
 
 public class Main {
     private static final Scanner scanner = new Scanner(System.in);
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-
-    private static List<Patient> allPatients = new ArrayList<>();
-    private static Map<Ward, List<Patient>> wardAllocations = new HashMap<>();
-    private static Map<Ward, Double> wardRates = new HashMap<>();
+    private static final Path PATIENTS_FILE = Paths.get("patients.csv");
+    private static final Path SNAPSHOT_FILE = Paths.get("patients.snap");
+    private static final Path JOURNAL_FILE = Paths.get("patients.journal");
+    private static final Path TARIFF_FILE = Paths.get("tariffs.cfg");
+    private static final Path METRICS_FILE = Paths.get("metrics.txt");
+    private static final int METRICS_DUMP_SECONDS = 60;
+    private static final int LIST_PAGE_SIZE = 20;
+    private static final int IMPORT_REJECTIONS_SHOWN = 20;
+
+    private static final LatencyHistogram LOAD_LATENCY = MetricsRegistry.INSTANCE.histogram("file.patients.load");
+    private static final LatencyHistogram SNAPSHOT_LATENCY = MetricsRegistry.INSTANCE.histogram("file.snapshot.write");
+
+    private static PatientRepository patientRepository = new PatientRepository(Main::selectBillingPolicy);
+    private static RateTableWatcher rateWatcher;
+    private static TariffRules tariffRules;
     private static BedManager bedManager;
+    private static AsyncBedDispatcher alertDispatcher;
+    private static FileBedAlert fileBedAlert;
+    private static OccupancyHistory occupancyHistory;
     private static BillingService billingService;
+    private static PatientJournal journal;
+    private static BillingLedger billingLedger;
+    private static PatientService patientService;
+    private static BulkImporter bulkImporter;
+    private static ClusterNode clusterNode;
     private static int nextPatientId = 1;
 
     public static void main(String[] args) {
         System.out.println("=== Hospital Patient Record System ===\n");
 
+        int serverPort = -1;
+        InetAddress bindAddress = InetAddress.getLoopbackAddress();
+        String siteName = null;
+        int clusterPort = -1;
+        List<InetSocketAddress> peers = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--server":
+                        serverPort = HospitalServer.DEFAULT_PORT;
+                        if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                            serverPort = Integer.parseInt(args[++i]);
+                        }
+                        break;
+                    case "--bind":
+                        bindAddress = InetAddress.getByName(args[++i]);
+                        break;
+                    case "--site":
+                        siteName = args[++i];
+                        break;
+                    case "--cluster-port":
+                        clusterPort = Integer.parseInt(args[++i]);
+                        break;
+                    case "--peers":
+                        for (String peer : args[++i].split(",")) {
+                            int colon = peer.lastIndexOf(':');
+                            peers.add(new InetSocketAddress(peer.substring(0, colon),
+                                    Integer.parseInt(peer.substring(colon + 1))));
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (RuntimeException | UnknownHostException e) {
+            System.out.println("Usage: java Main [--server [port] [--bind address]] "
+                    + "[--site name --cluster-port port [--peers host:port,...]]");
+            return;
+        }
+
         initializeSystem();
         loadData();
+        if (siteName != null && clusterPort >= 0) {
+            joinCluster(siteName, clusterPort, peers);
+        }
+
+        if (serverPort >= 0) {
+            runServer(bindAddress, serverPort);
+            return;
+        }
 
         boolean running = true;
         while (running) {
@@ -42,9 +119,21 @@ public class Main {
                     showOccupancyAnalytics();
                     break;
                 case 5:
+                    rebillDischargedPatients();
+                    break;
+                case 6:
                     saveAndExit();
                     running = false;
                     break;
+                case 7:
+                    importEvents();
+                    break;
+                case 8:
+                    searchPatients();
+                    break;
+                case 9:
+                    showWardCensus();
+                    break;
                 default:
                     System.out.println("Invalid choice. Try again.\n");
             }
@@ -53,12 +142,76 @@ public class Main {
         scanner.close();
     }
 
-    private static void initializeSystem() {
-        // Initialize ward allocations
-        for (Ward ward : Ward.values()) {
-            wardAllocations.put(ward, new ArrayList<>());
+    /**
+     * Headless mode: serves requests until "stop" is entered or the process is
+     * terminated, then saves like the Save & Exit menu option.
+     */
+    private static void runServer(InetAddress bindAddress, int port) {
+        HospitalServer server;
+        try {
+            server = new HospitalServer(patientService, patientRepository, bedManager, bindAddress, port);
+        } catch (IOException e) {
+            System.out.println("Could not start server on port " + port + ": " + e.getMessage());
+            saveAndExit();
+            return;
+        }
+
+        AtomicBoolean stopped = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(1);
+        Runnable shutdown = () -> {
+            if (stopped.compareAndSet(false, true)) {
+                server.stop();
+                saveAndExit();
+                done.countDown();
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(new Thread(shutdown, "server-shutdown"));
+
+        server.start();
+        if (!bindAddress.isLoopbackAddress()) {
+            System.out.println("WARNING: listening on " + bindAddress.getHostAddress()
+                    + "; anyone who can reach it can read and change patient records.");
+        }
+        System.out.println("Serving on http://" + bindAddress.getHostAddress() + ":" + server.getPort() + "/ using "
+                + (server.usesVirtualThreads() ? "virtual threads" : "a thread pool")
+                + ". Enter 'stop' to shut down.");
+
+        // Without a console (e.g. started in the background) stdin ends at once; keep serving until killed
+        while (scanner.hasNextLine()) {
+            if (scanner.nextLine().trim().equalsIgnoreCase("stop")) {
+                shutdown.run();
+                return;
+            }
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+    }
 
+    /**
+     * Shares this site's bed counts with the peers and lets admissions that find
+     * a ward full be sent to the least loaded site with a free bed.
+     */
+    private static void joinCluster(String siteName, int port, List<InetSocketAddress> peers) {
+        ClusterNode node = new ClusterNode(siteName, port, peers, bedManager,
+                (name, age, ward, bedNo, admitDay) -> {
+                    Patient patient = patientService.admitToBed(name, age, ward, bedNo, admitDay);
+                    System.out.println("\nCluster: admitted transferred patient " + patient.getId()
+                            + " (" + name + ") to " + ward + " bed " + bedNo);
+                    return patient.getId();
+                });
+        try {
+            node.start();
+            clusterNode = node;
+            System.out.println("Site " + siteName + " listening for cluster peers on port " + port + "\n");
+        } catch (IOException e) {
+            System.out.println("Could not join cluster on port " + port + ": " + e.getMessage() + "\n");
+        }
+    }
+
+    private static void initializeSystem() {
         // Initialize bed manager with capacities
         Map<Ward, Integer> totalBeds = new HashMap<>();
         totalBeds.put(Ward.GENERAL, 50);
@@ -67,90 +220,217 @@ public class Main {
 
         bedManager = new BedManager(totalBeds);
 
-        // Register observers
+        // Register observers; file logging goes through the async dispatcher so
+        // admissions never wait on disk I/O
+        alertDispatcher = new AsyncBedDispatcher(1024, 64, BackPressurePolicy.COALESCE_PER_WARD);
+        fileBedAlert = new FileBedAlert();
+        alertDispatcher.registerObserver(fileBedAlert);
         bedManager.registerObserver(new ConsoleBedAlert());
-        bedManager.registerObserver(new FileBedAlert());
+        bedManager.registerObserver(alertDispatcher);
+
+        // Occupancy history sees every event directly; the dispatcher may coalesce them
+        occupancyHistory = new OccupancyHistory();
+        bedManager.registerObserver(occupancyHistory);
+
+        // Rates are shared by billing and billing.txt and reloaded when rates.cfg changes
+        rateWatcher = RateTableWatcher.open(Paths.get("rates.cfg"));
+        billingService = new StandardBillingServiceImpl(rateWatcher::current);
+        loadTariffRules();
+        try {
+            billingLedger = new BillingLedger(Paths.get("billing.txt"), 4096, FsyncPolicy.PER_BATCH);
+        } catch (IOException e) {
+            System.out.println("Could not open billing.txt: " + e.getMessage());
+        }
 
-        // Initialize billing service
-        billingService = new StandardBillingServiceImpl();
+        // Counters and latencies are visible over JMX and in metrics.txt
+        MetricsRegistry metrics = MetricsRegistry.INSTANCE;
+        metrics.gauge("beds.dispatcher.queueDepth", alertDispatcher::getQueueDepth);
+        metrics.gauge("beds.dispatcher.dropped", alertDispatcher::getDroppedCount);
+        metrics.gauge("beds.dispatcher.coalesced", alertDispatcher::getCoalescedCount);
+        if (billingLedger != null) {
+            metrics.gauge("billing.ledger.queueDepth", billingLedger::getQueueDepth);
+            metrics.gauge("billing.ledger.written", billingLedger::getWrittenCount);
+        }
+        for (Ward ward : Ward.values()) {
+            metrics.gauge("beds.occupied." + ward.name(), () -> bedManager.getOccupiedBeds(ward));
+            metrics.gauge("beds.allocated." + ward.name(), () -> bedManager.getAllocatedCount(ward));
+            metrics.gauge("beds.released." + ward.name(), () -> bedManager.getReleasedCount(ward));
+        }
+        metrics.registerMBean();
+        metrics.startPeriodicDump(METRICS_FILE, METRICS_DUMP_SECONDS);
+    }
+
+    private static void loadTariffRules() {
+        if (!Files.exists(TARIFF_FILE)) {
+            return;
+        }
+        try {
+            tariffRules = TariffRules.load(TARIFF_FILE);
+            System.out.println("Loaded tariff policies " + tariffRules.getPolicyNames() + " from " + TARIFF_FILE);
+        } catch (IOException e) {
+            System.out.println("Ignoring " + TARIFF_FILE + ": " + e.getMessage());
+        }
     }
 
     private static void loadData() {
-        loadRates();
         loadPatients();
+        openJournal();
+
+        // Start every ward's history at the restored occupancy, even if nothing was restored
+        for (Ward ward : Ward.values()) {
+            occupancyHistory.onBedStatusChanged(ward, bedManager.getFreeBeds(ward), bedManager.getTotalBeds(ward));
+        }
+
+        patientService = new PatientService(patientRepository, bedManager, billingService, rateWatcher::current,
+                Main::selectBillingPolicy, billingLedger, journal, Main::writeSnapshot, nextPatientId);
+        bulkImporter = new BulkImporter(patientService, patientRepository, bedManager);
     }
 
-    private static void loadRates() {
-        try (BufferedReader br = new BufferedReader(new FileReader("rates.cfg"))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split("=");
-                if (parts.length == 2) {
-                    Ward ward = Ward.valueOf(parts[0].trim());
-                    double rate = Double.parseDouble(parts[1].trim());
-                    wardRates.put(ward, rate);
+    private static void loadPatients() {
+        long start = System.nanoTime();
+        Path source;
+        int skipped = 0;
+        try {
+            if (Files.exists(SNAPSHOT_FILE)) {
+                source = SNAPSHOT_FILE;
+                try (PatientSnapshot snapshot = PatientSnapshot.open(SNAPSHOT_FILE)) {
+                    for (int row = 0; row < snapshot.size(); row++) {
+                        try {
+                            restoreSnapshotRow(snapshot, row);
+                        } catch (BedUnavailableException | IllegalArgumentException e) {
+                            System.out.println("Skipping row " + (row + 1) + " of " + source + ": " + e.getMessage());
+                            skipped++;
+                        }
+                    }
+                }
+            } else if (Files.exists(PATIENTS_FILE)) {
+                // First start after upgrading: the next compaction writes the binary snapshot
+                source = PATIENTS_FILE;
+                PatientCsvLoader.LoadResult result = new PatientCsvLoader().load(PATIENTS_FILE);
+                if (result.getSkippedLines() > 0) {
+                    System.out.println("Skipped " + result.getSkippedLines() + " malformed line(s)");
+                    skipped += result.getSkippedLines();
                 }
+                for (Patient patient : result.getPatients()) {
+                    try {
+                        restorePatient(patient);
+                    } catch (BedUnavailableException | IllegalArgumentException e) {
+                        System.out.println("Skipping patient " + patient.getId() + ": " + e.getMessage());
+                        skipped++;
+                    }
+                }
+            } else {
+                System.out.println("No patient data found. Starting with empty patient list.\n");
+                return;
             }
-            System.out.println("Loaded ward rates from rates.cfg");
-        } catch (FileNotFoundException e) {
-            System.out.println("rates.cfg not found. Using default rates.");
-            wardRates.put(Ward.GENERAL, 1500.0);
-            wardRates.put(Ward.ICU, 5000.0);
-            wardRates.put(Ward.PRIVATE, 3000.0);
-            createDefaultRatesFile();
         } catch (IOException e) {
-            System.out.println("Error reading rates.cfg: " + e.getMessage());
+            // Starting empty would let the next snapshot replace the file
+            refuseToStart("Error loading patients: " + e.getMessage());
+            return;
+        }
+
+        LOAD_LATENCY.recordSince(start);
+        System.out.println("Loaded " + patientRepository.size() + " patients from " + source + "\n");
+        if (skipped > 0) {
+            keepCopyOf(source, skipped);
         }
     }
 
-    private static void createDefaultRatesFile() {
-        try (PrintWriter pw = new PrintWriter(new FileWriter("rates.cfg"))) {
-            pw.println("GENERAL=1500");
-            pw.println("ICU=5000");
-            pw.println("PRIVATE=3000");
-            System.out.println("Created default rates.cfg file");
+    private static void restoreSnapshotRow(PatientSnapshot snapshot, int row) throws BedUnavailableException {
+        int dischargeDay = snapshot.getDischargeEpochDay(row);
+        if (dischargeDay == PatientSnapshot.NO_DATE) {
+            restorePatient(snapshot.toPatient(row, StandardBillingPolicy.INSTANCE));
+            return;
+        }
+        // History goes straight into the column store, no Patient objects
+        int id = snapshot.getId(row);
+        patientRepository.addDischarged(id, snapshot.getName(row), snapshot.getAge(row),
+                snapshot.getWard(row), snapshot.getBedNumber(row), snapshot.getAdmitEpochDay(row), dischargeDay);
+        nextPatientId = Math.max(nextPatientId, id + 1);
+    }
+
+    /**
+     * The next snapshot leaves out skipped rows, so keep the file they came from
+     * until someone has looked at them.
+     */
+    private static void keepCopyOf(Path source, int skipped) {
+        Path copy = source.resolveSibling(source.getFileName() + "." + System.currentTimeMillis() + ".bak");
+        try {
+            Files.copy(source, copy);
+            System.out.println(skipped + " record(s) not loaded; the original file is kept as " + copy + "\n");
         } catch (IOException e) {
-            System.out.println("Could not create rates.cfg: " + e.getMessage());
+            refuseToStart(skipped + " record(s) not loaded and could not copy " + source + ": " + e.getMessage());
         }
     }
 
-    private static void loadPatients() {
-        try (BufferedReader br = new BufferedReader(new FileReader("patients.csv"))) {
-            String line = br.readLine(); // Skip header
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split(",");
-                if (parts.length >= 6) {
-                    int id = Integer.parseInt(parts[0].trim());
-                    String name = parts[1].trim();
-                    int age = Integer.parseInt(parts[2].trim());
-                    Ward ward = Ward.valueOf(parts[3].trim());
-                    int bedNo = Integer.parseInt(parts[4].trim());
-                    LocalDate admitDate = LocalDate.parse(parts[5].trim(), DATE_FORMATTER);
-                    LocalDate dischargeDate = parts.length > 6 && !parts[6].trim().isEmpty()
-                            ? LocalDate.parse(parts[6].trim(), DATE_FORMATTER) : null;
-
-                    BillingPolicy policy = new StandardBillingPolicy();
-                    Patient patient = new Patient(id, name, age, ward, bedNo, admitDate, policy);
-
-                    if (dischargeDate != null) {
-                        patient.setDischargeDate(dischargeDate);
-                    } else {
-                        wardAllocations.get(ward).add(patient);
-                        bedManager.allocateBed(ward);
-                    }
+    private static void refuseToStart(String reason) {
+        System.out.println(reason);
+        System.out.println("Not starting, so that " + SNAPSHOT_FILE + " is not overwritten.");
+        System.exit(1);
+    }
 
-                    allPatients.add(patient);
-                    if (id >= nextPatientId) {
-                        nextPatientId = id + 1;
-                    }
-                }
+    /**
+     * Adds a patient read from the snapshot or patients.csv, with the billing
+     * policy of their ward as for a new admission; neither file stores one.
+     */
+    private static void restorePatient(Patient patient) throws BedUnavailableException {
+        // Check before claiming a bed, which would otherwise leak
+        if (patientRepository.findById(patient.getId()) != null) {
+            throw new IllegalArgumentException("Duplicate patient ID: " + patient.getId());
+        }
+        patient.setBillingPolicy(selectBillingPolicy(patient.getWard()));
+        if (patient.isAdmitted()) {
+            // Older files may contain duplicate bed numbers; move clashes to a free bed
+            if (!bedManager.occupyBed(patient.getWard(), patient.getBedNumber())) {
+                patient.setBedNumber(bedManager.allocateBed(patient.getWard()));
+            }
+        }
+
+        patientRepository.add(patient);
+        if (patient.getId() >= nextPatientId) {
+            nextPatientId = patient.getId() + 1;
+        }
+    }
+
+    private static void openJournal() {
+        try {
+            journal = new PatientJournal(JOURNAL_FILE, 16, 100);
+            JournalRecovery recovery = new JournalRecovery(patientRepository, bedManager,
+                    Main::selectBillingPolicy, nextPatientId);
+            int replayed = journal.replay(recovery);
+            nextPatientId = recovery.getNextPatientId();
+
+            if (replayed > 0) {
+                System.out.println("Recovered " + replayed + " event(s) from " + JOURNAL_FILE + "\n");
+            }
+            if (recovery.getSkipped() > 0) {
+                // Compaction would drop the skipped admissions from the journal
+                keepCopyOf(JOURNAL_FILE, recovery.getSkipped());
             }
-            System.out.println("Loaded " + allPatients.size() + " patients from patients.csv\n");
-        } catch (FileNotFoundException e) {
-            System.out.println("patients.csv not found. Starting with empty patient list.\n");
-        } catch (IOException | BedUnavailableException e) {
-            System.out.println("Error loading patients: " + e.getMessage() + "\n");
+            compactJournalIfNeeded();
+        } catch (IOException e) {
+            System.out.println("Could not open journal, changes will be saved on exit only: " + e.getMessage());
+            journal = null;
+        }
+    }
+
+    private static void compactJournalIfNeeded() throws IOException {
+        if (journal.getEventsSinceSnapshot() >= PatientService.JOURNAL_COMPACT_THRESHOLD) {
+            journal.compact(Main::writeSnapshot);
+            System.out.println("Compacted journal into " + SNAPSHOT_FILE);
+        }
+    }
+
+    private static void writeSnapshot() throws IOException {
+        long start = System.nanoTime();
+        // Server threads may admit or discharge meanwhile; hold them off for a consistent file
+        patientRepository.getLock().readLock().lock();
+        try {
+            PatientSnapshot.write(SNAPSHOT_FILE, patientRepository.getColumns());
+        } finally {
+            patientRepository.getLock().readLock().unlock();
         }
+        SNAPSHOT_LATENCY.recordSince(start);
     }
 
     private static void printMenu() {
@@ -159,7 +439,11 @@ public class Main {
         System.out.println("2. Discharge Patient");
         System.out.println("3. List Patients");
         System.out.println("4. Show Occupancy Analytics");
-        System.out.println("5. Save & Exit");
+        System.out.println("5. Re-bill Discharged Patients");
+        System.out.println("6. Save & Exit");
+        System.out.println("7. Bulk Import Events");
+        System.out.println("8. Search Patients by Name");
+        System.out.println("9. Ward Census");
     }
 
     private static void admitPatient() {
@@ -185,39 +469,93 @@ public class Main {
 
         LocalDate admitDate = getDateInput("Enter admission date (yyyy-MM-dd) or press Enter for today: ");
         if (admitDate == null) {
-            admitDate = LocalDate.now();
+            admitDate = HospitalClock.today();
+        } else if (!HospitalClock.isRecordDay(admitDate.toEpochDay())) {
+            System.out.println("ERROR: admission date " + admitDate + " is too far from today.");
+            return;
         }
 
+        int admitDay = (int) admitDate.toEpochDay();
         try {
-            bedManager.allocateBed(ward);
-
-            int bedNo = bedManager.getOccupiedBeds(ward);
-            BillingPolicy policy = selectBillingPolicy(ward);
-
-            Patient patient = new Patient(nextPatientId++, name, age, ward, bedNo, admitDate, policy);
-            allPatients.add(patient);
-            wardAllocations.get(ward).add(patient);
+            Patient patient = patientService.admit(name, age, ward, admitDay);
 
             System.out.println("\nPatient admitted successfully!");
             System.out.println(patient);
 
         } catch (BedUnavailableException e) {
-            System.out.println("\nERROR: " + e.getMessage());
+            if (clusterNode == null || !admitAtOtherSite(name, age, ward, admitDay)) {
+                System.out.println("\nERROR: " + e.getMessage());
+                offerWaitQueue(name, age, ward);
+            }
         }
     }
 
+    private static void offerWaitQueue(String name, int age, Ward ward) {
+        String input = getStringInput("Triage level 1-5 (1 = most urgent) to join the " + ward.name()
+                + " wait queue (" + bedManager.getWaitingCount(ward) + " waiting), or press Enter to skip: ");
+        if (input.isEmpty()) {
+            return;
+        }
+
+        Triage triage;
+        try {
+            triage = Triage.ofLevel(Integer.parseInt(input));
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid triage level. Patient not queued.");
+            return;
+        }
+
+        BedRequest request = patientService.queueAdmission(name, age, ward, triage, patient -> {
+            System.out.println("\nA bed came free: waiting patient admitted.");
+            System.out.println(patient);
+        });
+        if (request.getState() == BedRequest.State.WAITING) {
+            System.out.println("Patient queued for " + ward.name() + " at position "
+                    + (Arrays.asList(bedManager.getWaiting(ward)).indexOf(request) + 1) + ".");
+        }
+    }
+
+    private static boolean admitAtOtherSite(String name, int age, Ward ward, int admitDay) {
+        System.out.println("\nNo free bed in " + ward + " here; checking other sites...");
+        BedPlacement placement = clusterNode.allocateBed(ward, name, age, admitDay);
+        if (placement == null) {
+            return false;
+        }
+
+        if (!placement.isOutcomeKnown()) {
+            // Admitting here or queueing could put the patient in two beds
+            System.out.println("\nSite " + placement.getSite() + " did not confirm the transfer; the patient may"
+                    + " already be admitted there. Check with that site before admitting again.");
+        } else if (placement.isLocal()) {
+            // A local bed was freed meanwhile
+            Patient patient = patientService.admitToBed(name, age, ward, placement.getBedNumber(), admitDay);
+            System.out.println("\nPatient admitted successfully!");
+            System.out.println(patient);
+        } else {
+            System.out.println("\nPatient transferred to site " + placement.getSite() + ": " + ward
+                    + " bed " + placement.getBedNumber() + ", patient ID there " + placement.getPatientId());
+        }
+        return true;
+    }
+
     private static BillingPolicy selectBillingPolicy(Ward ward) {
+        if (tariffRules != null) {
+            BillingPolicy policy = tariffRules.policyFor(ward);
+            if (policy != null) {
+                return policy;
+            }
+        }
         if (ward == Ward.PRIVATE) {
-            return new WeekendDiscountBillingPolicy();
+            return WeekendDiscountBillingPolicy.INSTANCE;
         }
-        return new StandardBillingPolicy();
+        return StandardBillingPolicy.INSTANCE;
     }
 
     private static void dischargePatient() {
         System.out.println("\n--- Discharge Patient ---");
 
         int patientId = getIntInput("Enter patient ID: ");
-        Patient patient = findPatientById(patientId);
+        Patient patient = patientRepository.findById(patientId);
 
         if (patient == null) {
             System.out.println("Patient not found.");
@@ -231,45 +569,66 @@ public class Main {
 
         LocalDate dischargeDate = getDateInput("Enter discharge date (yyyy-MM-dd) or press Enter for today: ");
         if (dischargeDate == null) {
-            dischargeDate = LocalDate.now();
+            dischargeDate = HospitalClock.today();
+        } else if (!HospitalClock.isRecordDay(dischargeDate.toEpochDay())) {
+            System.out.println("ERROR: discharge date " + dischargeDate + " is too far from today.");
+            return;
         }
 
         try {
-            patient.setDischargeDate(dischargeDate);
-            wardAllocations.get(patient.getWard()).remove(patient);
-            bedManager.releaseBed(patient.getWard());
+            patient = patientService.discharge(patientId, (int) dischargeDate.toEpochDay());
+            if (patient == null) {
+                System.out.println("Patient not found.");
+                return;
+            }
 
             // Calculate billing
-            double charges = billingService.calculateCharges(patient);
+            BillingRecord record = patientService.bill(patient);
 
             // Write to billing.txt
-            writeBillingRecord(patient, charges);
+            writeBillingRecord(record);
 
             System.out.println("\nPatient discharged successfully!");
             System.out.println(patient);
-            System.out.println("Total charges: ₹" + String.format("%.2f", charges));
+            System.out.println("Total charges: ₹" + String.format("%.2f", record.getCharges()));
 
         } catch (InvalidPatientStateException e) {
             System.out.println("ERROR: " + e.getMessage());
         }
     }
 
-    private static void writeBillingRecord(Patient patient, double charges) {
-        try (PrintWriter pw = new PrintWriter(new FileWriter("billing.txt", true))) {
-            double dailyRate = wardRates.getOrDefault(patient.getWard(), 0.0);
-            long daysStayed = patient.getStayLengthInDays();
+    private static void writeBillingRecord(BillingRecord record) {
+        if (patientService.submitBillingRecord(record)) {
+            System.out.println("Billing record queued for billing.txt");
+        } else {
+            System.out.println("Error writing billing record: billing ledger is not available or is full");
+        }
+    }
 
-            pw.printf("%d, %s, %s, %d, %.2f, %.2f%n",
-                    patient.getId(),
-                    patient.getName(),
-                    patient.getWard(),
-                    daysStayed,
-                    dailyRate,
-                    charges);
+    private static void importEvents() {
+        System.out.println("\n--- Bulk Import Events ---");
+        System.out.println("One event per line: ADMIT,name,age,ward[,yyyy-MM-dd] or DISCHARGE,patientId[,yyyy-MM-dd]");
 
-            System.out.println("Billing record written to billing.txt");
+        Path file = Paths.get(getStringInput("Enter file path: "));
+        BulkImporter.ImportResult result;
+        try {
+            result = bulkImporter.importFile(file);
         } catch (IOException e) {
-            System.out.println("Error writing billing record: " + e.getMessage());
+            System.out.println("Error reading " + file + ": " + e.getMessage());
+            return;
+        }
+
+        System.out.println("\nAdmitted: " + result.getAdmitted().size());
+        System.out.println("Discharged: " + result.getDischarged().size() + " (total charges: ₹"
+                + String.format("%.2f", result.getTotalCharges()) + ", " + result.getBillingRecordsQueued()
+                + " billing record(s) queued)");
+        List<BulkImporter.Rejection> rejections = result.getRejections();
+        System.out.println("Rejected: " + rejections.size());
+        for (int i = 0; i < Math.min(rejections.size(), IMPORT_REJECTIONS_SHOWN); i++) {
+            System.out.println("  " + rejections.get(i));
+        }
+        if (rejections.size() > IMPORT_REJECTIONS_SHOWN) {
+            System.out.println("  ... and " + (rejections.size() - IMPORT_REJECTIONS_SHOWN) + " more");
         }
     }
 
@@ -281,36 +640,129 @@ public class Main {
 
         int choice = getIntInput("Enter choice: ");
 
-        List<Patient> patientsToShow = new ArrayList<>();
-
+        PatientFilter filter;
         switch (choice) {
             case 1:
-                patientsToShow = allPatients;
+                filter = PatientFilter.ALL;
                 break;
             case 2:
-                patientsToShow = allPatients.stream()
-                        .filter(Patient::isAdmitted)
-                        .collect(java.util.stream.Collectors.toList());
+                filter = PatientFilter.ALL.withStatus(PatientFilter.Status.ADMITTED);
                 break;
             case 3:
-                patientsToShow = allPatients.stream()
-                        .filter(p -> !p.isAdmitted())
-                        .collect(java.util.stream.Collectors.toList());
+                filter = PatientFilter.ALL.withStatus(PatientFilter.Status.DISCHARGED);
                 break;
             default:
                 System.out.println("Invalid choice.");
                 return;
         }
 
-        if (patientsToShow.isEmpty()) {
-            System.out.println("\nNo patients to display.");
-        } else {
-            System.out.println("\n" + patientsToShow.size() + " patient(s) found:\n");
-            for (Patient p : patientsToShow) {
-                System.out.println(p);
-                System.out.println("---");
+        String wardInput = getStringInput("Ward (Enter for all): ").toUpperCase();
+        if (!wardInput.isEmpty()) {
+            try {
+                filter = filter.withWard(Ward.valueOf(wardInput));
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid ward. Listing all wards.");
             }
         }
+        LocalDate from = getDateInput("Admitted from (yyyy-MM-dd) or press Enter for any: ");
+        LocalDate to = getDateInput("Admitted until (yyyy-MM-dd) or press Enter for any: ");
+        if (from != null || to != null) {
+            filter = filter.withAdmittedBetween(from != null ? (int) from.toEpochDay() : Patient.NO_DATE,
+                    to != null ? (int) to.toEpochDay() : Patient.NO_DATE);
+        }
+
+        PatientFilter selected = filter;
+        showPages(cursor -> patientRepository.findPage(selected, cursor, LIST_PAGE_SIZE));
+    }
+
+    private static void searchPatients() {
+        System.out.println("\n--- Search Patients by Name ---");
+        String query = getStringInput("Enter name or start of name: ");
+        if (query.isEmpty()) {
+            return;
+        }
+
+        PatientPage first = patientRepository.findByName(query, false, PatientFilter.ALL, PatientPage.FIRST,
+                LIST_PAGE_SIZE);
+        boolean fuzzy = first.size() == 0;
+        if (fuzzy) {
+            System.out.println("No names start with \"" + query + "\"; showing similar names.");
+        }
+        showPages(cursor -> patientRepository.findByName(query, fuzzy, PatientFilter.ALL, cursor, LIST_PAGE_SIZE));
+    }
+
+    private static void showWardCensus() {
+        System.out.println("\n--- Ward Census ---");
+
+        Ward ward;
+        try {
+            ward = Ward.valueOf(getStringInput("Enter ward: ").toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.out.println("Invalid ward.");
+            return;
+        }
+        LocalDate from = getDateInput("From (yyyy-MM-dd) or press Enter for today: ");
+        if (from == null) {
+            from = HospitalClock.today();
+        }
+        LocalDate to = getDateInput("Until (yyyy-MM-dd) or press Enter for the same day: ");
+        if (to == null) {
+            to = from;
+        }
+        if (to.isBefore(from)) {
+            System.out.println("End date is before start date.");
+            return;
+        }
+
+        // Counts come from WardAnalytics prefix sums; the listing from the stay index
+        int fromDay = (int) from.toEpochDay();
+        int toDay = (int) to.toEpochDay();
+        WardAnalytics analytics = patientRepository.getAnalytics();
+        System.out.println("\n" + ward.name() + " from " + from.format(DATE_FORMATTER) + " to "
+                + to.format(DATE_FORMATTER) + ": " + analytics.getStayCount(ward, fromDay, toDay)
+                + " stay(s), " + analytics.getPatientDays(ward, fromDay, toDay) + " patient-day(s)");
+        showPages(cursor -> patientRepository.findStays(ward, fromDay, toDay, cursor, LIST_PAGE_SIZE));
+    }
+
+    /**
+     * Prints pages from the first cursor on, asking before each further page.
+     */
+    private static void showPages(LongFunction<PatientPage> pages) {
+        // Pages are rendered straight from the column store; nothing is collected up front
+        PatientListRenderer renderer = new PatientListRenderer(
+                new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)));
+        long cursor = PatientPage.FIRST;
+        int shown = 0;
+        try {
+            while (true) {
+                PatientPage page;
+                // Page and render under the read lock so no row changes in between; not held while prompting
+                patientRepository.getLock().readLock().lock();
+                try {
+                    page = pages.apply(cursor);
+                    if (shown == 0 && page.size() > 0) {
+                        System.out.println();
+                    }
+                    renderer.render(patientRepository.getColumns(), page);
+                } finally {
+                    patientRepository.getLock().readLock().unlock();
+                }
+                shown += page.size();
+                cursor = page.getNextCursor();
+
+                if (!page.hasMore()) {
+                    break;
+                }
+                String next = getStringInput("-- " + shown + " shown. Enter for more, q to stop: ");
+                if (next.equalsIgnoreCase("q")) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Error listing patients: " + e.getMessage());
+        }
+
+        System.out.println(shown == 0 ? "\nNo patients to display." : "\n" + shown + " patient(s) shown.");
     }
 
     private static void showOccupancyAnalytics() {
@@ -329,6 +781,7 @@ public class Main {
             System.out.println("  Total beds: " + total);
             System.out.println("  Occupied: " + occupied);
             System.out.println("  Free: " + free);
+            System.out.println("  Waiting: " + bedManager.getWaitingCount(ward));
             System.out.printf("  Occupancy: %.2f%%%n%n", occupancyPercent);
 
             totalBedsHospital += total;
@@ -340,55 +793,145 @@ public class Main {
         System.out.printf("  %d / %d beds (%.2f%%)%n%n",
                 totalOccupiedHospital, totalBedsHospital, overallOccupancy);
 
-        // Average length of stay
-        List<Patient> dischargedPatients = allPatients.stream()
-                .filter(p -> !p.isAdmitted())
-                .collect(java.util.stream.Collectors.toList());
-
-        if (!dischargedPatients.isEmpty()) {
-            long totalDays = dischargedPatients.stream()
-                    .mapToLong(Patient::getStayLengthInDays)
-                    .sum();
-            double avgStay = totalDays / (double) dischargedPatients.size();
-            System.out.printf("Average Length of Stay: %.2f days%n", avgStay);
-            System.out.println("  (Based on " + dischargedPatients.size() + " discharged patients)");
+        // Length of stay and census come from running totals, not from history
+        WardAnalytics analytics = patientRepository.getAnalytics();
+        long dischargedCount = analytics.getDischargeCount();
+        if (dischargedCount > 0) {
+            System.out.printf("Average Length of Stay: %.2f days (median %s, 90th percentile %s)%n",
+                    analytics.getAverageStay(), formatStay(analytics.getStayPercentile(50)),
+                    formatStay(analytics.getStayPercentile(90)));
+            System.out.println("  (Based on " + dischargedCount + " discharged patients)");
+            for (Ward ward : Ward.values()) {
+                long count = analytics.getDischargeCount(ward);
+                if (count > 0) {
+                    System.out.printf("  %s: %.2f days (median %s, %d patients)%n", ward.name(),
+                            analytics.getAverageStay(ward), formatStay(analytics.getStayPercentile(ward, 50)), count);
+                }
+            }
         } else {
             System.out.println("No discharged patients yet.");
         }
+
+        int today = HospitalClock.todayEpochDay();
+        System.out.println("\nDaily census, last 7 days (oldest first):");
+        for (Ward ward : Ward.values()) {
+            System.out.println("  " + ward.name() + ": "
+                    + Arrays.toString(analytics.getCensusSeries(ward, today - 6, today)));
+        }
+
+        long now = System.currentTimeMillis();
+        System.out.println("\nOccupied beds over time (recorded since startup):");
+        for (Ward ward : Ward.values()) {
+            System.out.println("  " + ward.name() + ":");
+            System.out.println("    last hour:    " + occupancyHistory.getStats(ward, now - 3_600_000L, now));
+            System.out.println("    last 24h:     " + occupancyHistory.getStats(ward, now - 86_400_000L, now));
+            System.out.println("    last 30 days: " + occupancyHistory.getStats(ward, now - 30 * 86_400_000L, now));
+        }
+
+        if (clusterNode != null) {
+            System.out.println("\nCluster sites (occupied/total):");
+            for (SiteOccupancy site : clusterNode.getSites()) {
+                System.out.println("  " + site);
+            }
+        }
+
+        System.out.println("\nAlert Dispatch (" + alertDispatcher.getPolicy() + "):");
+        System.out.println("  Queue depth: " + alertDispatcher.getQueueDepth() +
+                " (max " + alertDispatcher.getMaxQueueDepth() + ")");
+        System.out.println("  Events: " + alertDispatcher.getPublishedCount() + " published, " +
+                alertDispatcher.getDispatchedCount() + " dispatched, " +
+                alertDispatcher.getCoalescedCount() + " coalesced, " +
+                alertDispatcher.getDroppedCount() + " dropped");
+        System.out.printf("  Dispatch lag: avg %.1f µs, max %.1f µs%n",
+                alertDispatcher.getAverageDispatchLagNanos() / 1000.0,
+                alertDispatcher.getMaxDispatchLagNanos() / 1000.0);
+    }
+
+    private static String formatStay(int days) {
+        if (days > WardAnalytics.MAX_TRACKED_STAY) {
+            return ">" + WardAnalytics.MAX_TRACKED_STAY + " days";
+        }
+        return days == 1 ? "1 day" : days + " days";
+    }
+
+    private static void rebillDischargedPatients() {
+        System.out.println("\n--- Re-bill Discharged Patients ---");
+
+        // Materialize the history once; the list view would rebuild each Patient per access
+        List<Patient> discharged = Arrays.asList(patientRepository.getDischarged().toArray(new Patient[0]));
+        if (discharged.isEmpty()) {
+            System.out.println("No discharged patients to bill.");
+            return;
+        }
+
+        long start = System.nanoTime();
+        double[] charges;
+        try {
+            charges = billingService.calculateCharges(discharged);
+        } catch (InvalidPatientStateException e) {
+            System.out.println("ERROR: " + e.getMessage());
+            return;
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        double[] totalsByWard = new double[Ward.values().length];
+        int[] countsByWard = new int[Ward.values().length];
+        for (int i = 0; i < charges.length; i++) {
+            int ward = discharged.get(i).getWard().ordinal();
+            totalsByWard[ward] += charges[i];
+            countsByWard[ward]++;
+        }
+
+        double grandTotal = 0;
+        for (Ward ward : Ward.values()) {
+            System.out.printf("  %s: %d patient(s), ₹%.2f%n", ward.name(),
+                    countsByWard[ward.ordinal()], totalsByWard[ward.ordinal()]);
+            grandTotal += totalsByWard[ward.ordinal()];
+        }
+        System.out.printf("Total: ₹%.2f for %d patient(s), computed in %d ms%n",
+                grandTotal, charges.length, elapsedMillis);
     }
 
     private static void saveAndExit() {
         System.out.println("\nSaving data...");
 
-        // Save patients to patients.csv
-        try (PrintWriter pw = new PrintWriter(new FileWriter("patients.csv"))) {
-            pw.println("id,name,age,ward,bedNo,admitDate,dischargeDate");
-            for (Patient p : allPatients) {
-                pw.printf("%d,%s,%d,%s,%d,%s,%s%n",
-                        p.getId(),
-                        p.getName(),
-                        p.getAge(),
-                        p.getWard(),
-                        p.getBedNumber(),
-                        p.getAdmitDate().format(DATE_FORMATTER),
-                        p.getDischargeDate() != null ? p.getDischargeDate().format(DATE_FORMATTER) : "");
+        if (clusterNode != null) {
+            clusterNode.close();
+        }
+
+        try {
+            rateWatcher.close();
+        } catch (IOException e) {
+            // Only stops watching rates.cfg
+        }
+
+        // Deliver any queued bed alerts and commit them before the process exits
+        alertDispatcher.shutdown();
+        fileBedAlert.close();
+        if (billingLedger != null) {
+            billingLedger.close();
+        }
+
+        // Every change is already journaled; only make sure it is on disk. Without a
+        // journal fall back to writing a full snapshot.
+        try {
+            if (journal != null) {
+                long pending = journal.getEventsSinceSnapshot();
+                journal.close();
+                System.out.println("Journal synced (" + pending + " event(s) since last snapshot)");
+            } else {
+                writeSnapshot();
+                System.out.println("Saved patients to " + SNAPSHOT_FILE);
             }
-            System.out.println("Saved patients to patients.csv");
         } catch (IOException e) {
             System.out.println("Error saving patients: " + e.getMessage());
         }
+        MetricsRegistry.INSTANCE.stopPeriodicDump(METRICS_FILE);
 
         System.out.println("\nThank you for using Hospital Patient Record System!");
         System.out.println("Goodbye!");
     }
 
-    private static Patient findPatientById(int id) {
-        return allPatients.stream()
-                .filter(p -> p.getId() == id)
-                .findFirst()
-                .orElse(null);
-    }
-
     private static int getIntInput(String prompt) {
         while (true) {
             System.out.print(prompt);
@@ -417,7 +960,7 @@ public class Main {
             return LocalDate.parse(input, DATE_FORMATTER);
         } catch (DateTimeParseException e) {
             System.out.println("Invalid date format. Using today's date.");
-            return LocalDate.now();
+            return HospitalClock.today();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,18 @@
+
+import java.util.Map;
+
+/**
+ * JMX view of the MetricsRegistry, registered as hospital:type=Metrics.
+ */
+public interface MetricsMXBean {
+    Map<String, Long> getCounters();
+
+    Map<String, Long> getGauges();
+
+    /**
+     * Per histogram: count, mean, p50, p90, p99, p999 and max, keyed "name.stat".
+     */
+    Map<String, Double> getLatencies();
+
+    String dump();
+}
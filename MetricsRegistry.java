@@ -0,0 +1,165 @@
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide named counters, gauges and latency histograms. Instrumented
+ * classes look their metrics up once into static fields, so recording never
+ * touches the registry maps. Exposed through JMX and an optional text file
+ * that is rewritten periodically.
+ */
+public class MetricsRegistry implements MetricsMXBean {
+    public static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    private static final String OBJECT_NAME = "hospital:type=Metrics";
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    private static final String[] PERCENTILE_LABELS = {"p50", "p90", "p99", "p999"};
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private ScheduledExecutorService dumper;
+
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, Counter::new);
+    }
+
+    public LatencyHistogram histogram(String name) {
+        return histogram(name, 1);
+    }
+
+    /**
+     * Histogram whose startTimer() samples one call in sampleEvery (a power of two).
+     * Counts then reflect sampled calls only.
+     */
+    public LatencyHistogram histogram(String name, int sampleEvery) {
+        return histograms.computeIfAbsent(name, n -> new LatencyHistogram(n, sampleEvery));
+    }
+
+    /**
+     * Registers a value read on demand, replacing any gauge with the same name.
+     */
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new TreeMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.get()));
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getGauges() {
+        Map<String, Long> values = new TreeMap<>();
+        gauges.forEach((name, gauge) -> values.put(name, gauge.getAsLong()));
+        return values;
+    }
+
+    @Override
+    public Map<String, Double> getLatencies() {
+        Map<String, Double> values = new TreeMap<>();
+        histograms.forEach((name, histogram) -> {
+            values.put(name + ".count", (double) histogram.getCount());
+            values.put(name + ".mean", histogram.getMean());
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                values.put(name + "." + PERCENTILE_LABELS[i], (double) histogram.getPercentile(PERCENTILES[i]));
+            }
+            values.put(name + ".max", (double) histogram.getMax());
+        });
+        return values;
+    }
+
+    /**
+     * Human-readable report of every metric, sorted by name. Latencies are in microseconds.
+     */
+    @Override
+    public String dump() {
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append("# metrics at ").append(LocalDateTime.now().withNano(0)).append('\n');
+
+        getCounters().forEach((name, value) -> sb.append(name).append(' ').append(value).append('\n'));
+        getGauges().forEach((name, value) -> sb.append(name).append(' ').append(value).append('\n'));
+
+        for (LatencyHistogram histogram : new TreeMap<>(histograms).values()) {
+            sb.append(histogram.getName()).append(" count=").append(histogram.getCount());
+            if (histogram.getSampleEvery() > 1) {
+                sb.append(" (1 in ").append(histogram.getSampleEvery()).append(" sampled)");
+            }
+            sb.append(String.format(" mean=%.1fus", histogram.getMean() / 1000.0));
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                sb.append(String.format(" %s=%.1fus", PERCENTILE_LABELS[i],
+                        histogram.getPercentile(PERCENTILES[i]) / 1000.0));
+            }
+            sb.append(String.format(" max=%.1fus", histogram.getMax() / 1000.0)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Registers this registry with the platform MBean server. Safe to call more than once.
+     */
+    public void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (JMException e) {
+            System.err.println("Failed to register metrics MBean: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Rewrites the file with dump() every intervalSeconds from a daemon thread.
+     */
+    public synchronized void startPeriodicDump(Path file, long intervalSeconds) {
+        if (dumper != null) {
+            return;
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleWithFixedDelay(() -> writeDump(file), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stops the periodic dump and writes one final report.
+     */
+    public synchronized void stopPeriodicDump(Path file) {
+        if (dumper != null) {
+            dumper.shutdown();
+            dumper = null;
+        }
+        writeDump(file);
+    }
+
+    private void writeDump(Path file) {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.write(temp, dump().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Failed to write metrics to " + file + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,272 @@
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Per-ward occupancy time series for capacity planning. Every bed event is
+ * folded into four preallocated ring buffers of primitive arrays at once:
+ * minutes (2 days), hours (90 days), days (2 years) and 30-day "months"
+ * (10 years). Each bucket holds min, max and the time-weighted sum of the
+ * occupied count, so memory stays constant however long the system runs.
+ *
+ * Between events the last count is carried forward, so quiet periods still
+ * have data. Queries pick the finest resolution that still covers the window.
+ */
+public class OccupancyHistory implements BedObserver {
+    public enum Resolution {
+        MINUTE(TimeUnit.MINUTES.toMillis(1), 2 * 24 * 60),
+        HOUR(TimeUnit.HOURS.toMillis(1), 90 * 24),
+        DAY(TimeUnit.DAYS.toMillis(1), 2 * 366),
+        MONTH(TimeUnit.DAYS.toMillis(30), 10 * 12);
+
+        private final long millis;
+        private final int buckets;
+
+        Resolution(long millis, int buckets) {
+            this.millis = millis;
+            this.buckets = buckets;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public int getBuckets() {
+            return buckets;
+        }
+    }
+
+    private static final Resolution[] RESOLUTIONS = Resolution.values();
+
+    private final LongSupplier clock;
+    private final WardSeries[] series = new WardSeries[Ward.values().length];
+
+    public OccupancyHistory() {
+        this(System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock current time in epoch milliseconds
+     */
+    public OccupancyHistory(LongSupplier clock) {
+        this.clock = clock;
+        for (int w = 0; w < series.length; w++) {
+            series[w] = new WardSeries();
+        }
+    }
+
+    @Override
+    public void onBedStatusChanged(Ward ward, int freeBeds, int totalBeds) {
+        record(ward, totalBeds - freeBeds, clock.getAsLong());
+    }
+
+    /**
+     * Records that the ward had the given occupied count from this time on.
+     * Times earlier than the last recorded one are treated as that time.
+     */
+    public void record(Ward ward, int occupied, long timeMillis) {
+        WardSeries s = series[ward.ordinal()];
+        synchronized (s) {
+            s.record(occupied, timeMillis);
+        }
+    }
+
+    /**
+     * Min, max and time-weighted average occupancy over [fromMillis, toMillis).
+     */
+    public OccupancyStats getStats(Ward ward, long fromMillis, long toMillis) {
+        WardSeries s = series[ward.ordinal()];
+        synchronized (s) {
+            long to = Math.min(toMillis, clock.getAsLong());
+            s.catchUp(to);
+            return s.stats(s.finestCovering(fromMillis), fromMillis, to);
+        }
+    }
+
+    /**
+     * Time-weighted average per bucket at a fixed resolution, oldest first. At most
+     * the newest getBuckets() buckets of the window are returned; buckets with no
+     * data, or no longer retained, are NaN.
+     */
+    public double[] getSeries(Ward ward, Resolution resolution, long fromMillis, long toMillis) {
+        WardSeries s = series[ward.ordinal()];
+        synchronized (s) {
+            s.catchUp(Math.min(toMillis, clock.getAsLong()));
+            return s.levels[resolution.ordinal()].averages(fromMillis, toMillis);
+        }
+    }
+
+    /**
+     * All resolutions for one ward, fed from the same events.
+     */
+    private static class WardSeries {
+        private final Level[] levels = new Level[RESOLUTIONS.length];
+        private boolean started;
+        private int current;
+        private long lastMillis;
+
+        WardSeries() {
+            for (int r = 0; r < levels.length; r++) {
+                levels[r] = new Level(RESOLUTIONS[r]);
+            }
+        }
+
+        void record(int occupied, long timeMillis) {
+            long time = started ? Math.max(timeMillis, lastMillis) : timeMillis;
+            catchUp(time);
+            started = true;
+            current = occupied;
+            lastMillis = time;
+            for (Level level : levels) {
+                level.mark(time, occupied);
+            }
+        }
+
+        /**
+         * Carries the current count forward to the given time.
+         */
+        void catchUp(long timeMillis) {
+            if (!started || timeMillis <= lastMillis) {
+                return;
+            }
+            for (Level level : levels) {
+                level.hold(lastMillis, timeMillis, current);
+            }
+            lastMillis = timeMillis;
+        }
+
+        Level finestCovering(long fromMillis) {
+            for (Level level : levels) {
+                if (level.oldestRetainedMillis() <= fromMillis) {
+                    return level;
+                }
+            }
+            return levels[levels.length - 1];
+        }
+
+        OccupancyStats stats(Level level, long fromMillis, long toMillis) {
+            return started ? level.stats(fromMillis, toMillis) : OccupancyStats.EMPTY;
+        }
+    }
+
+    /**
+     * Ring buffer of buckets at one resolution. Slot = bucket number % capacity;
+     * bucketIds tells whether a slot still holds the bucket being looked up.
+     */
+    private static class Level {
+        private final long resolution;
+        private final int capacity;
+        private final long[] bucketIds;
+        private final int[] mins;
+        private final int[] maxs;
+        private final double[] weightedSums; // occupied count x millis
+        private final long[] coveredMillis;
+        private long newestBucket = -1;
+
+        Level(Resolution r) {
+            this.resolution = r.getMillis();
+            this.capacity = r.getBuckets();
+            this.bucketIds = new long[capacity];
+            this.mins = new int[capacity];
+            this.maxs = new int[capacity];
+            this.weightedSums = new double[capacity];
+            this.coveredMillis = new long[capacity];
+            Arrays.fill(bucketIds, -1);
+        }
+
+        private int slotFor(long bucket, int value) {
+            int slot = (int) Math.floorMod(bucket, (long) capacity);
+            if (bucketIds[slot] != bucket) {
+                bucketIds[slot] = bucket;
+                mins[slot] = value;
+                maxs[slot] = value;
+                weightedSums[slot] = 0;
+                coveredMillis[slot] = 0;
+            }
+            newestBucket = Math.max(newestBucket, bucket);
+            return slot;
+        }
+
+        /** A new count seen at a point in time (counts for min/max even if it lasts 0 ms). */
+        void mark(long timeMillis, int value) {
+            int slot = slotFor(Math.floorDiv(timeMillis, resolution), value);
+            mins[slot] = Math.min(mins[slot], value);
+            maxs[slot] = Math.max(maxs[slot], value);
+        }
+
+        /** The count held steady over [fromMillis, toMillis). */
+        void hold(long fromMillis, long toMillis, int value) {
+            long first = Math.floorDiv(fromMillis, resolution);
+            long last = Math.floorDiv(toMillis - 1, resolution);
+            // Only the newest capacity buckets can be kept anyway
+            if (last - first >= capacity) {
+                first = last - capacity + 1;
+                fromMillis = first * resolution;
+            }
+
+            for (long bucket = first; bucket <= last; bucket++) {
+                long start = Math.max(fromMillis, bucket * resolution);
+                long end = Math.min(toMillis, (bucket + 1) * resolution);
+                int slot = slotFor(bucket, value);
+                mins[slot] = Math.min(mins[slot], value);
+                maxs[slot] = Math.max(maxs[slot], value);
+                weightedSums[slot] += (double) value * (end - start);
+                coveredMillis[slot] += end - start;
+            }
+        }
+
+        long oldestRetainedMillis() {
+            return newestBucket < 0 ? Long.MAX_VALUE : (newestBucket - capacity + 1) * resolution;
+        }
+
+        /**
+         * Aggregates whole buckets overlapping the window, so edges are rounded to the resolution.
+         */
+        OccupancyStats stats(long fromMillis, long toMillis) {
+            if (toMillis <= fromMillis) {
+                return OccupancyStats.EMPTY;
+            }
+            long first = Math.max(Math.floorDiv(fromMillis, resolution), newestBucket - capacity + 1);
+            long last = Math.min(Math.floorDiv(toMillis - 1, resolution), newestBucket);
+
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            double weightedSum = 0;
+            long covered = 0;
+            for (long bucket = first; bucket <= last; bucket++) {
+                int slot = (int) Math.floorMod(bucket, (long) capacity);
+                if (bucketIds[slot] != bucket) {
+                    continue;
+                }
+                min = Math.min(min, mins[slot]);
+                max = Math.max(max, maxs[slot]);
+                weightedSum += weightedSums[slot];
+                covered += coveredMillis[slot];
+            }
+            if (min == Integer.MAX_VALUE) {
+                return OccupancyStats.EMPTY;
+            }
+            // A window holding only an instantaneous event has min/max but no duration
+            double average = covered > 0 ? weightedSum / covered : (min + max) / 2.0;
+            return new OccupancyStats(min, max, average, Math.max(covered, 1), resolution);
+        }
+
+        double[] averages(long fromMillis, long toMillis) {
+            long first = Math.floorDiv(fromMillis, resolution);
+            long last = Math.floorDiv(toMillis - 1, resolution);
+            if (last < first) {
+                return new double[0];
+            }
+            double[] result = new double[(int) Math.min(last - first + 1, capacity)];
+            first = last - result.length + 1;
+            for (int i = 0; i < result.length; i++) {
+                long bucket = first + i;
+                int slot = (int) Math.floorMod(bucket, (long) capacity);
+                result[i] = bucketIds[slot] == bucket && coveredMillis[slot] > 0
+                        ? weightedSums[slot] / coveredMillis[slot] : Double.NaN;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+
+/**
+ * Occupied-bed statistics over a time window. The average is time-weighted:
+ * a count that held for an hour weighs sixty times one that held for a minute.
+ */
+public class OccupancyStats {
+    public static final OccupancyStats EMPTY = new OccupancyStats(0, 0, 0, 0, 0);
+
+    private final int min;
+    private final int max;
+    private final double average;
+    private final long coveredMillis;
+    private final long resolutionMillis;
+
+    public OccupancyStats(int min, int max, double average, long coveredMillis, long resolutionMillis) {
+        this.min = min;
+        this.max = max;
+        this.average = average;
+        this.coveredMillis = coveredMillis;
+        this.resolutionMillis = resolutionMillis;
+    }
+
+    public boolean isEmpty() {
+        return coveredMillis == 0;
+    }
+
+    public int getMin() {
+        return min;
+    }
+
+    public int getMax() {
+        return max;
+    }
+
+    public double getAverage() {
+        return average;
+    }
+
+    /**
+     * Part of the window for which occupancy was known.
+     */
+    public long getCoveredMillis() {
+        return coveredMillis;
+    }
+
+    /**
+     * Bucket size the figures were computed from; window edges are rounded to it.
+     */
+    public long getResolutionMillis() {
+        return resolutionMillis;
+    }
+
+    @Override
+    public String toString() {
+        if (isEmpty()) {
+            return "no data";
+        }
+        return String.format("min %d, max %d, avg %.1f", min, max, average);
+    }
+}
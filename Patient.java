@@ -2,37 +2,56 @@
 
 
 import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
 
 public class Patient extends Person {
+    /** Epoch day value meaning "no date". */
+    public static final int NO_DATE = Integer.MIN_VALUE;
+
     private Ward ward;
     private int bedNumber;
-    private LocalDate admitDate;
-    private LocalDate dischargeDate;
+    // Dates are kept as epoch days so stay lengths are a subtraction
+    private int admitDay;
+    private int dischargeDay;
     private BillingPolicy billingPolicy;
 
     public Patient(int id, String name, int age, Ward ward, int bedNumber,
                    LocalDate admitDate, BillingPolicy billingPolicy) {
+        this(id, name, age, ward, bedNumber, toEpochDay(admitDate), billingPolicy);
+    }
+
+    public Patient(int id, String name, int age, Ward ward, int bedNumber,
+                   int admitEpochDay, BillingPolicy billingPolicy) {
         super(id, name, age);
         this.ward = ward;
         this.bedNumber = bedNumber;
-        this.admitDate = admitDate;
-        this.dischargeDate = null;
+        this.admitDay = admitEpochDay;
+        this.dischargeDay = NO_DATE;
         this.billingPolicy = billingPolicy;
     }
 
+    private static int toEpochDay(LocalDate date) {
+        return date != null ? (int) date.toEpochDay() : NO_DATE;
+    }
+
+    private static LocalDate toLocalDate(int epochDay) {
+        return epochDay != NO_DATE ? LocalDate.ofEpochDay(epochDay) : null;
+    }
+
     public boolean isAdmitted() {
-        return dischargeDate == null;
+        return dischargeDay == NO_DATE;
     }
 
+    /**
+     * Days between admission and discharge (or today), at least 1.
+     * "Today" comes from HospitalClock, so this never reads the system clock.
+     */
     public long getStayLengthInDays() {
-        if (admitDate == null) {
+        if (admitDay == NO_DATE) {
             return 0;
         }
 
-        LocalDate endDate = dischargeDate != null ? dischargeDate : LocalDate.now();
-        long days = ChronoUnit.DAYS.between(admitDate, endDate);
-        return Math.max(1, days);
+        int endDay = dischargeDay != NO_DATE ? dischargeDay : HospitalClock.todayEpochDay();
+        return Math.max(1, endDay - admitDay);
     }
 
     public Ward getWard() {
@@ -52,19 +71,37 @@ public class Patient extends Person {
     }
 
     public LocalDate getAdmitDate() {
-        return admitDate;
+        return toLocalDate(admitDay);
     }
 
     public void setAdmitDate(LocalDate admitDate) {
-        this.admitDate = admitDate;
+        this.admitDay = toEpochDay(admitDate);
     }
 
     public LocalDate getDischargeDate() {
-        return dischargeDate;
+        return toLocalDate(dischargeDay);
     }
 
     public void setDischargeDate(LocalDate dischargeDate) {
-        this.dischargeDate = dischargeDate;
+        this.dischargeDay = toEpochDay(dischargeDate);
+    }
+
+    /**
+     * Admission date as an epoch day, or NO_DATE.
+     */
+    public int getAdmitEpochDay() {
+        return admitDay;
+    }
+
+    /**
+     * Discharge date as an epoch day, or NO_DATE while admitted.
+     */
+    public int getDischargeEpochDay() {
+        return dischargeDay;
+    }
+
+    public void setDischargeEpochDay(int dischargeEpochDay) {
+        this.dischargeDay = dischargeEpochDay;
     }
 
     public BillingPolicy getBillingPolicy() {
@@ -88,8 +125,8 @@ public class Patient extends Person {
                         "Status: %s%n" +
                         "Days Stayed: %d",
                 getId(), getName(), getAge(), ward, bedNumber,
-                admitDate,
-                dischargeDate != null ? dischargeDate.toString() : "N/A",
+                getAdmitDate(),
+                dischargeDay != NO_DATE ? getDischargeDate().toString() : "N/A",
                 isAdmitted() ? "Admitted" : "Discharged",
                 getStayLengthInDays()
         );
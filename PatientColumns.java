@@ -0,0 +1,171 @@
+
+import java.util.Arrays;
+
+/**
+ * Structure-of-arrays patient store: one primitive array per field, indexed by
+ * row. Aggregations over the whole history run as tight loops over the
+ * columns instead of chasing Patient and LocalDate objects.
+ */
+public class PatientColumns {
+    public static final int NO_DATE = Patient.NO_DATE;
+
+    private static final Ward[] WARDS = Ward.values();
+
+    private int size;
+    private int[] ids;
+    private int[] ages;
+    private byte[] wards;
+    private int[] bedNumbers;
+    private int[] admitDays;
+    private int[] dischargeDays;
+    private String[] names;
+
+    public PatientColumns(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        ids = new int[capacity];
+        ages = new int[capacity];
+        wards = new byte[capacity];
+        bedNumbers = new int[capacity];
+        admitDays = new int[capacity];
+        dischargeDays = new int[capacity];
+        names = new String[capacity];
+    }
+
+    /**
+     * Appends a patient and returns its row.
+     */
+    public int append(Patient patient) {
+        return append(patient.getId(), patient.getName(), patient.getAge(), patient.getWard(),
+                patient.getBedNumber(), patient.getAdmitEpochDay(), patient.getDischargeEpochDay());
+    }
+
+    public int append(int id, String name, int age, Ward ward, int bedNumber, int admitDay, int dischargeDay) {
+        if (size == ids.length) {
+            grow();
+        }
+
+        int row = size++;
+        ids[row] = id;
+        ages[row] = age;
+        wards[row] = (byte) ward.ordinal();
+        bedNumbers[row] = bedNumber;
+        admitDays[row] = admitDay;
+        dischargeDays[row] = dischargeDay;
+        names[row] = name;
+        return row;
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        ages = Arrays.copyOf(ages, capacity);
+        wards = Arrays.copyOf(wards, capacity);
+        bedNumbers = Arrays.copyOf(bedNumbers, capacity);
+        admitDays = Arrays.copyOf(admitDays, capacity);
+        dischargeDays = Arrays.copyOf(dischargeDays, capacity);
+        names = Arrays.copyOf(names, capacity);
+    }
+
+    public void setDischargeDay(int row, int epochDay) {
+        dischargeDays[row] = epochDay;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getId(int row) {
+        return ids[row];
+    }
+
+    public int getAge(int row) {
+        return ages[row];
+    }
+
+    public Ward getWard(int row) {
+        return WARDS[wards[row]];
+    }
+
+    public int getBedNumber(int row) {
+        return bedNumbers[row];
+    }
+
+    public int getAdmitDay(int row) {
+        return admitDays[row];
+    }
+
+    public int getDischargeDay(int row) {
+        return dischargeDays[row];
+    }
+
+    public String getName(int row) {
+        return names[row];
+    }
+
+    public boolean isAdmitted(int row) {
+        return dischargeDays[row] == NO_DATE;
+    }
+
+    public Patient toPatient(int row, BillingPolicy policy) {
+        Patient patient = new Patient(ids[row], names[row], ages[row], WARDS[wards[row]], bedNumbers[row],
+                admitDays[row], policy);
+        patient.setDischargeEpochDay(dischargeDays[row]);
+        return patient;
+    }
+
+    public View view() {
+        return new View();
+    }
+
+    /**
+     * Reusable read-only cursor over one row, for scanning without materializing
+     * a Patient per row. Call moveTo before reading.
+     */
+    public class View {
+        private int row;
+
+        public View moveTo(int row) {
+            if (row < 0 || row >= size) {
+                throw new IndexOutOfBoundsException("Row " + row + " out of bounds for size " + size);
+            }
+            this.row = row;
+            return this;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        public int getId() {
+            return ids[row];
+        }
+
+        public String getName() {
+            return names[row];
+        }
+
+        public int getAge() {
+            return ages[row];
+        }
+
+        public Ward getWard() {
+            return WARDS[wards[row]];
+        }
+
+        public int getBedNumber() {
+            return bedNumbers[row];
+        }
+
+        public int getAdmitDay() {
+            return admitDays[row];
+        }
+
+        public int getDischargeDay() {
+            return dischargeDays[row];
+        }
+
+        public boolean isAdmitted() {
+            return dischargeDays[row] == NO_DATE;
+        }
+    }
+}
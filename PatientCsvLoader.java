@@ -0,0 +1,345 @@
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Loads patients.csv by memory-mapping it, splitting it into newline-aligned
+ * chunks and parsing the chunks in parallel. Numbers, wards and dates are
+ * parsed straight from the mapped bytes; only the name becomes a String.
+ * Lines that cannot be parsed are skipped and counted.
+ *
+ * A name may be quoted as PatientCsvWriter writes it: in double quotes, with
+ * quotes inside doubled. Quoted names cannot span lines.
+ */
+public class PatientCsvLoader {
+    private static final int MIN_CHUNK_BYTES = 1 << 20;
+    private static final int MAX_CHUNK_BYTES = 64 << 20;
+    private static final byte[][] WARD_NAMES;
+
+    static {
+        Ward[] wards = Ward.values();
+        WARD_NAMES = new byte[wards.length][];
+        for (Ward ward : wards) {
+            WARD_NAMES[ward.ordinal()] = ward.name().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private final ForkJoinPool pool;
+
+    public PatientCsvLoader() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public PatientCsvLoader(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public static class LoadResult {
+        private final List<Patient> patients;
+        private final int skippedLines;
+
+        LoadResult(List<Patient> patients, int skippedLines) {
+            this.patients = patients;
+            this.skippedLines = skippedLines;
+        }
+
+        public List<Patient> getPatients() {
+            return patients;
+        }
+
+        public int getSkippedLines() {
+            return skippedLines;
+        }
+    }
+
+    /**
+     * Parses the whole file; patients are returned in file order. The file has
+     * no billing policy, so every patient gets StandardBillingPolicy until the
+     * caller assigns the ward's policy.
+     */
+    public LoadResult load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long dataStart = nextLineStart(channel, 0, size); // skip header
+
+            long chunkBytes = (size - dataStart) / (pool.getParallelism() * 4L) + 1;
+            chunkBytes = Math.max(MIN_CHUNK_BYTES, Math.min(MAX_CHUNK_BYTES, chunkBytes));
+
+            List<ChunkTask> tasks = new ArrayList<>();
+            long start = dataStart;
+            while (start < size) {
+                long end = start + chunkBytes >= size ? size : nextLineStart(channel, start + chunkBytes, size);
+                tasks.add(new ChunkTask(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start)));
+                start = end;
+            }
+
+            pool.invoke(new RecursiveTask<Void>() {
+                @Override
+                protected Void compute() {
+                    ForkJoinTask.invokeAll(tasks);
+                    return null;
+                }
+            });
+
+            // Merge chunk results in file order
+            int total = 0;
+            for (ChunkTask task : tasks) {
+                total += task.patients.size();
+            }
+            List<Patient> patients = new ArrayList<>(total);
+            int skipped = 0;
+            for (ChunkTask task : tasks) {
+                patients.addAll(task.patients);
+                skipped += task.skippedLines;
+            }
+            return new LoadResult(patients, skipped);
+        }
+    }
+
+    /**
+     * Returns the offset just after the first newline at or after position, or size.
+     */
+    private static long nextLineStart(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        long offset = position;
+        while (offset < size) {
+            probe.clear();
+            int read = channel.read(probe, offset);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+        return size;
+    }
+
+    private static class ChunkTask extends RecursiveTask<Void> {
+        private static final long serialVersionUID = 1L;
+
+        private final MappedByteBuffer data;
+        private final List<Patient> patients = new ArrayList<>();
+        private int skippedLines;
+
+        // Parse cursor within the current line and bounds of the last field read
+        private int pos;
+        private int lineEnd;
+        private int fieldStart;
+        private int fieldEnd;
+        // The last field was quoted and contains doubled quotes
+        private boolean fieldEscaped;
+        private byte[] nameBytes = new byte[64];
+
+        ChunkTask(MappedByteBuffer data) {
+            this.data = data;
+        }
+
+        @Override
+        protected Void compute() {
+            BillingPolicy policy = StandardBillingPolicy.INSTANCE;
+            int limit = data.limit();
+            int lineStart = 0;
+
+            while (lineStart < limit) {
+                int newline = lineStart;
+                while (newline < limit && data.get(newline) != '\n') {
+                    newline++;
+                }
+                lineEnd = newline > lineStart && data.get(newline - 1) == '\r' ? newline - 1 : newline;
+                pos = lineStart;
+
+                if (lineEnd > lineStart) {
+                    Patient patient = parseLine(policy);
+                    if (patient != null) {
+                        patients.add(patient);
+                    } else {
+                        skippedLines++;
+                    }
+                }
+                lineStart = newline + 1;
+            }
+            return null;
+        }
+
+        private Patient parseLine(BillingPolicy policy) {
+            try {
+                int id = parseIntField();
+                String name = parseStringField();
+                int age = parseIntField();
+                Ward ward = parseWardField();
+                int bedNo = parseIntField();
+                int admitDay = parseDateField();
+                int dischargeDay = pos <= lineEnd ? parseDateField() : Patient.NO_DATE;
+                if (id < 0 || age < 0 || bedNo < 0 || ward == null || admitDay == Patient.NO_DATE) {
+                    return null;
+                }
+
+                Patient patient = new Patient(id, name, age, ward, bedNo, admitDay, policy);
+                patient.setDischargeEpochDay(dischargeDay);
+                return patient;
+            } catch (DateTimeException | IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        /**
+         * Finds the end of the current field, trims surrounding spaces and
+         * leaves [fieldStart, fieldEnd) set, inside the quotes of a quoted
+         * field; pos moves past the delimiter.
+         *
+         * @throws IllegalArgumentException if a quoted field is not closed or
+         *         is followed by anything but the delimiter
+         */
+        private boolean nextField() {
+            if (pos > lineEnd) {
+                return false;
+            }
+            int start = pos;
+            while (start < lineEnd && data.get(start) == ' ') {
+                start++;
+            }
+            fieldEscaped = false;
+            if (start < lineEnd && data.get(start) == '"') {
+                return nextQuotedField(start + 1);
+            }
+
+            int end = start;
+            while (end < lineEnd && data.get(end) != ',') {
+                end++;
+            }
+            pos = end + 1;
+            while (end > start && data.get(end - 1) == ' ') {
+                end--;
+            }
+            fieldStart = start;
+            fieldEnd = end;
+            return true;
+        }
+
+        private boolean nextQuotedField(int start) {
+            int end = start;
+            while (true) {
+                while (end < lineEnd && data.get(end) != '"') {
+                    end++;
+                }
+                if (end == lineEnd) {
+                    throw new IllegalArgumentException("Unterminated quote");
+                }
+                if (end + 1 < lineEnd && data.get(end + 1) == '"') {
+                    fieldEscaped = true;
+                    end += 2;
+                } else {
+                    break;
+                }
+            }
+            int next = end + 1;
+            while (next < lineEnd && data.get(next) == ' ') {
+                next++;
+            }
+            if (next < lineEnd && data.get(next) != ',') {
+                throw new IllegalArgumentException("Text after closing quote");
+            }
+            pos = next + 1;
+            fieldStart = start;
+            fieldEnd = end;
+            return true;
+        }
+
+        /** Returns -1 if the field is missing or not a non-negative int. */
+        private int parseIntField() {
+            // Ten digits always fit in a long, so overflow is checked once at the end
+            if (!nextField() || fieldStart == fieldEnd || fieldEnd - fieldStart > 10) {
+                return -1;
+            }
+            long value = 0;
+            for (int i = fieldStart; i < fieldEnd; i++) {
+                int digit = data.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return -1;
+                }
+                value = value * 10 + digit;
+            }
+            return value > Integer.MAX_VALUE ? -1 : (int) value;
+        }
+
+        private String parseStringField() {
+            if (!nextField()) {
+                return "";
+            }
+            int length = fieldEnd - fieldStart;
+            if (length > nameBytes.length) {
+                nameBytes = new byte[Math.max(length, nameBytes.length * 2)];
+            }
+            data.get(fieldStart, nameBytes, 0, length);
+            String name = new String(nameBytes, 0, length, StandardCharsets.UTF_8);
+            return fieldEscaped ? name.replace("\"\"", "\"") : name;
+        }
+
+        /** Accepts the bare enum name and the legacy "NAME (Description)" form. */
+        private Ward parseWardField() {
+            if (!nextField()) {
+                return null;
+            }
+            for (Ward ward : Ward.values()) {
+                byte[] wardName = WARD_NAMES[ward.ordinal()];
+                int end = fieldStart + wardName.length;
+                if (end > fieldEnd || (end < fieldEnd && data.get(end) != ' ')) {
+                    continue;
+                }
+                boolean matches = true;
+                for (int i = 0; i < wardName.length && matches; i++) {
+                    matches = data.get(fieldStart + i) == wardName[i];
+                }
+                if (matches) {
+                    return ward;
+                }
+            }
+            return null;
+        }
+
+        /** Returns the date as an epoch day, or Patient.NO_DATE if the field is empty. */
+        private int parseDateField() {
+            if (!nextField() || fieldStart == fieldEnd) {
+                return Patient.NO_DATE;
+            }
+            if (fieldEnd - fieldStart != 10
+                    || data.get(fieldStart + 4) != '-' || data.get(fieldStart + 7) != '-') {
+                throw new DateTimeException("Malformed date");
+            }
+            int year = digits(fieldStart, 4);
+            int month = digits(fieldStart + 5, 2);
+            int day = digits(fieldStart + 8, 2);
+            if (year < 0 || month < 0 || day < 0) {
+                throw new DateTimeException("Malformed date");
+            }
+            return HospitalClock.epochDay(year, month, day);
+        }
+
+        private int digits(int offset, int count) {
+            int value = 0;
+            for (int i = offset; i < offset + count; i++) {
+                int digit = data.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return -1;
+                }
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+    }
+}
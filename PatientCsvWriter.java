@@ -0,0 +1,59 @@
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+
+/**
+ * Writes the patients.csv layout read by PatientCsvLoader. The file is written
+ * to a temporary sibling and moved into place, so a crash never leaves a
+ * half-written snapshot behind.
+ *
+ * Names containing a comma, a quote or surrounding spaces are written in
+ * double quotes with inner quotes doubled. Line breaks in a name are written
+ * as spaces, since the loader splits the file on newlines.
+ */
+public class PatientCsvWriter {
+    public static final String HEADER = "id,name,age,ward,bedNo,admitDate,dischargeDate";
+
+    public static void write(Path file, Collection<Patient> patients) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        try (FileOutputStream out = new FileOutputStream(temp.toFile());
+             Writer writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"), 1 << 16)) {
+            StringBuilder line = new StringBuilder(96);
+            writer.write(HEADER);
+            writer.write('\n');
+
+            for (Patient p : patients) {
+                line.setLength(0);
+                line.append(p.getId()).append(',')
+                        .append(csvName(p.getName())).append(',')
+                        .append(p.getAge()).append(',')
+                        .append(p.getWard().name()).append(',')
+                        .append(p.getBedNumber()).append(',')
+                        .append(p.getAdmitDate()).append(',');
+                if (p.getDischargeDate() != null) {
+                    line.append(p.getDischargeDate());
+                }
+                line.append('\n');
+                writer.append(line);
+            }
+
+            writer.flush();
+            out.getFD().sync();
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static String csvName(String name) {
+        String field = name.indexOf('\n') >= 0 || name.indexOf('\r') >= 0
+                ? name.replace("\r\n", " ").replace('\r', ' ').replace('\n', ' ')
+                : name;
+        boolean quote = field.indexOf(',') >= 0 || field.indexOf('"') >= 0
+                || (!field.isEmpty() && (field.charAt(0) == ' ' || field.charAt(field.length() - 1) == ' '));
+        return quote ? '"' + field.replace("\"", "\"\"") + '"' : field;
+    }
+}
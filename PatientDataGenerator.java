@@ -0,0 +1,63 @@
+
+import java.io.*;
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * Writes synthetic patients.csv files for benchmarks. Output is reproducible
+ * for a given row count and seed.
+ */
+public class PatientDataGenerator {
+    private static final String[] FIRST_NAMES = {
+            "Aarav", "Priya", "Rahul", "Ananya", "Vikram", "Meera", "Arjun", "Kavya", "Rohan", "Isha",
+            "John", "Maria", "Wei", "Fatima", "Carlos", "Olga", "Kenji", "Amara", "Liam", "Sofia"
+    };
+    private static final String[] LAST_NAMES = {
+            "Sharma", "Patel", "Reddy", "Iyer", "Singh", "Nair", "Gupta", "Das", "Khan", "Rao",
+            "Smith", "Garcia", "Chen", "Ali", "Silva", "Ivanova", "Tanaka", "Okafor", "Murphy", "Rossi"
+    };
+
+    /**
+     * Generates rows in id order; every admittedEvery-th patient is still admitted.
+     */
+    public static void generate(File file, int rows, int admittedEvery, long seed) throws IOException {
+        Random random = new Random(seed);
+        Ward[] wards = Ward.values();
+        LocalDate firstDay = LocalDate.of(2015, 1, 1);
+
+        try (PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(file), 1 << 20))) {
+            pw.println("id,name,age,ward,bedNo,admitDate,dischargeDate");
+            for (int id = 1; id <= rows; id++) {
+                Ward ward = wards[random.nextInt(wards.length)];
+                LocalDate admitDate = firstDay.plusDays(random.nextInt(3650));
+                boolean admitted = admittedEvery > 0 && id % admittedEvery == 0;
+
+                pw.print(id);
+                pw.print(',');
+                pw.print(FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]);
+                pw.print(' ');
+                pw.print(LAST_NAMES[random.nextInt(LAST_NAMES.length)]);
+                pw.print(',');
+                pw.print(1 + random.nextInt(95));
+                pw.print(',');
+                pw.print(ward.name());
+                pw.print(',');
+                pw.print(1 + random.nextInt(50));
+                pw.print(',');
+                pw.print(admitDate);
+                pw.print(',');
+                if (!admitted) {
+                    pw.print(admitDate.plusDays(1 + random.nextInt(30)));
+                }
+                pw.println();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        File file = new File(args.length > 1 ? args[1] : "patients_" + rows + ".csv");
+        generate(file, rows, 0, 42L);
+        System.out.println("Wrote " + rows + " rows to " + file);
+    }
+}
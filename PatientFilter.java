@@ -0,0 +1,69 @@
+
+/**
+ * Immutable listing filter: status, ward and an admission date range.
+ * Unset criteria match everything. Evaluated row by row against the
+ * column store, so filtering never materializes patients.
+ */
+public class PatientFilter {
+    public enum Status {
+        ALL, ADMITTED, DISCHARGED
+    }
+
+    public static final PatientFilter ALL = new PatientFilter(Status.ALL, null, Patient.NO_DATE, Patient.NO_DATE);
+
+    private final Status status;
+    private final Ward ward;
+    private final int admittedFrom;
+    private final int admittedTo;
+
+    private PatientFilter(Status status, Ward ward, int admittedFrom, int admittedTo) {
+        this.status = status;
+        this.ward = ward;
+        this.admittedFrom = admittedFrom;
+        this.admittedTo = admittedTo;
+    }
+
+    public PatientFilter withStatus(Status status) {
+        return new PatientFilter(status, ward, admittedFrom, admittedTo);
+    }
+
+    /**
+     * @param ward the ward to list, or null for every ward
+     */
+    public PatientFilter withWard(Ward ward) {
+        return new PatientFilter(status, ward, admittedFrom, admittedTo);
+    }
+
+    /**
+     * Keeps patients admitted between the two epoch days, inclusive.
+     * Either bound may be Patient.NO_DATE to leave that side open.
+     */
+    public PatientFilter withAdmittedBetween(int fromEpochDay, int toEpochDay) {
+        return new PatientFilter(status, ward, fromEpochDay, toEpochDay);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Ward getWard() {
+        return ward;
+    }
+
+    public boolean matches(PatientColumns columns, int row) {
+        if (status == Status.ADMITTED && !columns.isAdmitted(row)) {
+            return false;
+        }
+        if (status == Status.DISCHARGED && columns.isAdmitted(row)) {
+            return false;
+        }
+        if (ward != null && columns.getWard(row) != ward) {
+            return false;
+        }
+        int admitDay = columns.getAdmitDay(row);
+        if (admittedFrom != Patient.NO_DATE && admitDay < admittedFrom) {
+            return false;
+        }
+        return admittedTo == Patient.NO_DATE || admitDay <= admittedTo;
+    }
+}
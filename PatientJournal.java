@@ -0,0 +1,281 @@
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal of admit/discharge events.
+ *
+ * Each record is [int payloadLength][payload][int crc32(payload)], where the payload
+ * starts with a type byte. Records are written to the file immediately (so they
+ * survive a process crash) and fsynced in batches. On replay a torn final record
+ * (cut short, or failing its checksum at the very end of the file) is what a
+ * crash mid-write leaves, so it is truncated quietly. A bad record with more
+ * data after it is corruption: replay stops there, reports the offset and the
+ * bytes dropped, and keeps a copy of the whole file before truncating it.
+ * compact() writes a snapshot and empties the journal.
+ */
+public class PatientJournal implements Closeable {
+    private static final byte TYPE_ADMIT = 1;
+    private static final byte TYPE_DISCHARGE = 2;
+    private static final int MAX_NAME_BYTES = Short.MAX_VALUE;
+    private static final int MAX_RECORD_BYTES = 64 + MAX_NAME_BYTES;
+
+    private static final Counter RECORDS = MetricsRegistry.INSTANCE.counter("file.journal.records");
+    private static final LatencyHistogram WRITE_LATENCY = MetricsRegistry.INSTANCE.histogram("file.journal.write");
+    private static final LatencyHistogram SYNC_LATENCY = MetricsRegistry.INSTANCE.histogram("file.journal.sync");
+
+    private final Path file;
+    private final int syncEveryRecords;
+    private final FileChannel channel;
+    private final ByteBuffer record = ByteBuffer.allocateDirect(MAX_RECORD_BYTES);
+    private final CRC32 crc = new CRC32();
+    private final ScheduledExecutorService syncer;
+
+    private int unsyncedRecords;
+    private long eventsSinceSnapshot;
+    private boolean closed;
+
+    /**
+     * Receives events during replay, in the order they were journaled.
+     */
+    public interface ReplayHandler {
+        void onAdmit(int id, String name, int age, Ward ward, int bedNo, LocalDate admitDate);
+
+        void onDischarge(int id, LocalDate dischargeDate);
+    }
+
+    /**
+     * Writes a full snapshot of the current state; used by compact().
+     */
+    public interface SnapshotWriter {
+        void writeSnapshot() throws IOException;
+    }
+
+    public PatientJournal(Path file, int syncEveryRecords, long syncIntervalMillis) throws IOException {
+        this.file = file;
+        this.syncEveryRecords = Math.max(1, syncEveryRecords);
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        this.syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "journal-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        this.syncer.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMillis, syncIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Replays every intact record and positions the journal for appending after
+     * them. Returns the number of records replayed.
+     */
+    public synchronized int replay(ReplayHandler handler) throws IOException {
+        long size = channel.size();
+        ByteBuffer data = ByteBuffer.allocate((int) Math.min(size, Integer.MAX_VALUE));
+        channel.read(data, 0);
+        data.flip();
+
+        Ward[] wards = Ward.values();
+        int replayed = 0;
+        long validEnd = 0;
+        // Why replay stopped before the end, and where the failed record ends (-1 if unknown)
+        String problem = null;
+        long failedEnd = -1;
+
+        try {
+            while (data.remaining() >= Integer.BYTES) {
+                int length = data.getInt();
+                if (length <= 0 || length > MAX_RECORD_BYTES) {
+                    problem = "invalid record length " + length;
+                    break;
+                }
+                failedEnd = validEnd + Integer.BYTES + length + Integer.BYTES;
+                if (data.remaining() < length + Integer.BYTES) {
+                    problem = "record cut short";
+                    break;
+                }
+
+                int payloadStart = data.position();
+                crc.reset();
+                crc.update(data.array(), payloadStart, length);
+                int storedCrc = data.getInt(payloadStart + length);
+                if ((int) crc.getValue() != storedCrc) {
+                    problem = "checksum mismatch";
+                    break;
+                }
+
+                byte type = data.get();
+                int id = data.getInt();
+                if (type == TYPE_ADMIT) {
+                    int age = data.getInt();
+                    int wardOrdinal = data.get();
+                    int bedNo = data.getInt();
+                    long admitDay = data.getLong();
+                    int nameLength = data.getShort();
+                    String name = new String(data.array(), data.position(), nameLength, StandardCharsets.UTF_8);
+                    handler.onAdmit(id, name, age, wards[wardOrdinal], bedNo, LocalDate.ofEpochDay(admitDay));
+                } else if (type == TYPE_DISCHARGE) {
+                    handler.onDischarge(id, LocalDate.ofEpochDay(data.getLong()));
+                } else {
+                    problem = "unknown record type " + type;
+                    break;
+                }
+
+                data.position(payloadStart + length + Integer.BYTES);
+                validEnd = data.position();
+                failedEnd = -1;
+                replayed++;
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            problem = "malformed record";
+        }
+
+        if (validEnd < size) {
+            long dropped = size - validEnd;
+            if (problem == null || failedEnd >= size || isZeroFilled(data, validEnd)) {
+                System.out.println("Journal: ignoring " + dropped + " byte(s) of incomplete final record");
+            } else {
+                Path copy = file.resolveSibling(file.getFileName() + "." + System.currentTimeMillis() + ".bak");
+                Files.copy(file, copy);
+                System.out.println("Journal: " + problem + " at offset " + validEnd + " of " + size
+                        + "; dropping " + dropped + " byte(s) from there, including any records after it."
+                        + " The full journal is kept as " + copy);
+            }
+            channel.truncate(validEnd);
+        }
+        channel.position(validEnd);
+        eventsSinceSnapshot = replayed;
+        return replayed;
+    }
+
+    /**
+     * True if everything from offset on is zero, as a file system can leave
+     * the space a crash interrupted an append into.
+     */
+    private static boolean isZeroFilled(ByteBuffer data, long offset) {
+        for (int i = (int) offset; i < data.limit(); i++) {
+            if (data.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public synchronized void recordAdmission(Patient patient) throws IOException {
+        byte[] name = patient.getName().getBytes(StandardCharsets.UTF_8);
+        int nameLength = Math.min(name.length, MAX_NAME_BYTES);
+
+        beginRecord(TYPE_ADMIT, patient.getId());
+        record.putInt(patient.getAge());
+        record.put((byte) patient.getWard().ordinal());
+        record.putInt(patient.getBedNumber());
+        record.putLong(patient.getAdmitEpochDay());
+        record.putShort((short) nameLength);
+        record.put(name, 0, nameLength);
+        endRecord();
+    }
+
+    public synchronized void recordDischarge(Patient patient) throws IOException {
+        beginRecord(TYPE_DISCHARGE, patient.getId());
+        record.putLong(patient.getDischargeEpochDay());
+        endRecord();
+    }
+
+    private void beginRecord(byte type, int id) throws IOException {
+        if (closed) {
+            throw new IOException("Journal is closed");
+        }
+        record.clear();
+        record.putInt(0); // length, patched in endRecord
+        record.put(type);
+        record.putInt(id);
+    }
+
+    private void endRecord() throws IOException {
+        int length = record.position() - Integer.BYTES;
+        record.putInt(0, length);
+
+        ByteBuffer payload = record.duplicate();
+        payload.position(Integer.BYTES).limit(Integer.BYTES + length);
+        crc.reset();
+        crc.update(payload);
+        record.putInt((int) crc.getValue());
+
+        long start = System.nanoTime();
+        record.flip();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        WRITE_LATENCY.recordSince(start);
+        RECORDS.increment();
+
+        eventsSinceSnapshot++;
+        if (++unsyncedRecords >= syncEveryRecords) {
+            sync();
+        }
+    }
+
+    /**
+     * Forces all written records to stable storage.
+     */
+    public synchronized void sync() throws IOException {
+        if (unsyncedRecords > 0 && !closed) {
+            long start = System.nanoTime();
+            channel.force(false);
+            unsyncedRecords = 0;
+            SYNC_LATENCY.recordSince(start);
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (IOException e) {
+            System.err.println("Failed to sync journal " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes a snapshot of the current state and then empties the journal, so
+     * recovery only has to replay events logged after the snapshot. Callers must
+     * not record events concurrently with the snapshot being taken.
+     */
+    public synchronized void compact(SnapshotWriter writer) throws IOException {
+        sync();
+        writer.writeSnapshot();
+        channel.truncate(0);
+        channel.position(0);
+        channel.force(true);
+        eventsSinceSnapshot = 0;
+    }
+
+    public synchronized long getEventsSinceSnapshot() {
+        return eventsSinceSnapshot;
+    }
+
+    @Override
+    public void close() throws IOException {
+        syncer.shutdown();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            channel.force(true);
+            channel.close();
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes patient listings in the Patient.toString layout straight from the
+ * column store. Rows are appended to one reused StringBuilder, which is handed
+ * to the writer in large chunks, so rendering a page creates no per-row strings.
+ */
+public class PatientListRenderer {
+    private static final int FLUSH_CHARS = 32 * 1024;
+    private static final String SEPARATOR = "---";
+
+    private final Writer out;
+    private final StringBuilder buffer = new StringBuilder(FLUSH_CHARS + 1024);
+    private final String lineSeparator = System.lineSeparator();
+    private char[] chunk = new char[FLUSH_CHARS + 1024];
+
+    public PatientListRenderer(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Renders every row of the page followed by a "---" line each.
+     */
+    public void render(PatientColumns columns, PatientPage page) throws IOException {
+        PatientColumns.View view = columns.view();
+        for (int i = 0; i < page.size(); i++) {
+            render(view.moveTo(page.getRow(i)));
+            buffer.append(SEPARATOR).append(lineSeparator);
+            if (buffer.length() >= FLUSH_CHARS) {
+                drain();
+            }
+        }
+        flush();
+    }
+
+    private void render(PatientColumns.View patient) {
+        int admitDay = patient.getAdmitDay();
+        int dischargeDay = patient.getDischargeDay();
+        boolean admitted = patient.isAdmitted();
+        int endDay = admitted ? HospitalClock.todayEpochDay() : dischargeDay;
+
+        buffer.append("Patient ID: ").append(patient.getId()).append(lineSeparator);
+        buffer.append("Name: ").append(patient.getName()).append(lineSeparator);
+        buffer.append("Age: ").append(patient.getAge()).append(lineSeparator);
+        buffer.append("Ward: ").append(patient.getWard()).append(lineSeparator);
+        buffer.append("Bed Number: ").append(patient.getBedNumber()).append(lineSeparator);
+        buffer.append("Admit Date: ");
+        HospitalClock.appendDate(buffer, admitDay);
+        buffer.append(lineSeparator);
+        buffer.append("Discharge Date: ");
+        if (admitted) {
+            buffer.append("N/A");
+        } else {
+            HospitalClock.appendDate(buffer, dischargeDay);
+        }
+        buffer.append(lineSeparator);
+        buffer.append("Status: ").append(admitted ? "Admitted" : "Discharged").append(lineSeparator);
+        buffer.append("Days Stayed: ").append(Math.max(1, endDay - admitDay)).append(lineSeparator);
+    }
+
+    private void drain() throws IOException {
+        int length = buffer.length();
+        if (length > chunk.length) {
+            chunk = new char[length];
+        }
+        buffer.getChars(0, length, chunk, 0);
+        out.write(chunk, 0, length);
+        buffer.setLength(0);
+    }
+
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+}
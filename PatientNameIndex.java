@@ -0,0 +1,474 @@
+
+import java.text.Normalizer;
+import java.util.*;
+
+/**
+ * Name search over the column store. Names are split into normalized tokens
+ * (lower case, accents stripped, split on anything but letters and digits) and
+ * every distinct token keeps a postings list of the rows whose name contains it.
+ * Rows are only ever appended, so postings are stored as varint-encoded gaps,
+ * with a skip entry every SKIP_INTERVAL rows so a cursor can resume mid-list.
+ *
+ * Query tokens must all match. A prefix query matches name tokens that start
+ * with each query token, found as a range of the sorted dictionary. A fuzzy
+ * query matches name tokens within a small edit distance; candidates come from
+ * a bigram index over the dictionary, so only tokens sharing enough bigrams
+ * with the query token are compared.
+ *
+ * Not thread-safe for writes: PatientRepository adds under its write lock and
+ * searches (which only read) under its read lock.
+ */
+public class PatientNameIndex {
+    private static final int SKIP_INTERVAL = 128;
+    private static final int END = Integer.MAX_VALUE;
+    // Marks the start and end of a token in its bigrams, so "ann" has "\0a" and "n\0"
+    private static final char PAD = 0;
+
+    private final PatientColumns columns;
+    // Open-addressing table of every token's postings, probed by lower-case hash
+    private Postings[] table = new Postings[1024];
+    private final TreeMap<String, Postings> dictionary = new TreeMap<>();
+    private final List<Postings> postingsById = new ArrayList<>();
+    private final IntHashIndex gramSlots = new IntHashIndex(1024);
+    private final List<IntList> tokenIdsByGram = new ArrayList<>();
+
+    public PatientNameIndex(PatientColumns columns) {
+        this.columns = columns;
+    }
+
+    /**
+     * Indexes the name of a newly appended row; rows must be added in increasing
+     * order. Tokens are hashed and looked up in place, so a name whose tokens
+     * are all known allocates nothing.
+     */
+    public void add(int row, String name) {
+        String text = foldAccents(name);
+        int start = -1;
+        int hash = 0;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                if (start < 0) {
+                    start = i;
+                    hash = 0;
+                }
+                // Same as the lower-case token's String.hashCode()
+                hash = 31 * hash + Character.toLowerCase(c);
+            } else if (start >= 0) {
+                Postings postings = find(text, start, i, hash);
+                if (postings == null) {
+                    postings = addToken(lowerCase(text, start, i));
+                }
+                // A token repeated in one name ("Anna Anna") is already posted for this row
+                if (postings.lastRow != row) {
+                    postings.add(row);
+                }
+                start = -1;
+            }
+        }
+    }
+
+    /**
+     * The postings of the lower case of text[start, end), or null.
+     */
+    private Postings find(String text, int start, int end, int hash) {
+        for (int slot = spread(hash) & (table.length - 1); ; slot = (slot + 1) & (table.length - 1)) {
+            Postings postings = table[slot];
+            if (postings == null) {
+                return null;
+            }
+            if (postings.token.hashCode() == hash && equalsLowerCase(postings.token, text, start, end)) {
+                return postings;
+            }
+        }
+    }
+
+    private static boolean equalsLowerCase(String token, String text, int start, int end) {
+        if (token.length() != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (token.charAt(i - start) != Character.toLowerCase(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private Postings addToken(String token) {
+        Postings postings = new Postings(token, postingsById.size());
+        if (postingsById.size() >= table.length >>> 1) {
+            Postings[] old = table;
+            table = new Postings[old.length << 1];
+            for (Postings p : old) {
+                if (p != null) {
+                    insert(p);
+                }
+            }
+        }
+        insert(postings);
+        dictionary.put(token, postings);
+        postingsById.add(postings);
+
+        for (int gram : bigrams(token)) {
+            int slot = gramSlots.get(gram);
+            if (slot == IntHashIndex.NOT_FOUND) {
+                slot = tokenIdsByGram.size();
+                gramSlots.put(gram, slot);
+                tokenIdsByGram.add(new IntList(4));
+            }
+            tokenIdsByGram.get(slot).add(postings.id);
+        }
+        return postings;
+    }
+
+    private void insert(Postings postings) {
+        int slot = spread(postings.token.hashCode()) & (table.length - 1);
+        while (table[slot] != null) {
+            slot = (slot + 1) & (table.length - 1);
+        }
+        table[slot] = postings;
+    }
+
+    public int getTokenCount() {
+        return postingsById.size();
+    }
+
+    /**
+     * Up to pageSize rows, from the cursor row on, whose name matches every query
+     * token and the filter, in row order. The page's cursor is the next row to
+     * consider. An empty query matches nothing.
+     */
+    public PatientPage search(String query, boolean fuzzy, PatientFilter filter, long cursor, int pageSize) {
+        List<String> terms = tokenize(query);
+        if (terms.isEmpty() || cursor == PatientPage.END) {
+            return new PatientPage(new int[0], PatientPage.END);
+        }
+
+        // Scan the postings of the term matching the fewest rows; check the other terms per row
+        List<Postings> driver = null;
+        long driverRows = Long.MAX_VALUE;
+        for (String term : terms) {
+            List<Postings> matches = fuzzy ? fuzzyMatches(term) : prefixMatches(term);
+            long rows = 0;
+            for (Postings postings : matches) {
+                rows += postings.count;
+            }
+            if (rows < driverRows) {
+                driver = matches;
+                driverRows = rows;
+            }
+        }
+
+        PriorityQueue<PostingsCursor> merge = new PriorityQueue<>(Math.max(1, driver.size()),
+                Comparator.comparingInt((PostingsCursor c) -> c.row));
+        for (Postings postings : driver) {
+            PostingsCursor c = new PostingsCursor(postings, (int) cursor);
+            if (c.row != END) {
+                merge.add(c);
+            }
+        }
+
+        IntList page = new IntList(pageSize);
+        int previous = -1;
+        while (!merge.isEmpty()) {
+            PostingsCursor c = merge.poll();
+            int row = c.row;
+            c.next();
+            if (c.row != END) {
+                merge.add(c);
+            }
+
+            // Several of a name's tokens can match the driving term
+            if (row == previous) {
+                continue;
+            }
+            previous = row;
+            if (!filter.matches(columns, row) || (terms.size() > 1 && !matchesAll(columns.getName(row), terms, fuzzy))) {
+                continue;
+            }
+            if (page.size() == pageSize) {
+                return new PatientPage(page.toArray(), row);
+            }
+            page.add(row);
+        }
+        return new PatientPage(page.toArray(), PatientPage.END);
+    }
+
+    private List<Postings> prefixMatches(String term) {
+        return new ArrayList<>(dictionary.subMap(term, true, term + Character.MAX_VALUE, false).values());
+    }
+
+    private List<Postings> fuzzyMatches(String term) {
+        int maxEdits = maxEdits(term);
+        List<Postings> matches = new ArrayList<>();
+        if (maxEdits == 0) {
+            Postings postings = find(term, 0, term.length(), term.hashCode());
+            if (postings != null) {
+                matches.add(postings);
+            }
+            return matches;
+        }
+
+        // Each edit changes at most three bigrams (a swap does), so a match shares
+        // all but 3 * maxEdits of them; that leaves at least one for every term length
+        int[] grams = bigrams(term);
+        int threshold = grams.length - 3 * maxEdits;
+        if (threshold < 1) {
+            for (Postings postings : postingsById) {
+                if (withinEdits(term, postings.token, maxEdits)) {
+                    matches.add(postings);
+                }
+            }
+            return matches;
+        }
+
+        int[] shared = new int[postingsById.size()];
+        for (int gram : grams) {
+            int slot = gramSlots.get(gram);
+            if (slot == IntHashIndex.NOT_FOUND) {
+                continue;
+            }
+            IntList tokenIds = tokenIdsByGram.get(slot);
+            for (int i = 0; i < tokenIds.size(); i++) {
+                int id = tokenIds.get(i);
+                if (++shared[id] == threshold) {
+                    Postings postings = postingsById.get(id);
+                    if (withinEdits(term, postings.token, maxEdits)) {
+                        matches.add(postings);
+                    }
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static boolean matchesAll(String name, List<String> terms, boolean fuzzy) {
+        List<String> tokens = tokenize(name);
+        for (String term : terms) {
+            int maxEdits = maxEdits(term);
+            boolean found = false;
+            for (int i = 0; i < tokens.size() && !found; i++) {
+                found = fuzzy ? withinEdits(term, tokens.get(i), maxEdits) : tokens.get(i).startsWith(term);
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Typos allowed in a fuzzy query token: none for 1-2 letters, one up to 5, two beyond.
+     */
+    static int maxEdits(String term) {
+        return term.length() <= 2 ? 0 : term.length() <= 5 ? 1 : 2;
+    }
+
+    /**
+     * Edit distance of at most maxEdits, counting an insertion, deletion,
+     * substitution or swap of neighbouring letters ("smiht") as one edit. Gives
+     * up as soon as every alignment of the prefixes compared so far needs more.
+     */
+    static boolean withinEdits(String a, String b, int maxEdits) {
+        int n = a.length();
+        int m = b.length();
+        if (Math.abs(n - m) > maxEdits) {
+            return false;
+        }
+
+        int[] beforePrevious = new int[m + 1];
+        int[] previous = new int[m + 1];
+        int[] current = new int[m + 1];
+        for (int j = 0; j <= m; j++) {
+            previous[j] = j;
+        }
+        int previousMin = 0;
+        for (int i = 1; i <= n; i++) {
+            current[0] = i;
+            int rowMin = i;
+            char c = a.charAt(i - 1);
+            for (int j = 1; j <= m; j++) {
+                int cost = c == b.charAt(j - 1) ? 0 : 1;
+                int distance = Math.min(previous[j - 1] + cost, Math.min(previous[j], current[j - 1]) + 1);
+                if (i > 1 && j > 1 && c == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    distance = Math.min(distance, beforePrevious[j - 2] + 1);
+                }
+                current[j] = distance;
+                rowMin = Math.min(rowMin, distance);
+            }
+            // The next row builds on this one, or on the previous one through a swap
+            if (rowMin > maxEdits && previousMin >= maxEdits) {
+                return false;
+            }
+            previousMin = rowMin;
+            int[] swap = beforePrevious;
+            beforePrevious = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[m] <= maxEdits;
+    }
+
+    /**
+     * Distinct padded bigrams of a token, each packed as (first char << 16) | second char.
+     */
+    private static int[] bigrams(String token) {
+        int[] grams = new int[token.length() + 1];
+        int count = 0;
+        char previous = PAD;
+        for (int i = 0; i <= token.length(); i++) {
+            char c = i < token.length() ? token.charAt(i) : PAD;
+            int gram = (previous << 16) | c;
+            boolean seen = false;
+            for (int j = 0; j < count && !seen; j++) {
+                seen = grams[j] == gram;
+            }
+            if (!seen) {
+                grams[count++] = gram;
+            }
+            previous = c;
+        }
+        return Arrays.copyOf(grams, count);
+    }
+
+    /**
+     * Normalized tokens of a name or query, in order.
+     */
+    static List<String> tokenize(String text) {
+        String folded = foldAccents(text);
+        List<String> tokens = new ArrayList<>(4);
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean inToken = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (inToken && start < 0) {
+                start = i;
+            } else if (!inToken && start >= 0) {
+                tokens.add(lowerCase(folded, start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private static String lowerCase(String text, int start, int end) {
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            chars[i - start] = Character.toLowerCase(text.charAt(i));
+        }
+        return new String(chars);
+    }
+
+    // "José" and "Jose" should find each other; plain ASCII names skip the normalizer
+    private static String foldAccents(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+                StringBuilder folded = new StringBuilder(decomposed.length());
+                for (int j = 0; j < decomposed.length(); j++) {
+                    char c = decomposed.charAt(j);
+                    if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                        folded.append(c);
+                    }
+                }
+                return folded.toString();
+            }
+        }
+        return text;
+    }
+
+    /**
+     * Rows containing one token, as varint gaps from the previous row.
+     */
+    private static class Postings {
+        final String token;
+        final int id;
+        byte[] data = new byte[8];
+        int length;
+        int count;
+        int lastRow = -1;
+        // For every SKIP_INTERVAL-th entry: the row before it and the offset of its gap
+        final IntList skipRows = new IntList(1);
+        final IntList skipOffsets = new IntList(1);
+
+        Postings(String token, int id) {
+            this.token = token;
+            this.id = id;
+        }
+
+        void add(int row) {
+            if (count > 0 && count % SKIP_INTERVAL == 0) {
+                skipRows.add(lastRow);
+                skipOffsets.add(length);
+            }
+            if (length + 5 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            int gap = row - lastRow;
+            while ((gap & ~0x7F) != 0) {
+                data[length++] = (byte) ((gap & 0x7F) | 0x80);
+                gap >>>= 7;
+            }
+            data[length++] = (byte) gap;
+            lastRow = row;
+            count++;
+        }
+    }
+
+    private static class PostingsCursor {
+        private final Postings postings;
+        private int offset;
+        int row;
+
+        /**
+         * Positioned on the first row at or after target, or END.
+         */
+        PostingsCursor(Postings postings, int target) {
+            this.postings = postings;
+
+            // Start from the last skip entry before the target
+            IntList skipRows = postings.skipRows;
+            int low = 0;
+            int high = skipRows.size() - 1;
+            int skip = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (skipRows.get(mid) < target) {
+                    skip = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            row = skip < 0 ? -1 : skipRows.get(skip);
+            offset = skip < 0 ? 0 : postings.skipOffsets.get(skip);
+
+            next();
+            while (row < target) {
+                next();
+            }
+        }
+
+        void next() {
+            if (offset >= postings.length) {
+                row = END;
+                return;
+            }
+            byte[] data = postings.data;
+            int gap = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[offset++];
+                gap |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            row += gap;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+
+/**
+ * One page of a listing: the matching rows of the column store, plus the
+ * cursor to pass back for the next page.
+ */
+public class PatientPage {
+    public static final long FIRST = 0;
+    public static final long END = -1;
+
+    private final int[] rows;
+    private final long nextCursor;
+
+    PatientPage(int[] rows, long nextCursor) {
+        this.rows = rows;
+        this.nextCursor = nextCursor;
+    }
+
+    public int size() {
+        return rows.length;
+    }
+
+    /**
+     * Row in PatientRepository.getColumns() of the i-th patient on this page.
+     */
+    public int getRow(int index) {
+        return rows[index];
+    }
+
+    public long getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != END;
+    }
+}
@@ -0,0 +1,434 @@
+
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * In-memory patient store. Every patient is a row in a PatientColumns table, in
+ * admission order. Only currently admitted patients are kept as Patient objects
+ * (they are mutated on discharge); discharged history lives in the columns alone
+ * and is materialized on demand. Indexes by id, by name, by ward, by
+ * admitted/discharged status and of stays by date are maintained
+ * incrementally, so lookups and listings never rescan history.
+ * WardAnalytics is updated on the same events, so analytics never rescan it either.
+ *
+ * Safe for concurrent use: changes take a write lock and lookups a read lock, so
+ * many readers proceed in parallel. Iterating the list views while other threads
+ * change the store needs the read lock from getLock() around the whole iteration.
+ */
+public class PatientRepository {
+    private final PatientColumns columns = new PatientColumns(1024);
+    private final IntHashIndex rowById = new IntHashIndex(1024);
+    private final PatientNameIndex nameIndex = new PatientNameIndex(columns);
+    private final Function<Ward, BillingPolicy> policyForWard;
+
+    private final Map<Integer, Patient> admittedById = new HashMap<>();
+    private final Set<Patient> admitted = new LinkedHashSet<>();
+    private final Map<Ward, Set<Patient>> admittedByWard = new EnumMap<>(Ward.class);
+    private final IntList dischargedRows = new IntList(1024);
+    private final IntList[] dischargedRowsByWard = new IntList[Ward.values().length];
+    private final StayIndex[] staysByWard = new StayIndex[Ward.values().length];
+    private final WardAnalytics analytics = new WardAnalytics();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock readLock = lock.readLock();
+    private final Lock writeLock = lock.writeLock();
+
+    public PatientRepository() {
+        this(ward -> StandardBillingPolicy.INSTANCE);
+    }
+
+    /**
+     * @param policyForWard billing policy given to discharged patients when they
+     *                      are materialized from the columns
+     */
+    public PatientRepository(Function<Ward, BillingPolicy> policyForWard) {
+        this.policyForWard = policyForWard;
+        for (Ward ward : Ward.values()) {
+            admittedByWard.put(ward, new LinkedHashSet<>());
+            dischargedRowsByWard[ward.ordinal()] = new IntList();
+            staysByWard[ward.ordinal()] = new StayIndex();
+        }
+    }
+
+    public void add(Patient patient) {
+        writeLock.lock();
+        try {
+            if (rowById.containsKey(patient.getId())) {
+                throw new IllegalArgumentException("Duplicate patient ID: " + patient.getId());
+            }
+
+            int row = columns.append(patient);
+            rowById.put(patient.getId(), row);
+            nameIndex.add(row, patient.getName());
+
+            int admitDay = patient.getAdmitEpochDay();
+            if (patient.isAdmitted()) {
+                admittedById.put(patient.getId(), patient);
+                admitted.add(patient);
+                admittedByWard.get(patient.getWard()).add(patient);
+                analytics.recordAdmission(patient.getWard(), admitDay);
+            } else {
+                dischargedRows.add(row);
+                dischargedRowsByWard[patient.getWard().ordinal()].add(row);
+                addStay(patient.getWard(), row, admitDay, patient.getDischargeEpochDay());
+                analytics.recordStay(patient.getWard(), admitDay, patient.getDischargeEpochDay());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Adds an already discharged patient straight into the columns, without
+     * creating a Patient object. Used when restoring history from a snapshot.
+     */
+    public void addDischarged(int id, String name, int age, Ward ward, int bedNumber,
+                              int admitDay, int dischargeDay) {
+        writeLock.lock();
+        try {
+            if (rowById.containsKey(id)) {
+                throw new IllegalArgumentException("Duplicate patient ID: " + id);
+            }
+
+            int row = columns.append(id, name, age, ward, bedNumber, admitDay, dischargeDay);
+            rowById.put(id, row);
+            nameIndex.add(row, name);
+            dischargedRows.add(row);
+            dischargedRowsByWard[ward.ordinal()].add(row);
+            addStay(ward, row, admitDay, dischargeDay);
+            analytics.recordStay(ward, admitDay, dischargeDay);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Moves a patient from the admitted to the discharged indexes.
+     * Call after the patient's discharge date has been set.
+     */
+    public void markDischarged(Patient patient) {
+        if (patient.isAdmitted()) {
+            throw new InvalidPatientStateException(
+                    "Cannot mark patient " + patient.getId() + " discharged: no discharge date");
+        }
+
+        writeLock.lock();
+        try {
+            moveToDischarged(patient);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Sets the discharge date of an admitted patient and moves it to the
+     * discharged indexes in one step, so two threads can never both discharge
+     * the same patient. Returns null if there is no patient with this id.
+     *
+     * @throws InvalidPatientStateException if the patient is already discharged
+     */
+    public Patient discharge(int id, int dischargeDay) {
+        writeLock.lock();
+        try {
+            Patient patient = admittedById.get(id);
+            if (patient == null) {
+                if (rowById.get(id) == IntHashIndex.NOT_FOUND) {
+                    return null;
+                }
+                throw new InvalidPatientStateException("Patient " + id + " is already discharged");
+            }
+            if (dischargeDay < patient.getAdmitEpochDay()) {
+                throw new InvalidPatientStateException("Discharge date is before admission on "
+                        + patient.getAdmitDate());
+            }
+            patient.setDischargeEpochDay(dischargeDay);
+            moveToDischarged(patient);
+            return patient;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void moveToDischarged(Patient patient) {
+        if (admittedById.remove(patient.getId()) != null) {
+            int row = rowById.get(patient.getId());
+            int dischargeDay = patient.getDischargeEpochDay();
+            columns.setDischargeDay(row, dischargeDay);
+            analytics.recordDischarge(patient.getWard(), columns.getAdmitDay(row), dischargeDay);
+            addStay(patient.getWard(), row, columns.getAdmitDay(row), dischargeDay);
+
+            admitted.remove(patient);
+            admittedByWard.get(patient.getWard()).remove(patient);
+            dischargedRows.add(row);
+            dischargedRowsByWard[patient.getWard().ordinal()].add(row);
+        }
+    }
+
+    // Stays cover the same days as in WardAnalytics: at least one, the discharge day excluded
+    private void addStay(Ward ward, int row, int admitDay, int dischargeDay) {
+        staysByWard[ward.ordinal()].add(row, admitDay, admitDay + Math.max(1, dischargeDay - admitDay));
+    }
+
+    public Patient findById(int id) {
+        readLock.lock();
+        try {
+            int row = rowById.get(id);
+            if (row == IntHashIndex.NOT_FOUND) {
+                return null;
+            }
+            return patientAt(row);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    private Patient patientAt(int row) {
+        if (columns.isAdmitted(row)) {
+            return admittedById.get(columns.getId(row));
+        }
+        return columns.toPatient(row, policyForWard.apply(columns.getWard(row)));
+    }
+
+    /**
+     * All patients in admission order. Discharged patients are materialized per
+     * access, so hold on to elements only as long as needed.
+     */
+    public List<Patient> getAll() {
+        return new RowList(null);
+    }
+
+    /**
+     * Currently admitted patients, copied so callers can iterate freely.
+     */
+    public Collection<Patient> getAdmitted() {
+        readLock.lock();
+        try {
+            return new ArrayList<>(admitted);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public Collection<Patient> getAdmitted(Ward ward) {
+        readLock.lock();
+        try {
+            return new ArrayList<>(admittedByWard.get(ward));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public List<Patient> getDischarged() {
+        return new RowList(dischargedRows);
+    }
+
+    public List<Patient> getDischarged(Ward ward) {
+        return new RowList(dischargedRowsByWard[ward.ordinal()]);
+    }
+
+    /**
+     * Up to pageSize patients matching the filter, starting at a cursor
+     * (PatientPage.FIRST, or getNextCursor() of the previous page). Only the
+     * smallest index that can satisfy the filter is scanned, and only until the
+     * page is full. Render rows through getColumns().view().
+     */
+    public PatientPage findPage(PatientFilter filter, long cursor, int pageSize) {
+        if (cursor == PatientPage.END) {
+            return new PatientPage(new int[0], PatientPage.END);
+        }
+        readLock.lock();
+        try {
+            return scanPage(filter, cursor, pageSize);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Up to pageSize patients matching the filter whose names match the query,
+     * in admission order; see PatientNameIndex.search. Page like findPage.
+     */
+    public PatientPage findByName(String query, boolean fuzzy, PatientFilter filter, long cursor, int pageSize) {
+        readLock.lock();
+        try {
+            return nameIndex.search(query, fuzzy, filter, cursor, pageSize);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Up to pageSize patients who were in the ward on at least one day of
+     * fromDay..toDay inclusive, in admission order: the stays counted by
+     * WardAnalytics.getStayCount. Completed stays come from the ward's
+     * StayIndex and current patients from the admitted index, so history is
+     * never scanned. The cursor is the next row to consider, so a page stays
+     * put while stays are added or completed, and only rows from it on are
+     * collected and sorted.
+     */
+    public PatientPage findStays(Ward ward, int fromDay, int toDay, long cursor, int pageSize) {
+        if (cursor == PatientPage.END || cursor > Integer.MAX_VALUE) {
+            return new PatientPage(new int[0], PatientPage.END);
+        }
+        int minRow = (int) Math.max(cursor, 0);
+        int[] rows;
+        readLock.lock();
+        try {
+            IntList found = new IntList();
+            staysByWard[ward.ordinal()].findOverlapping(fromDay, toDay + 1, minRow, found);
+            for (Patient patient : admittedByWard.get(ward)) {
+                int row = rowById.get(patient.getId());
+                if (row >= minRow && patient.getAdmitEpochDay() <= toDay) {
+                    found.add(row);
+                }
+            }
+            rows = found.toArray();
+        } finally {
+            readLock.unlock();
+        }
+
+        Arrays.sort(rows);
+        if (rows.length <= pageSize) {
+            return new PatientPage(rows, PatientPage.END);
+        }
+        return new PatientPage(Arrays.copyOf(rows, pageSize), rows[pageSize]);
+    }
+
+    private PatientPage scanPage(PatientFilter filter, long cursor, int pageSize) {
+        Ward ward = filter.getWard();
+        IntList page = new IntList(pageSize);
+
+        switch (filter.getStatus()) {
+            case ADMITTED: {
+                // Admitted patients are few (bounded by beds) and iterate in row order;
+                // the cursor is the next row to consider
+                Collection<Patient> source = ward != null ? admittedByWard.get(ward) : admitted;
+                for (Patient patient : source) {
+                    int row = rowById.get(patient.getId());
+                    if (row < cursor || !filter.matches(columns, row)) {
+                        continue;
+                    }
+                    if (page.size() == pageSize) {
+                        return new PatientPage(page.toArray(), row);
+                    }
+                    page.add(row);
+                }
+                return new PatientPage(page.toArray(), PatientPage.END);
+            }
+            case DISCHARGED: {
+                // The cursor is a position in the append-only discharged index
+                IntList source = ward != null ? dischargedRowsByWard[ward.ordinal()] : dischargedRows;
+                for (int i = (int) cursor; i < source.size(); i++) {
+                    int row = source.get(i);
+                    if (!filter.matches(columns, row)) {
+                        continue;
+                    }
+                    if (page.size() == pageSize) {
+                        return new PatientPage(page.toArray(), i);
+                    }
+                    page.add(row);
+                }
+                return new PatientPage(page.toArray(), PatientPage.END);
+            }
+            default: {
+                // The cursor is the next row to consider
+                for (int row = (int) cursor; row < columns.size(); row++) {
+                    if (!filter.matches(columns, row)) {
+                        continue;
+                    }
+                    if (page.size() == pageSize) {
+                        return new PatientPage(page.toArray(), row);
+                    }
+                    page.add(row);
+                }
+                return new PatientPage(page.toArray(), PatientPage.END);
+            }
+        }
+    }
+
+    /**
+     * Running occupancy and length-of-stay figures for every patient in the store.
+     */
+    public WardAnalytics getAnalytics() {
+        return analytics;
+    }
+
+    /**
+     * Column view of every patient, for analytics. Callers must not modify it.
+     */
+    public PatientColumns getColumns() {
+        return columns;
+    }
+
+    /**
+     * Lock used by this store. Hold the read lock to iterate getAll(),
+     * getDischarged() or getColumns() consistently, e.g. for a snapshot.
+     */
+    public ReadWriteLock getLock() {
+        return lock;
+    }
+
+    public int size() {
+        readLock.lock();
+        try {
+            return columns.size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public int getAdmittedCount() {
+        readLock.lock();
+        try {
+            return admitted.size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    public int getDischargedCount() {
+        readLock.lock();
+        try {
+            return dischargedRows.size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Read-only list over rows: either every row, or the rows in an index.
+     */
+    private class RowList extends AbstractList<Patient> implements RandomAccess {
+        private final IntList rows;
+
+        RowList(IntList rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public Patient get(int index) {
+            readLock.lock();
+            try {
+                if (rows == null) {
+                    Objects.checkIndex(index, columns.size());
+                    return patientAt(index);
+                }
+                return patientAt(rows.get(index));
+            } finally {
+                readLock.unlock();
+            }
+        }
+
+        @Override
+        public int size() {
+            readLock.lock();
+            try {
+                return rows == null ? columns.size() : rows.size();
+            } finally {
+                readLock.unlock();
+            }
+        }
+    }
+}
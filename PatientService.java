@@ -0,0 +1,177 @@
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Admission and discharge workflow shared by the console menu and the HTTP
+ * server. Every step is safe to call from many threads at once: beds are
+ * claimed through BedManager's atomic counters, patient ids come from an
+ * AtomicInteger, the repository locks internally and the journal is synchronized.
+ */
+public class PatientService {
+    private static final Counter ADMISSIONS = MetricsRegistry.INSTANCE.counter("patients.admitted");
+    private static final Counter REJECTED_ADMISSIONS = MetricsRegistry.INSTANCE.counter("patients.rejected");
+    private static final Counter DISCHARGES = MetricsRegistry.INSTANCE.counter("patients.discharged");
+    // Shared with BillingService, which counts batch runs; single charges are counted here, per bill
+    private static final Counter BILLED = MetricsRegistry.INSTANCE.counter("billing.patients");
+    // Journal events after which the journal is folded into a snapshot; Main uses it at startup too
+    static final int JOURNAL_COMPACT_THRESHOLD = 10_000;
+
+    private final PatientRepository repository;
+    private final BedManager bedManager;
+    private final BillingService billingService;
+    private final Supplier<RateTable> rates;
+    private final Function<Ward, BillingPolicy> policyForWard;
+    private final BillingLedger billingLedger;
+    private final PatientJournal journal;
+    private final PatientJournal.SnapshotWriter snapshotWriter;
+    private final AtomicInteger nextPatientId;
+
+    /**
+     * @param billingLedger  may be null if billing.txt could not be opened
+     * @param journal        may be null to run without a journal
+     * @param snapshotWriter writes the snapshot when the journal is compacted
+     * @param nextPatientId  first id to hand out
+     */
+    public PatientService(PatientRepository repository, BedManager bedManager, BillingService billingService,
+                          Supplier<RateTable> rates, Function<Ward, BillingPolicy> policyForWard,
+                          BillingLedger billingLedger, PatientJournal journal,
+                          PatientJournal.SnapshotWriter snapshotWriter, int nextPatientId) {
+        this.repository = repository;
+        this.bedManager = bedManager;
+        this.billingService = billingService;
+        this.rates = rates;
+        this.policyForWard = policyForWard;
+        this.billingLedger = billingLedger;
+        this.journal = journal;
+        this.snapshotWriter = snapshotWriter;
+        this.nextPatientId = new AtomicInteger(nextPatientId);
+    }
+
+    public Patient admit(String name, int age, Ward ward, int admitDay) throws BedUnavailableException {
+        int bedNo;
+        try {
+            bedNo = bedManager.allocateBed(ward);
+        } catch (BedUnavailableException e) {
+            REJECTED_ADMISSIONS.increment();
+            throw e;
+        }
+
+        return admitToBed(name, age, ward, bedNo, admitDay);
+    }
+
+    /**
+     * Admits a patient into a bed the caller has already claimed from BedManager,
+     * e.g. one reserved for a patient transferred from another site.
+     */
+    public Patient admitToBed(String name, int age, Ward ward, int bedNo, int admitDay) {
+        Patient patient = new Patient(nextPatientId.getAndIncrement(), name, age, ward, bedNo, admitDay,
+                policyForWard.apply(ward));
+        repository.add(patient);
+        journalAdmission(patient);
+        ADMISSIONS.increment();
+        return patient;
+    }
+
+    /**
+     * Puts an admission for a full ward in the ward's wait queue. When a bed is
+     * handed to it the patient is admitted, dated that day, and passed to
+     * onAdmitted on the thread that freed the bed. Queued requests live in
+     * memory only and are lost on restart.
+     */
+    public BedRequest queueAdmission(String name, int age, Ward ward, Triage triage, Consumer<Patient> onAdmitted) {
+        return bedManager.requestBed(ward, triage, (request, bedNo) ->
+                onAdmitted.accept(admitToBed(name, age, ward, bedNo, HospitalClock.todayEpochDay())));
+    }
+
+    /**
+     * Discharges an admitted patient and frees the bed. Returns null if there
+     * is no patient with this id.
+     *
+     * @throws InvalidPatientStateException if the patient is already discharged
+     */
+    public Patient discharge(int id, int dischargeDay) {
+        Patient patient = dischargeKeepingBed(id, dischargeDay);
+        if (patient != null) {
+            bedManager.releaseBed(patient.getWard(), patient.getBedNumber());
+        }
+        return patient;
+    }
+
+    /**
+     * Like discharge, but leaves the bed occupied for the caller to free,
+     * e.g. with the rest of a batch through BedManager.applyBatch.
+     */
+    Patient dischargeKeepingBed(int id, int dischargeDay) {
+        Patient patient = repository.discharge(id, dischargeDay);
+        if (patient == null) {
+            return null;
+        }
+
+        journalDischarge(patient);
+        DISCHARGES.increment();
+        return patient;
+    }
+
+    /**
+     * Bills a discharged patient. The rate table is read once, so the charges
+     * and the daily rate in the record agree even if rates.cfg is reloaded meanwhile.
+     */
+    public BillingRecord bill(Patient patient) {
+        double dailyRate = rates.get().getRate(patient.getWard());
+        double charges = billingService.calculateCharges(patient, dailyRate);
+        BILLED.increment();
+        return new BillingRecord(patient.getId(), patient.getName(), patient.getWard(),
+                patient.getStayLengthInDays(), dailyRate, charges);
+    }
+
+    /**
+     * Queues the billing record for billing.txt; returns false if the ledger is
+     * not available or its queue is full.
+     */
+    public boolean submitBillingRecord(BillingRecord record) {
+        return billingLedger != null && billingLedger.submit(record);
+    }
+
+    // The repository is updated before the journal and no repository lock is
+    // held here, so compaction (journal lock, then repository read lock) cannot deadlock
+    private void journalAdmission(Patient patient) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.recordAdmission(patient);
+            compactJournalIfNeeded();
+        } catch (IOException e) {
+            System.out.println("Error writing to journal: " + e.getMessage());
+        }
+    }
+
+    private void journalDischarge(Patient patient) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.recordDischarge(patient);
+            compactJournalIfNeeded();
+        } catch (IOException e) {
+            System.out.println("Error writing to journal: " + e.getMessage());
+        }
+    }
+
+    private void compactJournalIfNeeded() throws IOException {
+        if (journal.getEventsSinceSnapshot() >= JOURNAL_COMPACT_THRESHOLD) {
+            synchronized (journal) {
+                // Another thread may have compacted while this one waited
+                if (journal.getEventsSinceSnapshot() < JOURNAL_COMPACT_THRESHOLD) {
+                    return;
+                }
+                journal.compact(snapshotWriter);
+            }
+            System.out.println("Compacted journal into snapshot");
+        }
+    }
+}
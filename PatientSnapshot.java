@@ -0,0 +1,321 @@
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Versioned binary snapshot of the patient store, read through a memory map.
+ *
+ * Layout (little-endian):
+ *   header:  magic, version, rowCount, nameBytesLength, then one long offset per column
+ *   columns: id int[n], age int[n], ward byte[n], bedNo int[n],
+ *            admitEpochDay int[n], dischargeEpochDay int[n] (NO_DATE if admitted),
+ *            nameOffset int[n + 1], name bytes (UTF-8)
+ *
+ * Fields are decoded only when accessed, so opening a snapshot costs one mmap.
+ */
+public class PatientSnapshot implements Closeable {
+    public static final int NO_DATE = Patient.NO_DATE;
+
+    private static final int MAGIC = 0x4E535048; // "HPSN"
+    private static final int VERSION = 1;
+    private static final int COLUMN_COUNT = 8;
+    private static final int HEADER_BYTES = 4 * Integer.BYTES + COLUMN_COUNT * Long.BYTES;
+
+    private static final int COL_ID = 0;
+    private static final int COL_AGE = 1;
+    private static final int COL_WARD = 2;
+    private static final int COL_BED = 3;
+    private static final int COL_ADMIT = 4;
+    private static final int COL_DISCHARGE = 5;
+    private static final int COL_NAME_OFFSET = 6;
+    private static final int COL_NAME_BYTES = 7;
+
+    private static final Ward[] WARDS = Ward.values();
+
+    private final FileChannel channel;
+    private final MappedByteBuffer data;
+    private final int rowCount;
+    private final int[] columnOffsets = new int[COLUMN_COUNT];
+
+    private PatientSnapshot(FileChannel channel, MappedByteBuffer data) throws IOException {
+        this.channel = channel;
+        this.data = data;
+        data.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (data.limit() < HEADER_BYTES || data.getInt(0) != MAGIC) {
+            throw new IOException("Not a patient snapshot");
+        }
+        int version = data.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+
+        this.rowCount = data.getInt(8);
+        int nameBytes = data.getInt(12);
+        if (rowCount < 0 || nameBytes < 0) {
+            throw new IOException("Corrupt snapshot header");
+        }
+        long[] widths = {Integer.BYTES, Integer.BYTES, 1, Integer.BYTES, Integer.BYTES, Integer.BYTES};
+        for (int column = 0; column < COLUMN_COUNT; column++) {
+            long offset = data.getLong(16 + column * Long.BYTES);
+            long length = column < COL_NAME_OFFSET ? widths[column] * rowCount
+                    : column == COL_NAME_OFFSET ? (long) Integer.BYTES * (rowCount + 1L) : nameBytes;
+            if (offset < HEADER_BYTES || offset + length > data.limit()) {
+                throw new IOException("Snapshot is truncated or corrupt: column " + column + " does not fit in "
+                        + data.limit() + " bytes");
+            }
+            columnOffsets[column] = (int) offset;
+        }
+
+        // Checked once here so the accessors can read without bounds checks
+        for (int row = 0; row < rowCount; row++) {
+            int ward = data.get(columnOffsets[COL_WARD] + row);
+            if (ward < 0 || ward >= WARDS.length) {
+                throw new IOException("Bad ward " + ward + " in snapshot row " + (row + 1));
+            }
+        }
+        int previous = 0;
+        for (int row = 0; row <= rowCount; row++) {
+            int offset = data.getInt(columnOffsets[COL_NAME_OFFSET] + row * Integer.BYTES);
+            if (offset < previous || offset > nameBytes || (row == 0 && offset != 0)) {
+                throw new IOException("Bad name offset " + offset + " in snapshot row " + (row + 1));
+            }
+            previous = offset;
+        }
+    }
+
+    public static PatientSnapshot open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot larger than 2 GB is not supported");
+            }
+            return new PatientSnapshot(channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int size() {
+        return rowCount;
+    }
+
+    public int getId(int row) {
+        return data.getInt(columnOffsets[COL_ID] + row * Integer.BYTES);
+    }
+
+    public int getAge(int row) {
+        return data.getInt(columnOffsets[COL_AGE] + row * Integer.BYTES);
+    }
+
+    public Ward getWard(int row) {
+        return WARDS[data.get(columnOffsets[COL_WARD] + row)];
+    }
+
+    public int getBedNumber(int row) {
+        return data.getInt(columnOffsets[COL_BED] + row * Integer.BYTES);
+    }
+
+    public int getAdmitEpochDay(int row) {
+        return data.getInt(columnOffsets[COL_ADMIT] + row * Integer.BYTES);
+    }
+
+    public int getDischargeEpochDay(int row) {
+        return data.getInt(columnOffsets[COL_DISCHARGE] + row * Integer.BYTES);
+    }
+
+    public String getName(int row) {
+        int base = columnOffsets[COL_NAME_OFFSET];
+        int start = data.getInt(base + row * Integer.BYTES);
+        int end = data.getInt(base + (row + 1) * Integer.BYTES);
+
+        byte[] bytes = new byte[end - start];
+        data.get(columnOffsets[COL_NAME_BYTES] + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public Patient toPatient(int row, BillingPolicy policy) {
+        Patient patient = new Patient(getId(row), getName(row), getAge(row), getWard(row), getBedNumber(row),
+                getAdmitEpochDay(row), policy);
+        patient.setDischargeEpochDay(getDischargeEpochDay(row));
+        return patient;
+    }
+
+    /**
+     * Materializes every row, in snapshot order, decoding rows in parallel.
+     */
+    public List<Patient> toPatients() {
+        BillingPolicy policy = StandardBillingPolicy.INSTANCE;
+        Patient[] patients = new Patient[rowCount];
+        IntStream.range(0, rowCount).parallel().forEach(row -> patients[row] = toPatient(row, policy));
+        return new ArrayList<>(Arrays.asList(patients));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Writes patients as a snapshot; the file is replaced atomically.
+     */
+    public static void write(Path file, Collection<Patient> patients) throws IOException {
+        PatientColumns columns = new PatientColumns(patients.size());
+        for (Patient p : patients) {
+            columns.append(p);
+        }
+        write(file, columns);
+    }
+
+    /**
+     * Writes the column store as a snapshot straight from its arrays, with no
+     * Patient per row; the file is replaced atomically. The caller keeps the
+     * columns from changing meanwhile, e.g. under the repository's read lock.
+     */
+    public static void write(Path file, PatientColumns columns) throws IOException {
+        int n = columns.size();
+
+        ByteArrayOutputStream names = new ByteArrayOutputStream(n * 16);
+        int[] nameOffsets = new int[n + 1];
+        for (int row = 0; row < n; row++) {
+            byte[] name = columns.getName(row).getBytes(StandardCharsets.UTF_8);
+            names.write(name, 0, name.length);
+            nameOffsets[row + 1] = names.size();
+        }
+
+        long[] offsets = new long[COLUMN_COUNT];
+        long position = HEADER_BYTES;
+        long[] widths = {Integer.BYTES, Integer.BYTES, 1, Integer.BYTES, Integer.BYTES, Integer.BYTES};
+        for (int column = COL_ID; column <= COL_DISCHARGE; column++) {
+            offsets[column] = position;
+            position += widths[column] * n;
+        }
+        position = (position + 3) & ~3L; // keep int columns aligned after the ward bytes
+        offsets[COL_NAME_OFFSET] = position;
+        position += (long) Integer.BYTES * (n + 1);
+        offsets[COL_NAME_BYTES] = position;
+        position += names.size();
+        if (position > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot larger than 2 GB is not supported");
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(names.size());
+            for (long offset : offsets) {
+                buffer.putLong(offset);
+            }
+
+            for (int row = 0; row < n; row++) {
+                buffer = ensure(out, buffer, Integer.BYTES).putInt(columns.getId(row));
+            }
+            for (int row = 0; row < n; row++) {
+                buffer = ensure(out, buffer, Integer.BYTES).putInt(columns.getAge(row));
+            }
+            for (int row = 0; row < n; row++) {
+                buffer = ensure(out, buffer, 1).put((byte) columns.getWard(row).ordinal());
+            }
+            for (int row = 0; row < n; row++) {
+                buffer = ensure(out, buffer, Integer.BYTES).putInt(columns.getBedNumber(row));
+            }
+            for (int row = 0; row < n; row++) {
+                buffer = ensure(out, buffer, Integer.BYTES).putInt(columns.getAdmitDay(row));
+            }
+            for (int row = 0; row < n; row++) {
+                buffer = ensure(out, buffer, Integer.BYTES).putInt(columns.getDischargeDay(row));
+            }
+            while (out.position() + buffer.position() < offsets[COL_NAME_OFFSET]) {
+                buffer = ensure(out, buffer, 1).put((byte) 0);
+            }
+            for (int offset : nameOffsets) {
+                buffer = ensure(out, buffer, Integer.BYTES).putInt(offset);
+            }
+            drain(out, buffer);
+            out.write(ByteBuffer.wrap(names.toByteArray()));
+            out.force(true);
+        }
+
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static ByteBuffer ensure(FileChannel out, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            drain(out, buffer);
+        }
+        return buffer;
+    }
+
+    private static void drain(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Converts a CSV file to a snapshot. Refuses if any line could not be
+     * parsed, since the snapshot would silently lose it, and never writes over
+     * the input.
+     */
+    public static void fromCsv(Path csv, Path snapshot) throws IOException {
+        if (Files.exists(snapshot) && Files.isSameFile(csv, snapshot)) {
+            throw new IOException("Output " + snapshot + " is the input file");
+        }
+        PatientCsvLoader.LoadResult result = new PatientCsvLoader().load(csv);
+        if (result.getSkippedLines() > 0) {
+            throw new IOException(result.getSkippedLines() + " malformed line(s) in " + csv
+                    + "; fix them first, " + snapshot + " was not written");
+        }
+        write(snapshot, result.getPatients());
+    }
+
+    public static void toCsv(Path snapshot, Path csv) throws IOException {
+        try (PatientSnapshot snap = open(snapshot)) {
+            PatientCsvWriter.write(csv, snap.toPatients());
+        }
+    }
+
+    /**
+     * Converts between layouts: java PatientSnapshot from-csv|to-csv &lt;input&gt; &lt;output&gt;
+     */
+    public static void main(String[] args) {
+        if (args.length != 3 || !(args[0].equals("from-csv") || args[0].equals("to-csv"))) {
+            System.out.println("Usage: java PatientSnapshot from-csv|to-csv <input> <output>");
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            if (args[0].equals("from-csv")) {
+                fromCsv(Paths.get(args[1]), Paths.get(args[2]));
+            } else {
+                toCsv(Paths.get(args[1]), Paths.get(args[2]));
+            }
+        } catch (IOException e) {
+            System.out.println("Conversion failed: " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.printf("Wrote %s in %d ms%n", args[2], (System.nanoTime() - start) / 1_000_000);
+    }
+}
@@ -0,0 +1,105 @@
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Immutable daily rate per ward, parsed from rates.cfg (WARD=rate per line).
+ * Wards missing from the file keep their default rate.
+ */
+public final class RateTable {
+    private static final Map<Ward, Double> DEFAULT_RATES;
+
+    static {
+        Map<Ward, Double> defaults = new EnumMap<>(Ward.class);
+        defaults.put(Ward.GENERAL, 1500.0);
+        defaults.put(Ward.ICU, 5000.0);
+        defaults.put(Ward.PRIVATE, 3000.0);
+        DEFAULT_RATES = Collections.unmodifiableMap(defaults);
+    }
+
+    private final Map<Ward, Double> rates;
+
+    private RateTable(EnumMap<Ward, Double> rates) {
+        this.rates = Collections.unmodifiableMap(rates);
+    }
+
+    public static RateTable defaults() {
+        return new RateTable(new EnumMap<>(DEFAULT_RATES));
+    }
+
+    /**
+     * Parses a rates file. Unknown wards and malformed lines are reported and skipped.
+     */
+    public static RateTable load(Path file) throws IOException {
+        EnumMap<Ward, Double> rates = new EnumMap<>(DEFAULT_RATES);
+        parse(file, rates);
+        return new RateTable(rates);
+    }
+
+    /**
+     * Parses a rates file that must give a rate for every ward and nothing
+     * malformed, e.g. a replacement for the table in use. A file caught half
+     * written fails here instead of charging default rates for the wards it
+     * does not have yet.
+     */
+    public static RateTable loadComplete(Path file) throws IOException {
+        EnumMap<Ward, Double> rates = new EnumMap<>(Ward.class);
+        if (parse(file, rates) > 0) {
+            throw new IOException("invalid lines in " + file);
+        }
+        for (Ward ward : Ward.values()) {
+            if (!rates.containsKey(ward)) {
+                throw new IOException("no rate for " + ward.name() + " in " + file);
+            }
+        }
+        return new RateTable(rates);
+    }
+
+    // Returns the number of invalid lines
+    private static int parse(Path file, Map<Ward, Double> rates) throws IOException {
+        int invalid = 0;
+        try (BufferedReader br = new BufferedReader(new FileReader(file.toFile()))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] parts = line.split("=");
+                if (parts.length == 2) {
+                    try {
+                        Ward ward = Ward.valueOf(parts[0].trim());
+                        double rate = Double.parseDouble(parts[1].trim());
+                        rates.put(ward, rate);
+                    } catch (IllegalArgumentException e) {
+                        System.out.println("Ignoring invalid rate line in " + file + ": " + line);
+                        invalid++;
+                    }
+                } else if (!line.trim().isEmpty()) {
+                    invalid++;
+                }
+            }
+        }
+        return invalid;
+    }
+
+    public static void writeDefaults(Path file) throws IOException {
+        try (PrintWriter pw = new PrintWriter(new FileWriter(file.toFile()))) {
+            for (Map.Entry<Ward, Double> entry : DEFAULT_RATES.entrySet()) {
+                pw.println(entry.getKey().name() + "=" + entry.getValue().longValue());
+            }
+        }
+    }
+
+    public double getRate(Ward ward) {
+        return rates.get(ward);
+    }
+
+    public Map<Ward, Double> asMap() {
+        return rates;
+    }
+
+    @Override
+    public String toString() {
+        return rates.toString();
+    }
+}
@@ -0,0 +1,116 @@
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Publishes the current RateTable for lock-free reads and swaps in a new one
+ * whenever the rates file changes on disk. A changed file that fails to parse
+ * or lacks a ward's rate leaves the previous table in place; the write that
+ * completes it raises another change event.
+ */
+public class RateTableWatcher implements Closeable {
+    private final Path file;
+    private final AtomicReference<RateTable> current;
+    private WatchService watchService;
+    private Thread watcher;
+
+    public RateTableWatcher(Path file, RateTable initial) {
+        this.file = file.toAbsolutePath();
+        this.current = new AtomicReference<>(initial);
+    }
+
+    /**
+     * Loads the file (creating it with default rates if missing) and starts watching it.
+     */
+    public static RateTableWatcher open(Path file) {
+        RateTable initial;
+        try {
+            initial = RateTable.load(file);
+            System.out.println("Loaded ward rates from " + file);
+        } catch (FileNotFoundException e) {
+            System.out.println(file + " not found. Using default rates.");
+            initial = RateTable.defaults();
+            try {
+                RateTable.writeDefaults(file);
+                System.out.println("Created default " + file + " file");
+            } catch (IOException writeError) {
+                System.out.println("Could not create " + file + ": " + writeError.getMessage());
+            }
+        } catch (IOException e) {
+            System.out.println("Error reading " + file + ": " + e.getMessage());
+            initial = RateTable.defaults();
+        }
+
+        RateTableWatcher rateWatcher = new RateTableWatcher(file, initial);
+        rateWatcher.start();
+        return rateWatcher;
+    }
+
+    public RateTable current() {
+        return current.get();
+    }
+
+    /**
+     * Re-reads the file and publishes it; returns false if it could not be read.
+     */
+    public boolean reload() {
+        try {
+            current.set(RateTable.loadComplete(file));
+            return true;
+        } catch (IOException e) {
+            System.err.println("Keeping previous rates, could not reload " + file + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    public synchronized void start() {
+        if (watcher != null) {
+            return;
+        }
+
+        try {
+            watchService = file.getFileSystem().newWatchService();
+            file.getParent().register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            System.err.println("Rate changes will need a restart, cannot watch " + file + ": " + e.getMessage());
+            return;
+        }
+
+        watcher = new Thread(this::watchLoop, "rate-table-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watchLoop() {
+        Path name = file.getFileName();
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (name.equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                key.reset();
+
+                if (changed && reload()) {
+                    System.out.println("\n[rates] Reloaded ward rates: " + current.get());
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed; stop watching
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+}
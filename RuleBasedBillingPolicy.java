@@ -0,0 +1,87 @@
+
+import java.util.Arrays;
+
+/**
+ * Billing policy compiled from tariff rules into flat lookup tables, so
+ * evaluation is a band lookup plus a few multiplications, with no allocation:
+ *
+ *   units = billed day-units up to the patient's day band (tiered multipliers)
+ *   total = min(cap, units * dailyRate * wardFactor[ward] * ageFactor[age] + fee)
+ *
+ * Instances are built by TariffRules.
+ */
+public class RuleBasedBillingPolicy implements BillingPolicy {
+    static final int MAX_AGE = 150;
+
+    private final String name;
+    private final int ruleCount;
+
+    // Day bands: band b covers days [bandStart[b], bandStart[b + 1]) at bandMultiplier[b]
+    private final long[] bandStart;
+    private final double[] bandMultiplier;
+    private final double[] unitsBeforeBand;
+
+    private final double[] wardFactor;
+    private final double[] ageFactor;
+    private final double fee;
+    private final double cap;
+
+    RuleBasedBillingPolicy(String name, int ruleCount, long[] bandStart, double[] bandMultiplier,
+                           double[] wardFactor, double[] ageFactor, double fee, double cap) {
+        this.name = name;
+        this.ruleCount = ruleCount;
+        this.bandStart = bandStart;
+        this.bandMultiplier = bandMultiplier;
+        this.wardFactor = wardFactor;
+        this.ageFactor = ageFactor;
+        this.fee = fee;
+        this.cap = cap;
+
+        // Precompute the day-units accumulated before each band starts
+        this.unitsBeforeBand = new double[bandStart.length];
+        for (int b = 1; b < bandStart.length; b++) {
+            unitsBeforeBand[b] = unitsBeforeBand[b - 1]
+                    + (bandStart[b] - bandStart[b - 1]) * bandMultiplier[b - 1];
+        }
+    }
+
+    private double dayUnits(long daysStayed) {
+        if (daysStayed < bandStart[0]) {
+            return 0;
+        }
+        int b = 0;
+        while (b + 1 < bandStart.length && daysStayed >= bandStart[b + 1]) {
+            b++;
+        }
+        return unitsBeforeBand[b] + (daysStayed - bandStart[b] + 1) * bandMultiplier[b];
+    }
+
+    /**
+     * Without a patient, ward surcharges and age discounts do not apply.
+     */
+    @Override
+    public double computeTotal(double dailyRate, long daysStayed) {
+        return Math.min(cap, dayUnits(daysStayed) * dailyRate + fee);
+    }
+
+    @Override
+    public double computeTotal(Patient patient, double dailyRate, long daysStayed) {
+        int age = Math.max(0, Math.min(MAX_AGE, patient.getAge()));
+        double factor = wardFactor[patient.getWard().ordinal()] * ageFactor[age];
+        return Math.min(cap, dayUnits(daysStayed) * dailyRate * factor + fee);
+    }
+
+    @Override
+    public String getPolicyName() {
+        return name;
+    }
+
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + ruleCount + " tariff rules, bands from days " + Arrays.toString(bandStart) + ")";
+    }
+}
@@ -0,0 +1,65 @@
+
+/**
+ * Bed counts of one site in the cluster, as last reported by that site.
+ * Remote figures may lag the real state by the publish interval.
+ */
+public class SiteOccupancy {
+    private final String site;
+    private final boolean local;
+    private final int[] occupied;
+    private final int[] total;
+    private final long updatedMillis;
+
+    SiteOccupancy(String site, boolean local, int[] occupied, int[] total, long updatedMillis) {
+        this.site = site;
+        this.local = local;
+        this.occupied = occupied;
+        this.total = total;
+        this.updatedMillis = updatedMillis;
+    }
+
+    public String getSite() {
+        return site;
+    }
+
+    public boolean isLocal() {
+        return local;
+    }
+
+    public int getOccupiedBeds(Ward ward) {
+        return occupied[ward.ordinal()];
+    }
+
+    public int getTotalBeds(Ward ward) {
+        return total[ward.ordinal()];
+    }
+
+    public int getFreeBeds(Ward ward) {
+        return total[ward.ordinal()] - occupied[ward.ordinal()];
+    }
+
+    /**
+     * Occupied share of the ward's beds, 1.0 for a ward without beds.
+     */
+    public double getLoad(Ward ward) {
+        int beds = total[ward.ordinal()];
+        return beds == 0 ? 1.0 : occupied[ward.ordinal()] / (double) beds;
+    }
+
+    /**
+     * When the figures were received (epoch millis); current time for the local site.
+     */
+    public long getUpdatedMillis() {
+        return updatedMillis;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(site).append(local ? " (this site):" : ":");
+        for (Ward ward : Ward.values()) {
+            sb.append(' ').append(ward.name()).append(' ')
+                    .append(getOccupiedBeds(ward)).append('/').append(getTotalBeds(ward));
+        }
+        return sb.toString();
+    }
+}
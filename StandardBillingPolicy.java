@@ -1,6 +1,7 @@
 
 
 public class StandardBillingPolicy implements BillingPolicy {
+    public static final StandardBillingPolicy INSTANCE = new StandardBillingPolicy();
 
     @Override
     public double computeTotal(double dailyRate, long daysStayed) {
@@ -1,38 +1,37 @@
 
-import java.io.*;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.function.Supplier;
 
 public class StandardBillingServiceImpl extends BillingService {
-    private Map<Ward, Double> rateMap;
+    private final Supplier<RateTable> rateSource;
 
+    /**
+     * Reads rates.cfg once; use the Supplier constructor to share a live table.
+     */
     public StandardBillingServiceImpl() {
-        this.rateMap = new HashMap<>();
-        loadRatesFromFile();
+        this(loadRatesOnce());
     }
 
-    private void loadRatesFromFile() {
-        try (BufferedReader br = new BufferedReader(new FileReader("rates.cfg"))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                String[] parts = line.split("=");
-                if (parts.length == 2) {
-                    Ward ward = Ward.valueOf(parts[0].trim());
-                    double rate = Double.parseDouble(parts[1].trim());
-                    rateMap.put(ward, rate);
-                }
-            }
+    public StandardBillingServiceImpl(Supplier<RateTable> rateSource) {
+        this.rateSource = rateSource;
+    }
+
+    private static Supplier<RateTable> loadRatesOnce() {
+        RateTable rates;
+        try {
+            rates = RateTable.load(Paths.get("rates.cfg"));
         } catch (IOException e) {
             // Use default rates if file not found
-            rateMap.put(Ward.GENERAL, 1500.0);
-            rateMap.put(Ward.ICU, 5000.0);
-            rateMap.put(Ward.PRIVATE, 3000.0);
+            rates = RateTable.defaults();
         }
+        RateTable table = rates;
+        return () -> table;
     }
 
     @Override
     protected double getDailyRate(Ward ward) {
-        return rateMap.getOrDefault(ward, 1500.0);
+        return rateSource.get().getRate(ward);
     }
 
     @Override
@@ -44,9 +43,9 @@ public class StandardBillingServiceImpl extends BillingService {
 
         // Default policy based on ward
         if (patient.getWard() == Ward.PRIVATE) {
-            return new WeekendDiscountBillingPolicy();
+            return WeekendDiscountBillingPolicy.INSTANCE;
         }
 
-        return new StandardBillingPolicy();
+        return StandardBillingPolicy.INSTANCE;
     }
 }
\ No newline at end of file
@@ -0,0 +1,134 @@
+
+import java.util.Arrays;
+
+/**
+ * One ward's completed stays as half-open day intervals [startDay, endDay),
+ * answering "who was here between these days" without scanning history.
+ *
+ * Stays are bucketed by start day. Over the buckets sits a max segment tree,
+ * an interval tree keyed by day: every node holds the latest end of any stay
+ * starting in its day range, so a query descends only into days that still
+ * have someone there when the query range begins. Adding a stay appends to its
+ * bucket and raises the maxima above it, stopping at the first that is already
+ * later, so it costs O(log days) at worst and usually a step or two.
+ *
+ * Not thread-safe for writes: PatientRepository adds under its write lock and
+ * queries (which only read) under its read lock.
+ */
+public class StayIndex {
+    private static final int DAY_MARGIN = 366;
+    private static final int NONE = Integer.MIN_VALUE;
+
+    private int baseDay;
+    private boolean hasDays;
+    // Leaf i covers start day baseDay + i; capacity is a power of two
+    private int capacity;
+    // Per start day, each stay's row followed by its end day; bare arrays so
+    // an append touches one object
+    private int[][] staysByStart = new int[0][];
+    private int[] stayCounts = new int[0];
+    // Heap-ordered tree: node 1 is the root, leaves are capacity..2 * capacity - 1
+    private int[] maxEnds = new int[0];
+    private int size;
+
+    public void add(int row, int startDay, int endDay) {
+        int index = dayIndex(startDay);
+        int[] stays = staysByStart[index];
+        int count = stayCounts[index];
+        if (stays == null) {
+            stays = staysByStart[index] = new int[8];
+        } else if (2 * count == stays.length) {
+            stays = staysByStart[index] = Arrays.copyOf(stays, 2 * stays.length);
+        }
+        stays[2 * count] = row;
+        stays[2 * count + 1] = endDay;
+        stayCounts[index] = count + 1;
+        for (int node = capacity + index; node > 0 && maxEnds[node] < endDay; node >>>= 1) {
+            maxEnds[node] = endDay;
+        }
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Appends the rows of every stay overlapping [fromDay, toDay) to out, in no
+     * particular order.
+     */
+    public void findOverlapping(int fromDay, int toDay, IntList out) {
+        findOverlapping(fromDay, toDay, 0, out);
+    }
+
+    /**
+     * Like findOverlapping, but only appends rows of minRow or later.
+     */
+    public void findOverlapping(int fromDay, int toDay, int minRow, IntList out) {
+        if (!hasDays) {
+            return;
+        }
+        long last = Math.min(capacity - 1L, (long) toDay - 1 - baseDay);
+        if (last >= 0) {
+            collect(1, 0, capacity - 1, (int) last, fromDay, minRow, out);
+        }
+    }
+
+    private void collect(int node, int low, int high, int last, int fromDay, int minRow, IntList out) {
+        if (low > last || maxEnds[node] <= fromDay) {
+            return;
+        }
+        if (low == high) {
+            int[] stays = staysByStart[low];
+            for (int i = 0; i < 2 * stayCounts[low]; i += 2) {
+                if (stays[i + 1] > fromDay && stays[i] >= minRow) {
+                    out.add(stays[i]);
+                }
+            }
+            return;
+        }
+        int mid = (low + high) >>> 1;
+        collect(2 * node, low, mid, last, fromDay, minRow, out);
+        collect(2 * node + 1, mid + 1, high, last, fromDay, minRow, out);
+    }
+
+    private int dayIndex(int epochDay) {
+        if (!hasDays) {
+            hasDays = true;
+            resize(epochDay - DAY_MARGIN, Integer.highestOneBit(2 * DAY_MARGIN - 1) << 1);
+        } else if (epochDay < baseDay) {
+            int newBase = epochDay - DAY_MARGIN;
+            resize(newBase, Integer.highestOneBit(capacity + (baseDay - newBase) - 1) << 1);
+        } else if (epochDay - baseDay >= capacity) {
+            resize(baseDay, Integer.highestOneBit(epochDay - baseDay + DAY_MARGIN) << 1);
+        }
+        return epochDay - baseDay;
+    }
+
+    /**
+     * Moves the buckets to a new base day and capacity, then rebuilds the tree from the leaves.
+     */
+    private void resize(int newBaseDay, int newCapacity) {
+        int shift = baseDay - newBaseDay;
+        int[][] stays = new int[newCapacity][];
+        int[] counts = new int[newCapacity];
+        int[] tree = new int[2 * newCapacity];
+        Arrays.fill(tree, NONE);
+        for (int i = 0; i < capacity; i++) {
+            if (staysByStart[i] != null) {
+                stays[i + shift] = staysByStart[i];
+                counts[i + shift] = stayCounts[i];
+                tree[newCapacity + i + shift] = maxEnds[capacity + i];
+            }
+        }
+        for (int node = newCapacity - 1; node > 0; node--) {
+            tree[node] = Math.max(tree[2 * node], tree[2 * node + 1]);
+        }
+
+        baseDay = newBaseDay;
+        capacity = newCapacity;
+        staysByStart = stays;
+        stayCounts = counts;
+        maxEnds = tree;
+    }
+}
@@ -0,0 +1,264 @@
+
+import java.io.*;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tariff rule sets read from a config file and compiled once into
+ * RuleBasedBillingPolicy instances, cached by policy name.
+ *
+ * File format (one rule per line, '#' starts a comment):
+ *   policy LongStay              start a rule set
+ *   band 1-3 1.0                 days 1..3 billed at 100% of the daily rate
+ *   band 4+ 0.8                  day 4 onwards at 80% (days not covered: 100%)
+ *   surcharge ICU 20             +20% in ICU
+ *   discount age 60+ 15          -15% for patients aged 60 or more
+ *   discount age 0-12 10         -10% for children
+ *   fee 500                      one-off amount added to every bill
+ *   cap 250000                   maximum bill
+ *   assign PRIVATE LongStay      new admissions to PRIVATE use LongStay
+ */
+public class TariffRules {
+    private final Map<String, RuleBasedBillingPolicy> policies = new ConcurrentHashMap<>();
+    private final Map<Ward, RuleBasedBillingPolicy> assignments = new EnumMap<>(Ward.class);
+
+    private TariffRules() {
+    }
+
+    public static TariffRules load(Path file) throws IOException {
+        try (BufferedReader br = new BufferedReader(new FileReader(file.toFile()))) {
+            return parse(br, file.toString());
+        }
+    }
+
+    static TariffRules parse(BufferedReader reader, String source) throws IOException {
+        TariffRules rules = new TariffRules();
+        Map<Ward, String> assignedNames = new EnumMap<>(Ward.class);
+        PolicyDraft draft = null;
+
+        String line;
+        int lineNo = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNo++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            String[] tokens = line.trim().split("\\s+");
+            if (tokens[0].isEmpty()) {
+                continue;
+            }
+
+            try {
+                String keyword = tokens[0].toLowerCase();
+                if (keyword.equals("policy")) {
+                    expect(tokens, 2);
+                    if (draft != null) {
+                        rules.compile(draft, source);
+                    }
+                    draft = new PolicyDraft(tokens[1], lineNo);
+                } else if (keyword.equals("assign")) {
+                    expect(tokens, 3);
+                    assignedNames.put(Ward.valueOf(tokens[1].toUpperCase()), tokens[2]);
+                } else if (draft == null) {
+                    throw new IllegalArgumentException("rule outside of a 'policy' block");
+                } else {
+                    draft.addRule(keyword, tokens);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IOException(source + " line " + lineNo + ": " + e.getMessage(), e);
+            }
+        }
+        if (draft != null) {
+            rules.compile(draft, source);
+        }
+
+        for (Map.Entry<Ward, String> entry : assignedNames.entrySet()) {
+            RuleBasedBillingPolicy policy = rules.policies.get(entry.getValue());
+            if (policy == null) {
+                throw new IOException(source + ": ward " + entry.getKey().name()
+                        + " assigned to unknown policy " + entry.getValue());
+            }
+            rules.assignments.put(entry.getKey(), policy);
+        }
+        return rules;
+    }
+
+    private static void expect(String[] tokens, int count) {
+        if (tokens.length != count) {
+            throw new IllegalArgumentException("expected " + count + " fields for '" + tokens[0] + "'");
+        }
+    }
+
+    private void compile(PolicyDraft draft, String source) throws IOException {
+        try {
+            if (policies.containsKey(draft.name)) {
+                throw new IllegalArgumentException("policy " + draft.name + " defined twice");
+            }
+            policies.put(draft.name, draft.compile());
+        } catch (IllegalArgumentException e) {
+            throw new IOException(source + " line " + draft.line + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Compiled policy by name, or null if not defined.
+     */
+    public RuleBasedBillingPolicy getPolicy(String name) {
+        return policies.get(name);
+    }
+
+    /**
+     * Policy assigned to a ward, or null if the ward has no assignment.
+     */
+    public RuleBasedBillingPolicy policyFor(Ward ward) {
+        return assignments.get(ward);
+    }
+
+    public Set<String> getPolicyNames() {
+        return Collections.unmodifiableSet(policies.keySet());
+    }
+
+    /**
+     * Rules collected for one policy block before compilation.
+     */
+    private static class PolicyDraft {
+        private final String name;
+        private final int line;
+        private final List<long[]> bandRanges = new ArrayList<>();
+        private final List<Double> bandMultipliers = new ArrayList<>();
+        private final double[] wardFactor = new double[Ward.values().length];
+        private final double[] ageFactor = new double[RuleBasedBillingPolicy.MAX_AGE + 1];
+        private double fee;
+        private double cap = Double.POSITIVE_INFINITY;
+        private int ruleCount;
+
+        PolicyDraft(String name, int line) {
+            this.name = name;
+            this.line = line;
+            Arrays.fill(wardFactor, 1.0);
+            Arrays.fill(ageFactor, 1.0);
+        }
+
+        void addRule(String keyword, String[] tokens) {
+            switch (keyword) {
+                case "band":
+                    expect(tokens, 3);
+                    long[] days = parseRange(tokens[1], Long.MAX_VALUE);
+                    if (days[0] < 1) {
+                        throw new IllegalArgumentException("day bands start at day 1, not " + tokens[1]);
+                    }
+                    bandRanges.add(days);
+                    bandMultipliers.add(parseNonNegative(tokens[2]));
+                    break;
+                case "surcharge":
+                    expect(tokens, 3);
+                    wardFactor[Ward.valueOf(tokens[1].toUpperCase()).ordinal()] *= 1.0 + parsePercent(tokens[2]);
+                    break;
+                case "discount":
+                    expect(tokens, 4);
+                    if (!tokens[1].equalsIgnoreCase("age")) {
+                        throw new IllegalArgumentException("only 'discount age' is supported");
+                    }
+                    long[] ages = parseRange(tokens[2], RuleBasedBillingPolicy.MAX_AGE);
+                    double discount = parsePercent(tokens[3]);
+                    if (discount > 1.0) {
+                        throw new IllegalArgumentException("discount over 100%: " + tokens[3]);
+                    }
+                    double factor = 1.0 - discount;
+                    for (long age = ages[0]; age <= Math.min(ages[1], RuleBasedBillingPolicy.MAX_AGE); age++) {
+                        ageFactor[(int) age] *= factor;
+                    }
+                    break;
+                case "fee":
+                    expect(tokens, 2);
+                    fee += parseNonNegative(tokens[1]);
+                    break;
+                case "cap":
+                    expect(tokens, 2);
+                    cap = Math.min(cap, parseNonNegative(tokens[1]));
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown rule '" + keyword + "'");
+            }
+            ruleCount++;
+        }
+
+        /** Parses "a-b" or "a+" (a+ means a..openEnd). */
+        private static long[] parseRange(String text, long openEnd) {
+            try {
+                if (text.endsWith("+")) {
+                    long from = Long.parseLong(text.substring(0, text.length() - 1));
+                    if (from < 0) {
+                        throw new IllegalArgumentException("invalid range " + text);
+                    }
+                    return new long[]{from, openEnd};
+                }
+                int dash = text.indexOf('-');
+                long from = Long.parseLong(text.substring(0, dash));
+                long to = Long.parseLong(text.substring(dash + 1));
+                if (from < 0 || to < from) {
+                    throw new IllegalArgumentException("invalid range " + text);
+                }
+                return new long[]{from, to};
+            } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("invalid range " + text);
+            }
+        }
+
+        private static double parseNonNegative(String text) {
+            double value = Double.parseDouble(text);
+            if (value < 0 || Double.isNaN(value)) {
+                throw new IllegalArgumentException("negative value " + text);
+            }
+            return value;
+        }
+
+        private static double parsePercent(String text) {
+            return parseNonNegative(text.endsWith("%") ? text.substring(0, text.length() - 1) : text) / 100.0;
+        }
+
+        /**
+         * Sorts the bands and fills any gaps (including before the first and after
+         * the last band) with full-rate bands, so every day count maps to a band.
+         */
+        RuleBasedBillingPolicy compile() {
+            Integer[] order = new Integer[bandRanges.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingLong(i -> bandRanges.get(i)[0]));
+
+            List<Long> starts = new ArrayList<>();
+            List<Double> multipliers = new ArrayList<>();
+            long nextDay = 1;
+            for (int i : order) {
+                long[] range = bandRanges.get(i);
+                if (range[0] < nextDay) {
+                    throw new IllegalArgumentException("overlapping day bands in policy " + name);
+                }
+                if (range[0] > nextDay) {
+                    starts.add(nextDay);
+                    multipliers.add(1.0);
+                }
+                starts.add(range[0]);
+                multipliers.add(bandMultipliers.get(i));
+                nextDay = range[1] == Long.MAX_VALUE ? Long.MAX_VALUE : range[1] + 1;
+            }
+            if (nextDay != Long.MAX_VALUE) {
+                starts.add(nextDay);
+                multipliers.add(1.0);
+            }
+
+            long[] bandStart = new long[starts.size()];
+            double[] bandMultiplier = new double[starts.size()];
+            for (int b = 0; b < bandStart.length; b++) {
+                bandStart[b] = starts.get(b);
+                bandMultiplier[b] = multipliers.get(b);
+            }
+            return new RuleBasedBillingPolicy(name, ruleCount, bandStart, bandMultiplier,
+                    wardFactor.clone(), ageFactor.clone(), fee, cap);
+        }
+    }
+}
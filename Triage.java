@@ -0,0 +1,32 @@
+
+/**
+ * Urgency of a patient waiting for a bed, most urgent first (five-level
+ * emergency severity scale). Wait queues serve lower levels first.
+ */
+public enum Triage {
+    /** Level 1: immediate, life-saving intervention */
+    RESUSCITATION,
+    /** Level 2: high risk, should not wait */
+    EMERGENT,
+    /** Level 3: stable but needs several resources */
+    URGENT,
+    /** Level 4: stable, one resource */
+    LESS_URGENT,
+    /** Level 5: stable, no resources */
+    NON_URGENT;
+
+    public int getLevel() {
+        return ordinal() + 1;
+    }
+
+    /**
+     * @throws IllegalArgumentException unless level is 1-5
+     */
+    public static Triage ofLevel(int level) {
+        Triage[] levels = values();
+        if (level < 1 || level > levels.length) {
+            throw new IllegalArgumentException("Triage level must be 1-" + levels.length + ": " + level);
+        }
+        return levels[level - 1];
+    }
+}
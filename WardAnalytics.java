@@ -0,0 +1,248 @@
+
+/**
+ * Occupancy and length-of-stay figures kept up to date on every admission and
+ * discharge, so reading them never scans patient history:
+ *   - per ward running counts and stay-day sums (averages in O(1))
+ *   - per ward length-of-stay histograms (1 day buckets up to MAX_TRACKED_STAY)
+ *   - per ward daily census: +1 on the admission day and -1 on the discharge day
+ *     in a Fenwick tree, so the census of any day is a prefix sum
+ *   - per ward admissions by day and day-weighted census changes in two more
+ *     Fenwick trees, so stays and patient-days over any date range are a
+ *     few prefix sums too
+ *
+ * Stays follow Patient.getStayLengthInDays: at least one day, and a patient
+ * discharged the day they were admitted still counts in that day's census.
+ */
+public class WardAnalytics {
+    public static final int MAX_TRACKED_STAY = 60;
+
+    private static final Ward[] WARDS = Ward.values();
+    private static final int DAY_MARGIN = 366;
+
+    private final long[] admittedCounts = new long[WARDS.length];
+    private final long[] dischargeCounts = new long[WARDS.length];
+    private final long[] stayDaySums = new long[WARDS.length];
+    // stayHistograms[ward][days]; the last bucket holds every longer stay
+    private final long[][] stayHistograms = new long[WARDS.length][MAX_TRACKED_STAY + 2];
+    private final FenwickTree[] censusChanges = new FenwickTree[WARDS.length];
+    private final FenwickTree[] admissionsByDay = new FenwickTree[WARDS.length];
+    // Each census change times its day index: sum of census over days 0..x = (x + 1) * P(x) - W(x)
+    private final FenwickTree[] weightedChanges = new FenwickTree[WARDS.length];
+    private int baseDay;
+    private boolean hasDays;
+
+    public WardAnalytics() {
+        for (int w = 0; w < WARDS.length; w++) {
+            censusChanges[w] = new FenwickTree(2 * DAY_MARGIN);
+            admissionsByDay[w] = new FenwickTree(2 * DAY_MARGIN);
+            weightedChanges[w] = new FenwickTree(2 * DAY_MARGIN);
+        }
+    }
+
+    public synchronized void recordAdmission(Ward ward, int admitDay) {
+        int w = ward.ordinal();
+        admittedCounts[w]++;
+        int index = dayIndex(admitDay); // may rebase, replacing the trees
+        censusChanges[w].add(index, 1);
+        admissionsByDay[w].add(index, 1);
+        weightedChanges[w].add(index, index);
+    }
+
+    /**
+     * Moves an admission recorded earlier into the discharged figures.
+     */
+    public synchronized void recordDischarge(Ward ward, int admitDay, int dischargeDay) {
+        int w = ward.ordinal();
+        admittedCounts[w]--;
+        dischargeCounts[w]++;
+
+        int stay = Math.max(1, dischargeDay - admitDay);
+        stayDaySums[w] += stay;
+        stayHistograms[w][Math.min(stay, MAX_TRACKED_STAY + 1)]++;
+        int index = dayIndex(admitDay + stay);
+        censusChanges[w].add(index, -1);
+        weightedChanges[w].add(index, -index);
+    }
+
+    /**
+     * Records a complete stay, e.g. history restored at startup.
+     */
+    public synchronized void recordStay(Ward ward, int admitDay, int dischargeDay) {
+        recordAdmission(ward, admitDay);
+        recordDischarge(ward, admitDay, dischargeDay);
+    }
+
+    private int dayIndex(int epochDay) {
+        if (!hasDays) {
+            baseDay = epochDay - DAY_MARGIN;
+            hasDays = true;
+        } else if (epochDay < baseDay) {
+            rebase(epochDay - DAY_MARGIN);
+        }
+        return epochDay - baseDay;
+    }
+
+    private void rebase(int newBaseDay) {
+        int shift = baseDay - newBaseDay;
+        for (int w = 0; w < WARDS.length; w++) {
+            FenwickTree oldChanges = censusChanges[w];
+            FenwickTree oldAdmissions = admissionsByDay[w];
+            int capacity = Math.max(oldChanges.capacity(), oldAdmissions.capacity()) + shift;
+            FenwickTree changes = new FenwickTree(capacity);
+            FenwickTree admissions = new FenwickTree(capacity);
+            FenwickTree weighted = new FenwickTree(capacity);
+            for (int i = 0; i < capacity - shift; i++) {
+                long change = oldChanges.get(i);
+                if (change != 0) {
+                    changes.add(i + shift, change);
+                    weighted.add(i + shift, change * (i + shift));
+                }
+                long admitted = oldAdmissions.get(i);
+                if (admitted != 0) {
+                    admissions.add(i + shift, admitted);
+                }
+            }
+            censusChanges[w] = changes;
+            admissionsByDay[w] = admissions;
+            weightedChanges[w] = weighted;
+        }
+        baseDay = newBaseDay;
+    }
+
+    public synchronized long getAdmittedCount(Ward ward) {
+        return admittedCounts[ward.ordinal()];
+    }
+
+    public synchronized long getDischargeCount(Ward ward) {
+        return dischargeCounts[ward.ordinal()];
+    }
+
+    public synchronized long getDischargeCount() {
+        long total = 0;
+        for (long count : dischargeCounts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Average length of stay of discharged patients in a ward, or 0 if none.
+     */
+    public synchronized double getAverageStay(Ward ward) {
+        long count = dischargeCounts[ward.ordinal()];
+        return count == 0 ? 0 : stayDaySums[ward.ordinal()] / (double) count;
+    }
+
+    public synchronized double getAverageStay() {
+        long days = 0;
+        long count = 0;
+        for (int w = 0; w < WARDS.length; w++) {
+            days += stayDaySums[w];
+            count += dischargeCounts[w];
+        }
+        return count == 0 ? 0 : days / (double) count;
+    }
+
+    /**
+     * Length of stay at the given percentile (0-100) in a ward, in days, or 0 if no
+     * discharges. Returns MAX_TRACKED_STAY + 1 when it falls in the longest bucket.
+     */
+    public synchronized int getStayPercentile(Ward ward, double percentile) {
+        return percentile(stayHistograms[ward.ordinal()], dischargeCounts[ward.ordinal()], percentile);
+    }
+
+    public synchronized int getStayPercentile(double percentile) {
+        long[] combined = new long[MAX_TRACKED_STAY + 2];
+        for (long[] histogram : stayHistograms) {
+            for (int days = 0; days < combined.length; days++) {
+                combined[days] += histogram[days];
+            }
+        }
+        return percentile(combined, getDischargeCount(), percentile);
+    }
+
+    private static int percentile(long[] histogram, long count, double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int days = 1; days < histogram.length; days++) {
+            seen += histogram[days];
+            if (seen >= rank) {
+                return days;
+            }
+        }
+        return MAX_TRACKED_STAY + 1;
+    }
+
+    /**
+     * Discharge counts by stay length: index = days (1..MAX_TRACKED_STAY), last index = longer.
+     */
+    public synchronized long[] getStayHistogram(Ward ward) {
+        return stayHistograms[ward.ordinal()].clone();
+    }
+
+    /**
+     * Number of patients occupying a bed in the ward on the given day.
+     */
+    public synchronized int getCensus(Ward ward, int epochDay) {
+        if (!hasDays || epochDay < baseDay) {
+            return 0;
+        }
+        return (int) censusChanges[ward.ordinal()].prefixSum(epochDay - baseDay);
+    }
+
+    /**
+     * Number of stays in the ward overlapping fromDay..toDay inclusive: the
+     * patients there on fromDay plus those admitted later in the range.
+     */
+    public synchronized long getStayCount(Ward ward, int fromDay, int toDay) {
+        if (!hasDays || toDay < fromDay || toDay < baseDay) {
+            return 0;
+        }
+        int from = Math.max(0, fromDay + 1 - baseDay);
+        return getCensus(ward, fromDay) + admissionsByDay[ward.ordinal()].rangeSum(from, toDay - baseDay);
+    }
+
+    /**
+     * Bed-days used in the ward over fromDay..toDay inclusive, i.e. the sum of
+     * the daily census. Patients still admitted count on every day of the range
+     * from their admission, as in getCensus.
+     */
+    public synchronized long getPatientDays(Ward ward, int fromDay, int toDay) {
+        if (toDay < fromDay) {
+            return 0;
+        }
+        return censusSumThrough(ward.ordinal(), toDay) - censusSumThrough(ward.ordinal(), fromDay - 1);
+    }
+
+    private long censusSumThrough(int w, int epochDay) {
+        if (!hasDays || epochDay < baseDay) {
+            return 0;
+        }
+        int x = epochDay - baseDay;
+        return (x + 1L) * censusChanges[w].prefixSum(x) - weightedChanges[w].prefixSum(x);
+    }
+
+    /**
+     * Daily census for fromDay..toDay inclusive: one prefix sum, then a running total.
+     */
+    public synchronized int[] getCensusSeries(Ward ward, int fromDay, int toDay) {
+        int[] series = new int[Math.max(0, toDay - fromDay + 1)];
+        if (series.length == 0) {
+            return series;
+        }
+
+        FenwickTree changes = censusChanges[ward.ordinal()];
+        int census = getCensus(ward, fromDay);
+        series[0] = census;
+        for (int day = fromDay + 1; day <= toDay; day++) {
+            if (hasDays && day >= baseDay) {
+                census += changes.get(day - baseDay);
+            }
+            series[day - fromDay] = census;
+        }
+        return series;
+    }
+}
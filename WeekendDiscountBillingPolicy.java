@@ -4,6 +4,8 @@ public class WeekendDiscountBillingPolicy implements BillingPolicy {
     private static final double LONG_STAY_DISCOUNT = 0.10; // 10% discount
     private static final int LONG_STAY_THRESHOLD = 7; // days
 
+    public static final WeekendDiscountBillingPolicy INSTANCE = new WeekendDiscountBillingPolicy();
+
     @Override
     public double computeTotal(double dailyRate, long daysStayed) {
         double total = dailyRate * daysStayed;
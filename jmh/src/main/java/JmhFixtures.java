@@ -0,0 +1,258 @@
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntSupplier;
+
+/**
+ * Sets up the hot paths for the JMH benchmarks in hospital.jmh. JMH only
+ * accepts benchmarks in a named package, which cannot see the application's
+ * default-package classes, so the benchmarks call these factories reflectively
+ * during setup and then drive what they return through java.util.function
+ * types. Each fixture mirrors the matching section of HospitalBenchmark.
+ */
+public final class JmhFixtures {
+    private static final long SEED = 42L;
+
+    private JmhFixtures() {
+    }
+
+    // ---------------------------------------------------------------- beds
+
+    public static Object newBedManager(int bedsPerWard) {
+        Map<Ward, Integer> capacity = new EnumMap<>(Ward.class);
+        for (Ward ward : Ward.values()) {
+            capacity.put(ward, bedsPerWard);
+        }
+        return new BedManager(capacity);
+    }
+
+    /**
+     * Fills bedCount beds of the ward and empties them again, one allocate or
+     * release per call. Several cycles may share one BedManager from newBedManager.
+     */
+    public static IntSupplier bedCycle(Object bedManager, String ward, int bedCount) {
+        return new BedCycle((BedManager) bedManager, Ward.valueOf(ward), bedCount);
+    }
+
+    /**
+     * tryAllocate on a full ward, the rejection path admissions hit under load.
+     */
+    public static IntSupplier fullWardRejection() {
+        BedManager beds = (BedManager) newBedManager(10);
+        while (beds.tryAllocate(Ward.PRIVATE) != BedManager.NO_BED) {
+            // Fill the ward
+        }
+        return () -> beds.tryAllocate(Ward.PRIVATE);
+    }
+
+    private static final class BedCycle implements IntSupplier {
+        private final BedManager beds;
+        private final Ward ward;
+        private final int[] allocated;
+        private int next;
+        private boolean filling = true;
+
+        BedCycle(BedManager beds, Ward ward, int bedCount) {
+            this.beds = beds;
+            this.ward = ward;
+            this.allocated = new int[bedCount];
+        }
+
+        @Override
+        public int getAsInt() {
+            int bedNo;
+            if (filling) {
+                bedNo = allocated[next] = beds.tryAllocate(ward);
+            } else {
+                bedNo = allocated[next];
+                beds.releaseBed(ward, bedNo);
+            }
+            if (++next == allocated.length) {
+                next = 0;
+                filling = !filling;
+            }
+            return bedNo;
+        }
+    }
+
+    // ----------------------------------------------------------- observers
+
+    /**
+     * A bed cycle with ConsoleBedAlert ("console") or FileBedAlert ("file")
+     * registered. The console cycle stays below 90% occupancy so it measures
+     * dispatch rather than console output; the file cycle runs the ward to 100%,
+     * so about a fifth of its events write an alert line. Close it to delete the log.
+     */
+    public static ObservedCycle observedBedCycle(String alert) throws IOException {
+        return new ObservedCycle(alert);
+    }
+
+    public static final class ObservedCycle implements IntSupplier, AutoCloseable {
+        private final IntSupplier cycle;
+        private final BufferedLogAppender appender;
+        private final Path log;
+
+        ObservedCycle(String alert) throws IOException {
+            BedManager beds;
+            if (alert.equals("console")) {
+                beds = (BedManager) newBedManager(1000);
+                beds.registerObserver(new ConsoleBedAlert());
+                cycle = new BedCycle(beds, Ward.GENERAL, 800);
+                appender = null;
+                log = null;
+            } else if (alert.equals("file")) {
+                log = Files.createTempFile("jmh-alerts", ".log");
+                appender = new BufferedLogAppender(log, 64 * 1024, 32, 200, FsyncPolicy.NEVER, 0, 0, false);
+                beds = (BedManager) newBedManager(50);
+                beds.registerObserver(new FileBedAlert(appender));
+                cycle = new BedCycle(beds, Ward.GENERAL, 50);
+            } else {
+                throw new IllegalArgumentException("alert must be console or file: " + alert);
+            }
+        }
+
+        @Override
+        public int getAsInt() {
+            return cycle.getAsInt();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (appender != null) {
+                appender.close();
+                Files.deleteIfExists(log);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------- billing
+
+    /**
+     * Charges for one generated patient per call, cycling through rows patients
+     * who all use the "standard" or "weekend" policy.
+     */
+    public static DoubleSupplier billPerPatient(Path dataDir, int rows, String policy) throws IOException {
+        Patient[] patients = patientsWithPolicy(dataDir, rows, policy).toArray(new Patient[0]);
+        BillingService billing = new StandardBillingServiceImpl(RateTable::defaults);
+        int[] next = new int[1];
+        return () -> {
+            Patient patient = patients[next[0]];
+            next[0] = next[0] + 1 == patients.length ? 0 : next[0] + 1;
+            return billing.calculateCharges(patient);
+        };
+    }
+
+    /**
+     * The batch calculateCharges over all rows patients per call; returns the last charge.
+     */
+    public static DoubleSupplier billBatch(Path dataDir, int rows, String policy) throws IOException {
+        List<Patient> patients = patientsWithPolicy(dataDir, rows, policy);
+        BillingService billing = new StandardBillingServiceImpl(RateTable::defaults);
+        return () -> {
+            double[] charges = billing.calculateCharges(patients);
+            return charges[charges.length - 1];
+        };
+    }
+
+    private static List<Patient> patientsWithPolicy(Path dataDir, int rows, String policy) throws IOException {
+        BillingPolicy billingPolicy;
+        if (policy.equals("standard")) {
+            billingPolicy = StandardBillingPolicy.INSTANCE;
+        } else if (policy.equals("weekend")) {
+            billingPolicy = WeekendDiscountBillingPolicy.INSTANCE;
+        } else {
+            throw new IllegalArgumentException("policy must be standard or weekend: " + policy);
+        }
+        List<Patient> patients = new PatientCsvLoader().load(dataFile(dataDir, rows)).getPatients();
+        for (Patient patient : patients) {
+            patient.setBillingPolicy(billingPolicy);
+        }
+        return patients;
+    }
+
+    // --------------------------------------------------------- persistence
+
+    /**
+     * Main.loadPatients without a snapshot: parse the CSV. Returns the patient count.
+     */
+    public static IntSupplier loadCsv(Path dataDir, int rows) throws IOException {
+        Path csv = dataFile(dataDir, rows);
+        return () -> {
+            try {
+                return new PatientCsvLoader().load(csv).getPatients().size();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    /**
+     * Main.loadPatients with a snapshot: history straight into the column store.
+     */
+    public static IntSupplier loadSnapshot(Path dataDir, int rows) throws IOException {
+        Path snapshot = snapshotFile(dataDir, rows);
+        return () -> {
+            try {
+                return loadRepository(snapshot).size();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    /**
+     * Main.saveAndExit without a journal: write the whole repository as a snapshot.
+     */
+    public static IntSupplier saveSnapshot(Path dataDir, int rows) throws IOException {
+        Path snapshot = snapshotFile(dataDir, rows);
+        PatientRepository repository = loadRepository(snapshot);
+        Path out = dataDir.resolve("jmh_out_" + rows + ".snap");
+        return () -> {
+            try {
+                PatientSnapshot.write(out, repository.getColumns());
+                return repository.size();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    private static PatientRepository loadRepository(Path file) throws IOException {
+        PatientRepository repository = new PatientRepository();
+        try (PatientSnapshot snapshot = PatientSnapshot.open(file)) {
+            for (int row = 0; row < snapshot.size(); row++) {
+                repository.addDischarged(snapshot.getId(row), snapshot.getName(row), snapshot.getAge(row),
+                        snapshot.getWard(row), snapshot.getBedNumber(row),
+                        snapshot.getAdmitEpochDay(row), snapshot.getDischargeEpochDay(row));
+            }
+        }
+        return repository;
+    }
+
+    /**
+     * The generated CSV with rows patients, created on first use with a fixed
+     * seed: the same file as HospitalBenchmark's for the same row count.
+     */
+    public static Path dataFile(Path dataDir, int rows) throws IOException {
+        Files.createDirectories(dataDir);
+        Path file = dataDir.resolve("patients_" + rows + ".csv");
+        if (!Files.exists(file)) {
+            PatientDataGenerator.generate(file.toFile(), rows, 0, SEED);
+        }
+        return file;
+    }
+
+    private static Path snapshotFile(Path dataDir, int rows) throws IOException {
+        Path snapshot = dataDir.resolve("patients_" + rows + ".snap");
+        if (!Files.exists(snapshot)) {
+            PatientSnapshot.write(snapshot, new PatientCsvLoader().load(dataFile(dataDir, rows)).getPatients());
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,89 @@
+package hospital.jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * BedManager allocation and release: one op is one tryAllocate or one
+ * releaseBed. The threaded variant has every thread cycle its own share of
+ * one ward, so the counters and the free-bed index are contended; it only
+ * means something on a machine with at least as many CPUs as threads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BedBenchmark {
+    private static final int THREADS = 4;
+    private static final int BEDS_PER_THREAD = 250;
+
+    @State(Scope.Thread)
+    public static class SingleWard {
+        IntSupplier cycle;
+
+        @Setup
+        public void setup() {
+            Object beds = Fixtures.create(Object.class, "newBedManager", 1000);
+            cycle = Fixtures.create(IntSupplier.class, "bedCycle", beds, "GENERAL", 1000);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SharedWard {
+        Object beds;
+
+        @Setup
+        public void setup() {
+            beds = Fixtures.create(Object.class, "newBedManager", THREADS * BEDS_PER_THREAD);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SharedWardCycle {
+        IntSupplier cycle;
+
+        @Setup
+        public void setup(SharedWard ward) {
+            cycle = Fixtures.create(IntSupplier.class, "bedCycle", ward.beds, "ICU", BEDS_PER_THREAD);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class FullWard {
+        IntSupplier rejection;
+
+        @Setup
+        public void setup() {
+            rejection = Fixtures.create(IntSupplier.class, "fullWardRejection");
+        }
+    }
+
+    @Benchmark
+    public int allocateReleaseSingle(SingleWard state) {
+        return state.cycle.getAsInt();
+    }
+
+    @Benchmark
+    @Threads(THREADS)
+    public int allocateReleaseThreads(SharedWardCycle state) {
+        return state.cycle.getAsInt();
+    }
+
+    @Benchmark
+    public int tryAllocateFullWard(FullWard state) {
+        return state.rejection.getAsInt();
+    }
+}
@@ -0,0 +1,58 @@
+package hospital.jmh;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * BillingService.calculateCharges for generated patients under each policy:
+ * perPatient is one patient per op, batch is all rows patients per op.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Thread)
+public class BillingBenchmark {
+    static final Path DATA_DIR = Paths.get("bench-data");
+
+    @Param({"standard", "weekend"})
+    public String policy;
+
+    @Param({"100000"})
+    public int rows;
+
+    private DoubleSupplier perPatient;
+    private DoubleSupplier batch;
+
+    @Setup
+    public void setup() {
+        perPatient = Fixtures.create(DoubleSupplier.class, "billPerPatient", DATA_DIR, rows, policy);
+        batch = Fixtures.create(DoubleSupplier.class, "billBatch", DATA_DIR, rows, policy);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public double perPatient() {
+        return perPatient.getAsDouble();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public double batch() {
+        return batch.getAsDouble();
+    }
+}
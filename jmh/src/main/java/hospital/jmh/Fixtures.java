@@ -0,0 +1,38 @@
+package hospital.jmh;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Calls a factory of the default-package JmhFixtures, which code in a named
+ * package cannot reference directly. Only used in setup, never while measuring.
+ */
+final class Fixtures {
+    private static final Class<?> FIXTURES;
+
+    static {
+        try {
+            FIXTURES = Class.forName("JmhFixtures");
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Fixtures() {
+    }
+
+    static <T> T create(Class<T> type, String factory, Object... args) {
+        for (Method method : FIXTURES.getMethods()) {
+            if (method.getName().equals(factory) && method.getParameterCount() == args.length) {
+                try {
+                    return type.cast(method.invoke(null, args));
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                } catch (InvocationTargetException e) {
+                    throw new IllegalStateException("JmhFixtures." + factory + " failed", e.getCause());
+                }
+            }
+        }
+        throw new IllegalArgumentException("No fixture JmhFixtures." + factory + " with " + args.length + " arguments");
+    }
+}
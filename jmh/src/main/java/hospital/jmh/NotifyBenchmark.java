@@ -0,0 +1,49 @@
+package hospital.jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * BedManager.notifyObservers through an allocate or release with
+ * ConsoleBedAlert or FileBedAlert registered; one op is one bed event.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NotifyBenchmark {
+    @Param({"console", "file"})
+    public String alert;
+
+    private IntSupplier cycle;
+
+    @Setup
+    public void setup() {
+        cycle = Fixtures.create(IntSupplier.class, "observedBedCycle", alert);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        ((AutoCloseable) cycle).close();
+    }
+
+    @Benchmark
+    public int bedEvent() {
+        return cycle.getAsInt();
+    }
+}
@@ -0,0 +1,58 @@
+package hospital.jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Startup and exit on generated files: Main.loadPatients from the CSV or the
+ * snapshot, and Main.saveAndExit writing a snapshot. One op is the whole
+ * file. Files are generated into bench-data/ on first use with a fixed seed.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class PersistenceBenchmark {
+    @Param({"100000", "1000000", "10000000"})
+    public int rows;
+
+    private IntSupplier loadCsv;
+    private IntSupplier loadSnapshot;
+    private IntSupplier saveSnapshot;
+
+    @Setup
+    public void setup() {
+        loadCsv = Fixtures.create(IntSupplier.class, "loadCsv", BillingBenchmark.DATA_DIR, rows);
+        loadSnapshot = Fixtures.create(IntSupplier.class, "loadSnapshot", BillingBenchmark.DATA_DIR, rows);
+        saveSnapshot = Fixtures.create(IntSupplier.class, "saveSnapshot", BillingBenchmark.DATA_DIR, rows);
+    }
+
+    @Benchmark
+    public int loadCsv() {
+        return loadCsv.getAsInt();
+    }
+
+    @Benchmark
+    public int loadSnapshot() {
+        return loadSnapshot.getAsInt();
+    }
+
+    @Benchmark
+    public int saveSnapshot() {
+        return saveSnapshot.getAsInt();
+    }
+}
@@ -0,0 +1,57 @@
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncBedDispatcherTest {
+    private static void awaitWaiting(Thread thread) throws InterruptedException {
+        while (thread.getState() != Thread.State.WAITING && thread.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void producerBlockedOnAFullQueueDuringShutdownStillDelivers() throws Exception {
+        int capacity = Ward.values().length;
+        AsyncBedDispatcher dispatcher = new AsyncBedDispatcher(capacity, 1, BackPressurePolicy.BLOCK);
+        CountDownLatch consumerBusy = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Integer> delivered = Collections.synchronizedList(new ArrayList<>());
+        dispatcher.registerObserver((ward, freeBeds, totalBeds) -> {
+            if (freeBeds == 0) {
+                consumerBusy.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            delivered.add(freeBeds);
+        });
+
+        // Event 0 holds the consumer inside dispatch; events 1..capacity fill the ring
+        dispatcher.onBedStatusChanged(Ward.GENERAL, 0, 10);
+        consumerBusy.await();
+        for (int i = 1; i <= capacity; i++) {
+            dispatcher.onBedStatusChanged(Ward.GENERAL, i, 10);
+        }
+        Thread producer = new Thread(() -> dispatcher.onBedStatusChanged(Ward.GENERAL, capacity + 1, 10));
+        producer.start();
+        awaitWaiting(producer);
+
+        Thread stopper = new Thread(dispatcher::shutdown);
+        stopper.start();
+        producer.join(5_000);
+        assertFalse(producer.isAlive(), "shutdown should wake a producer waiting for room");
+
+        release.countDown();
+        stopper.join(5_000);
+        assertFalse(stopper.isAlive());
+        assertEquals(capacity + 2, delivered.size());
+        assertTrue(delivered.contains(capacity + 1));
+    }
+}
@@ -0,0 +1,164 @@
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Many threads allocating and releasing beds of the same small ward at once.
+ * Every bed records its holder, so a bed handed to two threads, or a free
+ * bed counted as occupied, fails the test.
+ */
+class BedManagerStressTest {
+    private static final int THREADS = 8;
+    private static final int BEDS = 20;
+    private static final int ROUNDS = 20_000;
+
+    private static BedManager newBedManager(int beds) {
+        Map<Ward, Integer> capacity = new EnumMap<>(Ward.class);
+        for (Ward ward : Ward.values()) {
+            capacity.put(ward, beds);
+        }
+        return new BedManager(capacity);
+    }
+
+    /**
+     * Runs the task on every thread at once and rethrows the first failure.
+     */
+    private static void runConcurrently(int threads, Runnable task) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                    task.run();
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (!failures.isEmpty()) {
+            throw new AssertionError(failures.peek());
+        }
+    }
+
+    @Test
+    void tryAllocateNeverHandsOutABedTwice() throws InterruptedException {
+        BedManager beds = newBedManager(BEDS);
+        AtomicIntegerArray holders = new AtomicIntegerArray(BEDS + 1);
+        AtomicInteger nextThreadId = new AtomicInteger(1);
+        AtomicInteger maxSeen = new AtomicInteger();
+
+        runConcurrently(THREADS, () -> {
+            int me = nextThreadId.getAndIncrement();
+            Deque<Integer> held = new ArrayDeque<>();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < ROUNDS; i++) {
+                if (held.isEmpty() || (held.size() < 5 && random.nextBoolean())) {
+                    int bedNo = beds.tryAllocate(Ward.ICU);
+                    if (bedNo != BedManager.NO_BED) {
+                        assertTrue(bedNo >= 1 && bedNo <= BEDS, "bed out of range: " + bedNo);
+                        assertTrue(holders.compareAndSet(bedNo, 0, me), "bed " + bedNo + " given out twice");
+                        held.push(bedNo);
+                    }
+                } else {
+                    int bedNo = held.pop();
+                    assertTrue(holders.compareAndSet(bedNo, me, 0));
+                    beds.releaseBed(Ward.ICU, bedNo);
+                }
+                maxSeen.accumulateAndGet(beds.getOccupiedBeds(Ward.ICU), Math::max);
+            }
+            while (!held.isEmpty()) {
+                int bedNo = held.pop();
+                holders.set(bedNo, 0);
+                beds.releaseBed(Ward.ICU, bedNo);
+            }
+        });
+
+        assertTrue(maxSeen.get() <= BEDS, "occupancy exceeded capacity: " + maxSeen.get());
+        assertEquals(0, beds.getOccupiedBeds(Ward.ICU));
+        assertEquals(beds.getAllocatedCount(Ward.ICU), beds.getReleasedCount(Ward.ICU));
+        for (int bedNo = 1; bedNo <= BEDS; bedNo++) {
+            assertTrue(beds.isBedFree(Ward.ICU, bedNo), "bed " + bedNo + " leaked");
+        }
+    }
+
+    @Test
+    void queuedRequestsAreServedExactlyOnceUnderConcurrentReleases() throws InterruptedException {
+        BedManager beds = newBedManager(BEDS);
+        AtomicIntegerArray holders = new AtomicIntegerArray(BEDS + 1);
+        Queue<Integer> assigned = new ConcurrentLinkedQueue<>();
+        AtomicInteger requests = new AtomicInteger();
+        AtomicInteger deliveries = new AtomicInteger();
+        BedAssignment keep = (request, bedNo) -> {
+            assertEquals(bedNo, request.getBedNumber());
+            assertTrue(holders.compareAndSet(bedNo, 0, 1), "bed " + bedNo + " given out twice");
+            deliveries.incrementAndGet();
+            assigned.add(bedNo);
+        };
+        for (int i = 0; i < BEDS; i++) {
+            beds.requestBed(Ward.GENERAL, Triage.URGENT, keep);
+        }
+        requests.set(BEDS);
+
+        runConcurrently(THREADS, () -> {
+            Triage[] levels = Triage.values();
+            for (int i = 0; i < ROUNDS / 4; i++) {
+                Integer bedNo = assigned.poll();
+                if (bedNo == null) {
+                    Thread.yield();
+                    continue;
+                }
+                assertTrue(holders.compareAndSet(bedNo, 1, 0));
+                beds.releaseBed(Ward.GENERAL, bedNo);
+                requests.incrementAndGet();
+                beds.requestBed(Ward.GENERAL, levels[i % levels.length], keep);
+            }
+        });
+
+        // Every request either holds a bed or is still queued, and no bed is idle while anyone waits
+        int waiting = beds.getWaitingCount(Ward.GENERAL);
+        assertEquals(requests.get(), deliveries.get() + waiting);
+        assertEquals(BEDS, beds.getOccupiedBeds(Ward.GENERAL));
+        assertEquals(BEDS, assigned.size());
+        assertEquals(deliveries.get(), beds.getAllocatedCount(Ward.GENERAL));
+    }
+
+    @Test
+    void concurrentBatchesKeepOccupancyInStepWithBeds() throws InterruptedException {
+        BedManager beds = newBedManager(BEDS);
+        AtomicIntegerArray holders = new AtomicIntegerArray(BEDS + 1);
+
+        runConcurrently(THREADS, () -> {
+            int[] held = new int[0];
+            for (int i = 0; i < ROUNDS / 10; i++) {
+                for (int bedNo : held) {
+                    assertTrue(holders.compareAndSet(bedNo, 1, 0));
+                }
+                held = beds.applyBatch(Ward.PRIVATE, held, 1 + i % 4);
+                for (int bedNo : held) {
+                    assertTrue(holders.compareAndSet(bedNo, 0, 1), "bed " + bedNo + " given out twice");
+                }
+            }
+            for (int bedNo : held) {
+                holders.set(bedNo, 0);
+            }
+            beds.applyBatch(Ward.PRIVATE, held, 0);
+        });
+
+        assertEquals(0, beds.getOccupiedBeds(Ward.PRIVATE));
+        assertEquals(beds.getAllocatedCount(Ward.PRIVATE), beds.getReleasedCount(Ward.PRIVATE));
+    }
+}
@@ -0,0 +1,202 @@
+
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BedManagerTest {
+    private static BedManager newBedManager(int beds) {
+        Map<Ward, Integer> capacity = new EnumMap<>(Ward.class);
+        for (Ward ward : Ward.values()) {
+            capacity.put(ward, beds);
+        }
+        return new BedManager(capacity);
+    }
+
+    private static void fill(BedManager beds, Ward ward) {
+        while (beds.tryAllocate(ward) != BedManager.NO_BED) {
+            // Claim every bed
+        }
+    }
+
+    @Test
+    void allocatesLowestFreeBedAndRefusesWhenFull() throws BedUnavailableException {
+        BedManager beds = newBedManager(3);
+        assertEquals(1, beds.allocateBed(Ward.ICU));
+        assertEquals(2, beds.allocateBed(Ward.ICU));
+        beds.releaseBed(Ward.ICU, 1);
+        assertEquals(1, beds.allocateBed(Ward.ICU));
+        assertEquals(3, beds.allocateBed(Ward.ICU));
+        assertEquals(BedManager.NO_BED, beds.tryAllocate(Ward.ICU));
+        assertThrows(BedUnavailableException.class, () -> beds.allocateBed(Ward.ICU));
+        assertEquals(0, beds.getFreeBeds(Ward.ICU));
+        assertEquals(3, beds.getFreeBeds(Ward.GENERAL));
+    }
+
+    @Test
+    void occupyBedClaimsOnlyFreeBedsInRange() {
+        BedManager beds = newBedManager(3);
+        assertTrue(beds.occupyBed(Ward.GENERAL, 2));
+        assertFalse(beds.occupyBed(Ward.GENERAL, 2));
+        assertFalse(beds.occupyBed(Ward.GENERAL, 4));
+        assertEquals(1, beds.getOccupiedBeds(Ward.GENERAL));
+        assertEquals(1, beds.getAllocatedCount(Ward.GENERAL));
+        assertEquals(1, beds.tryAllocate(Ward.GENERAL));
+    }
+
+    @Test
+    void countsAllocationsAndReleases() {
+        BedManager beds = newBedManager(5);
+        int first = beds.tryAllocate(Ward.PRIVATE);
+        int second = beds.tryAllocate(Ward.PRIVATE);
+        beds.releaseBed(Ward.PRIVATE, first);
+        beds.releaseBed(Ward.PRIVATE, second);
+        beds.releaseBed(Ward.PRIVATE, second);
+        beds.tryAllocate(Ward.PRIVATE);
+
+        assertEquals(3, beds.getAllocatedCount(Ward.PRIVATE));
+        assertEquals(2, beds.getReleasedCount(Ward.PRIVATE));
+        assertEquals(1, beds.getOccupiedBeds(Ward.PRIVATE));
+    }
+
+    @Test
+    void notifiesObserversWithFreeBeds() {
+        BedManager beds = newBedManager(4);
+        List<Integer> free = new ArrayList<>();
+        beds.registerObserver((ward, freeBeds, totalBeds) -> free.add(freeBeds));
+        int bedNo = beds.tryAllocate(Ward.ICU);
+        beds.tryAllocate(Ward.ICU);
+        beds.releaseBed(Ward.ICU, bedNo);
+        assertEquals(List.of(3, 2, 3), free);
+    }
+
+    // ------------------------------------------------------------ wait queue
+
+    @Test
+    void requestBedAssignsAtOnceWhenABedIsFree() {
+        BedManager beds = newBedManager(2);
+        List<Integer> assigned = new ArrayList<>();
+        BedRequest request = beds.requestBed(Ward.ICU, Triage.URGENT, (r, bedNo) -> assigned.add(bedNo));
+        assertEquals(BedRequest.State.ASSIGNED, request.getState());
+        assertEquals(List.of(1), assigned);
+        assertEquals(0, beds.getWaitingCount(Ward.ICU));
+    }
+
+    @Test
+    void releasedBedGoesToMostUrgentThenEarliestWaiter() {
+        BedManager beds = newBedManager(2);
+        fill(beds, Ward.ICU);
+        List<String> served = new ArrayList<>();
+        BedRequest lateUrgent = beds.requestBed(Ward.ICU, Triage.URGENT, (r, bedNo) -> served.add("urgent-1"));
+        BedRequest minor = beds.requestBed(Ward.ICU, Triage.NON_URGENT, (r, bedNo) -> served.add("minor"));
+        BedRequest secondUrgent = beds.requestBed(Ward.ICU, Triage.URGENT, (r, bedNo) -> served.add("urgent-2"));
+        BedRequest critical = beds.requestBed(Ward.ICU, Triage.RESUSCITATION, (r, bedNo) -> served.add("critical"));
+        assertEquals(4, beds.getWaitingCount(Ward.ICU));
+        assertArrayEquals(new BedRequest[] {critical, lateUrgent, secondUrgent, minor}, beds.getWaiting(Ward.ICU));
+
+        beds.releaseBed(Ward.ICU, 2);
+        beds.releaseBed(Ward.ICU, 1);
+        beds.releaseBed(Ward.ICU, 2);
+
+        assertEquals(List.of("critical", "urgent-1", "urgent-2"), served);
+        assertEquals(2, critical.getBedNumber());
+        assertEquals(BedRequest.State.WAITING, minor.getState());
+        assertEquals(1, beds.getWaitingCount(Ward.ICU));
+        assertEquals(2, beds.getOccupiedBeds(Ward.ICU));
+    }
+
+    @Test
+    void handedOffBedIsNeverFreeInBetween() {
+        BedManager beds = newBedManager(1);
+        fill(beds, Ward.GENERAL);
+        List<Integer> freeSeen = new ArrayList<>();
+        beds.registerObserver((ward, freeBeds, totalBeds) -> freeSeen.add(freeBeds));
+        BedRequest request = beds.requestBed(Ward.GENERAL, Triage.EMERGENT, (r, bedNo) -> { });
+
+        beds.releaseBed(Ward.GENERAL, 1);
+
+        assertEquals(1, request.getBedNumber());
+        assertFalse(beds.isBedFree(Ward.GENERAL, 1));
+        assertTrue(freeSeen.isEmpty(), "hand-off should not report a free bed: " + freeSeen);
+        assertEquals(2, beds.getAllocatedCount(Ward.GENERAL));
+        assertEquals(1, beds.getReleasedCount(Ward.GENERAL));
+    }
+
+    @Test
+    void tryAllocateRefusesWhileOthersWait() {
+        BedManager beds = newBedManager(1);
+        fill(beds, Ward.PRIVATE);
+        BedRequest waiting = beds.requestBed(Ward.PRIVATE, Triage.LESS_URGENT, (r, bedNo) -> { });
+        assertTrue(waiting.cancel());
+        assertFalse(waiting.cancel());
+        assertEquals(BedRequest.State.CANCELLED, waiting.getState());
+
+        beds.requestBed(Ward.PRIVATE, Triage.LESS_URGENT, (r, bedNo) -> { });
+        beds.releaseBed(Ward.PRIVATE, 1);
+        beds.releaseBed(Ward.PRIVATE, 1);
+        assertEquals(1, beds.tryAllocate(Ward.PRIVATE));
+        assertEquals(0, beds.getWaitingCount(Ward.PRIVATE));
+    }
+
+    @Test
+    void failingListenerPassesTheBedOn() {
+        BedManager beds = newBedManager(1);
+        fill(beds, Ward.ICU);
+        BedRequest failing = beds.requestBed(Ward.ICU, Triage.RESUSCITATION, (r, bedNo) -> {
+            throw new IllegalStateException("listener failed");
+        });
+        BedRequest next = beds.requestBed(Ward.ICU, Triage.URGENT, (r, bedNo) -> { });
+
+        beds.releaseBed(Ward.ICU, 1);
+
+        assertEquals(BedRequest.State.FAILED, failing.getState());
+        assertEquals(BedManager.NO_BED, failing.getBedNumber());
+        assertEquals(BedRequest.State.ASSIGNED, next.getState());
+        assertEquals(1, next.getBedNumber());
+        assertEquals(0, beds.getWaitingCount(Ward.ICU));
+    }
+
+    // ------------------------------------------------------------ applyBatch
+
+    @Test
+    void applyBatchReleasesThenClaimsLowestBeds() {
+        BedManager beds = newBedManager(5);
+        int[] claimed = beds.applyBatch(Ward.GENERAL, new int[0], 3);
+        assertArrayEquals(new int[] {1, 2, 3}, claimed);
+
+        claimed = beds.applyBatch(Ward.GENERAL, new int[] {2}, 4);
+        assertArrayEquals(new int[] {2, 4, 5}, claimed);
+        assertEquals(5, beds.getOccupiedBeds(Ward.GENERAL));
+        assertEquals(6, beds.getAllocatedCount(Ward.GENERAL));
+        assertEquals(1, beds.getReleasedCount(Ward.GENERAL));
+    }
+
+    @Test
+    void applyBatchNotifiesOnceAndIgnoresBedsNotHeld() {
+        BedManager beds = newBedManager(4);
+        beds.applyBatch(Ward.ICU, new int[0], 2);
+        List<Integer> free = new ArrayList<>();
+        beds.registerObserver((ward, freeBeds, totalBeds) -> free.add(freeBeds));
+
+        int[] claimed = beds.applyBatch(Ward.ICU, new int[] {1, 4}, 0);
+
+        assertEquals(0, claimed.length);
+        assertEquals(List.of(3), free);
+        assertEquals(1, beds.getOccupiedBeds(Ward.ICU));
+        assertTrue(beds.isBedFree(Ward.ICU, 1));
+    }
+
+    @Test
+    void applyBatchServesWaitersBeforeClaiming() {
+        BedManager beds = newBedManager(2);
+        fill(beds, Ward.PRIVATE);
+        List<Integer> assigned = new ArrayList<>();
+        beds.requestBed(Ward.PRIVATE, Triage.URGENT, (r, bedNo) -> assigned.add(bedNo));
+
+        int[] claimed = beds.applyBatch(Ward.PRIVATE, new int[] {1, 2}, 2);
+
+        assertEquals(List.of(1), assigned);
+        assertArrayEquals(new int[] {2}, claimed);
+        assertEquals(2, beds.getOccupiedBeds(Ward.PRIVATE));
+    }
+}
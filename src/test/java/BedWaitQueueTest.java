@@ -0,0 +1,85 @@
+
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BedWaitQueueTest {
+    private long sequence;
+
+    private BedRequest request(Triage triage) {
+        return new BedRequest(null, Ward.ICU, triage, sequence++, LatencyHistogram.NOT_SAMPLED, (r, bedNo) -> { });
+    }
+
+    @Test
+    void pollsByTriageThenArrival() {
+        BedWaitQueue queue = new BedWaitQueue();
+        BedRequest minor = request(Triage.NON_URGENT);
+        BedRequest urgent = request(Triage.URGENT);
+        BedRequest critical = request(Triage.RESUSCITATION);
+        BedRequest urgentLater = request(Triage.URGENT);
+        queue.add(minor);
+        queue.add(urgent);
+        queue.add(critical);
+        queue.add(urgentLater);
+
+        assertEquals(4, queue.size());
+        assertSame(critical, queue.poll());
+        assertSame(urgent, queue.poll());
+        assertSame(urgentLater, queue.poll());
+        assertSame(minor, queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void removesFromAnywhereAndOnlyOnce() {
+        BedWaitQueue queue = new BedWaitQueue();
+        List<BedRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            BedRequest request = request(Triage.ofLevel(1 + i % 5));
+            requests.add(request);
+            queue.add(request);
+        }
+
+        assertTrue(queue.remove(requests.get(5)));
+        assertFalse(queue.remove(requests.get(5)));
+        assertTrue(queue.remove(requests.get(0)));
+        assertFalse(new BedWaitQueue().remove(requests.get(1)));
+
+        List<BedRequest> expected = new ArrayList<>(requests);
+        expected.remove(5);
+        expected.remove(0);
+        expected.sort((a, b) -> a.isBefore(b) ? -1 : 1);
+        assertEquals(expected, Arrays.asList(queue.toSortedArray()));
+        for (BedRequest request : expected) {
+            assertSame(request, queue.poll());
+        }
+    }
+
+    @Test
+    void matchesASortedListThroughRandomAddsPollsAndRemoves() {
+        Random random = new Random(7);
+        BedWaitQueue queue = new BedWaitQueue();
+        List<BedRequest> model = new ArrayList<>();
+        Comparator<BedRequest> order = (a, b) -> a == b ? 0 : a.isBefore(b) ? -1 : 1;
+
+        for (int step = 0; step < 20_000; step++) {
+            int action = random.nextInt(10);
+            if (action < 5 || model.isEmpty()) {
+                BedRequest request = request(Triage.ofLevel(1 + random.nextInt(5)));
+                queue.add(request);
+                model.add(request);
+            } else if (action < 8) {
+                model.sort(order);
+                assertSame(model.remove(0), queue.poll());
+            } else {
+                BedRequest request = model.remove(random.nextInt(model.size()));
+                assertTrue(queue.remove(request));
+            }
+            assertEquals(model.size(), queue.size());
+        }
+        model.sort(order);
+        assertEquals(model, Arrays.asList(queue.toSortedArray()));
+    }
+}
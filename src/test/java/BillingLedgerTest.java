@@ -0,0 +1,72 @@
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BillingLedgerTest {
+    @TempDir
+    Path dir;
+
+    private static BillingRecord record(int id) {
+        return new BillingRecord(id, "Patient " + id, Ward.GENERAL, 2, 1000, 2000);
+    }
+
+    @Test
+    void everyAcceptedRecordIsWrittenByClose() throws Exception {
+        Path file = dir.resolve("billing.txt");
+        BillingLedger ledger = new BillingLedger(file, 16, FsyncPolicy.NEVER);
+        AtomicInteger accepted = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(4);
+        Thread[] submitters = new Thread[4];
+        for (int t = 0; t < submitters.length; t++) {
+            int base = t * 100_000;
+            submitters[t] = new Thread(() -> {
+                started.countDown();
+                for (int i = 0; i < 100_000; i++) {
+                    if (!ledger.submit(record(base + i))) {
+                        return;
+                    }
+                    accepted.incrementAndGet();
+                }
+            });
+            submitters[t].start();
+        }
+        started.await();
+        ledger.close();
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+
+        assertFalse(ledger.submit(record(-1)));
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(accepted.get(), lines.size());
+        assertEquals(accepted.get(), ledger.getWrittenCount());
+    }
+
+    @Test
+    void formatsAmountsExactlyLikePrintf() throws Exception {
+        double[] amounts = {1.005, 2.675, 0.125, 1.115, 10.045, 1234.565, 0.0, -0.0, -0.004, -1.005, 0.999,
+                99999.995, 1e20, 4.35, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+        Path file = dir.resolve("billing.txt");
+        BillingLedger ledger = new BillingLedger(file, 64, FsyncPolicy.NEVER);
+        for (int i = 0; i < amounts.length; i++) {
+            assertTrue(ledger.submit(new BillingRecord(i, "Patient", Ward.GENERAL, 1, amounts[i], amounts[i])));
+        }
+        ledger.close();
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(amounts.length, lines.size());
+        for (int i = 0; i < amounts.length; i++) {
+            String expected = String.format(Locale.ROOT, "%d, Patient, %s, 1, %.2f, %.2f", i, Ward.GENERAL,
+                    amounts[i], amounts[i]);
+            assertEquals(expected, lines.get(i));
+        }
+    }
+}
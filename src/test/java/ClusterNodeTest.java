@@ -0,0 +1,89 @@
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterNodeTest {
+    // Message types from ClusterNode's wire protocol
+    private static final byte HELLO = 1;
+    private static final byte HELLO_ACK = 2;
+    private static final byte OCCUPANCY = 3;
+    private static final byte RESERVE = 4;
+
+    private static BedManager newBedManager() {
+        Map<Ward, Integer> capacity = new EnumMap<>(Ward.class);
+        for (Ward ward : Ward.values()) {
+            capacity.put(ward, 2);
+        }
+        return new BedManager(capacity);
+    }
+
+    /**
+     * Says HELLO as the given peer, sends the message, waits for the node to
+     * close the connection and returns the first line it printed.
+     */
+    private static String sendAndAwaitClose(ClusterNode node, String peer, byte[] message)
+            throws IOException, InterruptedException {
+        PrintStream console = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(printed, true, StandardCharsets.UTF_8));
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), node.getPort())) {
+            socket.setSoTimeout(5_000);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            out.writeByte(HELLO);
+            out.writeUTF(peer);
+            out.flush();
+            assertEquals(HELLO_ACK, in.readByte());
+            in.readUTF();
+
+            out.write(message);
+            out.flush();
+            assertEquals(-1, in.read(), "node should drop the connection");
+            // The node closes the socket before it prints why
+            for (int i = 0; i < 500 && printed.size() == 0; i++) {
+                Thread.sleep(10);
+            }
+        } finally {
+            System.setOut(console);
+        }
+        return printed.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void dropsAPeerThatSendsABadWard() throws Exception {
+        BedManager beds = newBedManager();
+        try (ClusterNode node = new ClusterNode("test", 0, Collections.emptyList(), beds,
+                (name, age, ward, bedNo, admitDay) -> 1)) {
+            node.start();
+
+            ByteArrayOutputStream reserve = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(reserve);
+            out.writeByte(RESERVE);
+            out.writeLong(1);
+            out.writeByte(99);
+            assertTrue(sendAndAwaitClose(node, "bad-ward", reserve.toByteArray())
+                    .contains("lost connection from bad-ward: Bad ward 99"));
+
+            ByteArrayOutputStream occupancy = new ByteArrayOutputStream();
+            out = new DataOutputStream(occupancy);
+            out.writeByte(OCCUPANCY);
+            out.writeByte(-3);
+            assertTrue(sendAndAwaitClose(node, "bad-count", occupancy.toByteArray())
+                    .contains("lost connection from bad-count: Bad ward count -3"));
+
+            assertEquals(0, beds.getOccupiedBeds(Ward.values()[0]));
+        }
+    }
+}
@@ -0,0 +1,34 @@
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FenwickTreeTest {
+    @Test
+    void prefixAndRangeSumsMatchAPlainArrayAsItGrows() {
+        Random random = new Random(11);
+        FenwickTree tree = new FenwickTree(4);
+        long[] values = new long[500];
+        for (int step = 0; step < 5_000; step++) {
+            int index = random.nextInt(values.length);
+            long delta = random.nextInt(201) - 100;
+            tree.add(index, delta);
+            values[index] += delta;
+
+            int from = random.nextInt(values.length);
+            int to = from + random.nextInt(values.length - from);
+            long expected = 0;
+            for (int i = from; i <= to; i++) {
+                expected += values[i];
+            }
+            assertEquals(expected, tree.rangeSum(from, to));
+            assertEquals(values[index], tree.get(index));
+        }
+        long total = 0;
+        for (long value : values) {
+            total += value;
+        }
+        assertEquals(total, tree.prefixSum(Integer.MAX_VALUE - 1));
+    }
+}
@@ -0,0 +1,78 @@
+
+import java.util.BitSet;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FreeBedIndexTest {
+    @Test
+    void allocatesLowestFreeSlotAcrossWords() {
+        FreeBedIndex index = new FreeBedIndex(130);
+        for (int slot = 0; slot < 130; slot++) {
+            assertEquals(slot, index.allocate());
+        }
+        assertEquals(-1, index.allocate());
+        assertTrue(index.release(127));
+        assertTrue(index.release(64));
+        assertFalse(index.release(64));
+        assertEquals(64, index.allocate());
+        assertEquals(127, index.allocate());
+    }
+
+    @Test
+    void claimAndBatchesMatchABitSet() {
+        Random random = new Random(5);
+        int capacity = 5_000;
+        FreeBedIndex index = new FreeBedIndex(capacity);
+        BitSet taken = new BitSet(capacity);
+        int[] slots = new int[64];
+        for (int step = 0; step < 20_000; step++) {
+            switch (random.nextInt(4)) {
+                case 0: {
+                    int expected = taken.nextClearBit(0);
+                    assertEquals(expected < capacity ? expected : -1, index.allocate());
+                    if (expected < capacity) {
+                        taken.set(expected);
+                    }
+                    break;
+                }
+                case 1: {
+                    int slot = random.nextInt(capacity + 10);
+                    assertEquals(slot < capacity && !taken.get(slot), index.claim(slot));
+                    if (slot < capacity) {
+                        taken.set(slot);
+                    }
+                    break;
+                }
+                case 2: {
+                    int count = random.nextInt(slots.length);
+                    int claimed = index.allocate(slots, count);
+                    assertEquals(Math.min(count, capacity - taken.cardinality()), claimed);
+                    for (int i = 0; i < claimed; i++) {
+                        assertFalse(taken.get(slots[i]));
+                        taken.set(slots[i]);
+                    }
+                    break;
+                }
+                default: {
+                    int count = random.nextInt(slots.length);
+                    int expected = 0;
+                    BitSet freed = new BitSet();
+                    for (int i = 0; i < count; i++) {
+                        slots[i] = random.nextInt(capacity);
+                        if (taken.get(slots[i]) && !freed.get(slots[i])) {
+                            freed.set(slots[i]);
+                            expected++;
+                        }
+                    }
+                    assertEquals(expected, index.release(slots, count));
+                    taken.andNot(freed);
+                }
+            }
+        }
+        for (int slot = 0; slot < capacity; slot++) {
+            assertEquals(!taken.get(slot), index.isFree(slot));
+        }
+    }
+}
@@ -0,0 +1,37 @@
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntHashIndexTest {
+    @Test
+    void matchesAHashMapThroughGrowth() {
+        Random random = new Random(3);
+        IntHashIndex index = new IntHashIndex(4);
+        Map<Integer, Integer> model = new HashMap<>();
+        for (int i = 0; i < 50_000; i++) {
+            int key = random.nextBoolean() ? random.nextInt(10_000) : random.nextInt();
+            if (key == Integer.MIN_VALUE) {
+                continue;
+            }
+            int value = random.nextInt(Integer.MAX_VALUE);
+            Integer previous = model.put(key, value);
+            assertEquals(previous == null ? IntHashIndex.NOT_FOUND : previous, index.put(key, value));
+        }
+        assertEquals(model.size(), index.size());
+        for (Map.Entry<Integer, Integer> entry : model.entrySet()) {
+            assertEquals(entry.getValue(), index.get(entry.getKey()));
+        }
+        assertEquals(model.containsKey(-5), index.containsKey(-5));
+    }
+
+    @Test
+    void rejectsTheReservedKey() {
+        IntHashIndex index = new IntHashIndex(1);
+        assertEquals(IntHashIndex.NOT_FOUND, index.get(42));
+        assertThrows(IllegalArgumentException.class, () -> index.put(Integer.MIN_VALUE, 1));
+    }
+}
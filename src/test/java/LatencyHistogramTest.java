@@ -0,0 +1,57 @@
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+    @Test
+    void bucketsAreExactBelow32AndWithinThreePercentAbove() {
+        for (long value = 0; value < 32; value++) {
+            assertEquals(value, LatencyHistogram.bucketValue(LatencyHistogram.bucketIndex(value)));
+        }
+        Random random = new Random(9);
+        for (int i = 0; i < 100_000; i++) {
+            long value = 32 + (random.nextLong() >>> (24 + random.nextInt(32)));
+            long reported = LatencyHistogram.bucketValue(LatencyHistogram.bucketIndex(value));
+            assertEquals(value, reported, value * 0.0315, "value " + value);
+        }
+        assertEquals(0, LatencyHistogram.bucketIndex(-5));
+    }
+
+    @Test
+    void clampsFromTwoToTheFortyOneNanos() {
+        int last = LatencyHistogram.bucketIndex(Long.MAX_VALUE);
+        assertEquals(last, LatencyHistogram.bucketIndex(1L << 41));
+        assertTrue(LatencyHistogram.bucketIndex(1L << 40) < last);
+        assertEquals(1L << 40, LatencyHistogram.bucketValue(LatencyHistogram.bucketIndex(1L << 40)),
+                (1L << 40) * 0.03);
+    }
+
+    @Test
+    void percentilesFollowRecordedValues() {
+        LatencyHistogram histogram = MetricsRegistry.INSTANCE.histogram("test.percentiles");
+        long[] values = new long[10_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 1_000 + i * 10L;
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        assertEquals(values.length, histogram.getCount());
+        assertEquals(values[values.length - 1], histogram.getMax());
+        assertEquals(values[4_999], histogram.getPercentile(50), values[4_999] * 0.0315);
+        assertEquals(values[9_899], histogram.getPercentile(99), values[9_899] * 0.0315);
+        assertEquals(histogram.getMax(), histogram.getPercentile(100));
+    }
+
+    @Test
+    void timersSampleOneCallInSampleEvery() {
+        LatencyHistogram histogram = MetricsRegistry.INSTANCE.histogram("test.sampled", 8);
+        for (int i = 0; i < 800; i++) {
+            histogram.stopTimer(histogram.startTimer());
+        }
+        assertEquals(100, histogram.getCount());
+        assertThrows(IllegalArgumentException.class, () -> MetricsRegistry.INSTANCE.histogram("test.bad", 3));
+    }
+}
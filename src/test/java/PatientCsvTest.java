@@ -0,0 +1,85 @@
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PatientCsvTest {
+    @TempDir
+    Path dir;
+
+    private PatientCsvLoader.LoadResult load(String... lines) throws IOException {
+        Path file = dir.resolve("patients.csv");
+        Files.write(file, (PatientCsvWriter.HEADER + "\n" + String.join("\n", lines) + "\n")
+                .getBytes(StandardCharsets.UTF_8));
+        return new PatientCsvLoader().load(file);
+    }
+
+    @Test
+    void namesSurviveAWriteAndLoad() throws IOException {
+        String[] names = {"O'Brien, Pat", "Jo \"JJ\" Smith", " Leading Space", "Line\nBreak", "", "Plain Name"};
+        Patient[] patients = new Patient[names.length];
+        for (int i = 0; i < names.length; i++) {
+            patients[i] = new Patient(i + 1, names[i], 30 + i, Ward.ICU, i + 1, 19_000 + i,
+                    StandardBillingPolicy.INSTANCE);
+        }
+        patients[2].setDischargeEpochDay(19_010);
+        Path file = dir.resolve("out.csv");
+        PatientCsvWriter.write(file, List.of(patients));
+
+        PatientCsvLoader.LoadResult result = new PatientCsvLoader().load(file);
+
+        assertEquals(0, result.getSkippedLines());
+        assertEquals(names.length, result.getPatients().size());
+        for (int i = 0; i < names.length; i++) {
+            Patient loaded = result.getPatients().get(i);
+            String expected = names[i].replace('\n', ' ');
+            assertEquals(expected, loaded.getName());
+            assertEquals(patients[i].getAge(), loaded.getAge());
+            assertEquals(patients[i].getAdmitEpochDay(), loaded.getAdmitEpochDay());
+            assertEquals(patients[i].getDischargeEpochDay(), loaded.getDischargeEpochDay());
+        }
+    }
+
+    @Test
+    void skipsLinesWithOverflowingNumbers() throws IOException {
+        PatientCsvLoader.LoadResult result = load(
+                "2147483647,Max Id,40,ICU,1,2024-01-02,",
+                "2147483648,Too Big,40,ICU,1,2024-01-02,",
+                "5,Huge Age,99999999999,ICU,1,2024-01-02,",
+                "6,Huge Bed,40,ICU,4294967297,2024-01-02,");
+
+        assertEquals(3, result.getSkippedLines());
+        assertEquals(1, result.getPatients().size());
+        assertEquals(Integer.MAX_VALUE, result.getPatients().get(0).getId());
+    }
+
+    @Test
+    void skipsLinesWithBrokenQuotes() throws IOException {
+        PatientCsvLoader.LoadResult result = load(
+                "1,\"Unclosed,40,ICU,1,2024-01-02,",
+                "2,\"Closed\" extra,40,ICU,1,2024-01-02,",
+                "3, \"Spaced, Out\" ,40,GENERAL,2,2024-01-02,2024-01-05");
+
+        assertEquals(2, result.getSkippedLines());
+        assertEquals("Spaced, Out", result.getPatients().get(0).getName());
+    }
+
+    @Test
+    void refusesToConvertAFileWithSkippedLines() throws IOException {
+        Path csv = dir.resolve("in.csv");
+        Files.write(csv, (PatientCsvWriter.HEADER + "\n1,Ann,40,ICU,1,2024-01-02,\nbroken\n")
+                .getBytes(StandardCharsets.UTF_8));
+        Path snapshot = dir.resolve("out.snap");
+
+        IOException e = assertThrows(IOException.class, () -> PatientSnapshot.fromCsv(csv, snapshot));
+        assertTrue(e.getMessage().startsWith("1 malformed line(s)"), e.getMessage());
+        assertFalse(Files.exists(snapshot));
+        assertThrows(IOException.class, () -> PatientSnapshot.fromCsv(csv, csv));
+    }
+}
@@ -0,0 +1,151 @@
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PatientJournalTest {
+    @TempDir
+    Path dir;
+
+    private Path journalFile() {
+        return dir.resolve("patients.journal");
+    }
+
+    /**
+     * Journals count admissions and returns the end offset of each record.
+     */
+    private long[] writeAdmissions(int count) throws IOException {
+        long[] ends = new long[count];
+        try (PatientJournal journal = new PatientJournal(journalFile(), 1, 60_000)) {
+            for (int i = 0; i < count; i++) {
+                journal.recordAdmission(new Patient(i + 1, "Patient " + i, 40, Ward.GENERAL, i + 1, 19_000,
+                        StandardBillingPolicy.INSTANCE));
+                ends[i] = Files.size(journalFile());
+            }
+        }
+        return ends;
+    }
+
+    private List<Integer> replay() throws IOException {
+        List<Integer> ids = new ArrayList<>();
+        try (PatientJournal journal = new PatientJournal(journalFile(), 1, 60_000)) {
+            journal.replay(new PatientJournal.ReplayHandler() {
+                @Override
+                public void onAdmit(int id, String name, int age, Ward ward, int bedNo, LocalDate admitDate) {
+                    ids.add(id);
+                }
+
+                @Override
+                public void onDischarge(int id, LocalDate dischargeDate) {
+                }
+            });
+        }
+        return ids;
+    }
+
+    private void flipByte(long offset) throws IOException {
+        byte[] bytes = Files.readAllBytes(journalFile());
+        bytes[(int) offset] ^= 0x5A;
+        Files.write(journalFile(), bytes);
+    }
+
+    private long backups() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(f -> f.getFileName().toString().endsWith(".bak")).count();
+        }
+    }
+
+    @Test
+    void replaysEveryIntactRecord() throws IOException {
+        writeAdmissions(5);
+        assertEquals(List.of(1, 2, 3, 4, 5), replay());
+        assertEquals(0, backups());
+    }
+
+    @Test
+    void truncatesATornFinalRecordQuietly() throws IOException {
+        long[] ends = writeAdmissions(4);
+        byte[] bytes = Files.readAllBytes(journalFile());
+        Files.write(journalFile(), java.util.Arrays.copyOf(bytes, (int) ends[3] - 5));
+
+        assertEquals(List.of(1, 2, 3), replay());
+        assertEquals(ends[2], Files.size(journalFile()));
+        assertEquals(0, backups());
+    }
+
+    @Test
+    void treatsABadChecksumOnTheFinalRecordAsTorn() throws IOException {
+        long[] ends = writeAdmissions(4);
+        flipByte(ends[3] - 8);
+
+        assertEquals(List.of(1, 2, 3), replay());
+        assertEquals(0, backups());
+    }
+
+    @Test
+    void keepsACopyWhenARecordMidFileIsCorrupt() throws IOException {
+        long[] ends = writeAdmissions(6);
+        byte[] original = Files.readAllBytes(journalFile());
+        flipByte(ends[1] + 10);
+
+        assertEquals(List.of(1, 2), replay());
+        assertEquals(ends[1], Files.size(journalFile()));
+        assertEquals(1, backups());
+        try (Stream<Path> files = Files.list(dir)) {
+            Path copy = files.filter(f -> f.getFileName().toString().endsWith(".bak")).findFirst().get();
+            assertEquals(original.length, Files.size(copy));
+        }
+    }
+
+    @Test
+    void treatsAZeroFilledTailAsTorn() throws IOException {
+        long[] ends = writeAdmissions(2);
+        byte[] bytes = java.util.Arrays.copyOf(Files.readAllBytes(journalFile()), (int) ends[1] + 4096);
+        Files.write(journalFile(), bytes);
+
+        assertEquals(List.of(1, 2), replay());
+        assertEquals(ends[1], Files.size(journalFile()));
+        assertEquals(0, backups());
+    }
+
+    @Test
+    void skipsAReplayedAdmissionWhoseBedIsTakenInAFullWard() throws IOException {
+        try (PatientJournal journal = new PatientJournal(journalFile(), 1, 60_000)) {
+            journal.recordAdmission(new Patient(1, "First", 40, Ward.ICU, 1, 19_000, StandardBillingPolicy.INSTANCE));
+            journal.recordAdmission(new Patient(2, "Second", 50, Ward.ICU, 1, 19_001, StandardBillingPolicy.INSTANCE));
+            Patient second = new Patient(2, "Second", 50, Ward.ICU, 1, 19_001, StandardBillingPolicy.INSTANCE);
+            second.setDischargeEpochDay(19_005);
+            journal.recordDischarge(second);
+        }
+
+        Map<Ward, Integer> capacity = new EnumMap<>(Ward.class);
+        for (Ward ward : Ward.values()) {
+            capacity.put(ward, 1);
+        }
+        BedManager beds = new BedManager(capacity);
+        PatientRepository repository = new PatientRepository();
+        JournalRecovery recovery = new JournalRecovery(repository, beds, ward -> StandardBillingPolicy.INSTANCE, 1);
+        try (PatientJournal journal = new PatientJournal(journalFile(), 1, 60_000)) {
+            assertEquals(3, journal.replay(recovery));
+        }
+
+        assertEquals(1, recovery.getSkipped());
+        assertEquals(3, recovery.getNextPatientId());
+        assertEquals(1, repository.size());
+        assertTrue(repository.findById(1).isAdmitted());
+        assertNull(repository.findById(2));
+        // The discharge of the skipped patient must not free the first patient's bed
+        assertEquals(1, beds.getOccupiedBeds(Ward.ICU));
+        assertFalse(beds.isBedFree(Ward.ICU, 1));
+    }
+}
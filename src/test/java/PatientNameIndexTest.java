@@ -0,0 +1,98 @@
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PatientNameIndexTest {
+    private final PatientColumns columns = new PatientColumns(16);
+    private final PatientNameIndex index = new PatientNameIndex(columns);
+
+    private void add(String... names) {
+        for (String name : names) {
+            int row = columns.append(columns.size() + 1, name, 40, Ward.GENERAL, 1, 19_000, PatientColumns.NO_DATE);
+            index.add(row, name);
+        }
+    }
+
+    private int[] search(String query, boolean fuzzy) {
+        PatientPage page = index.search(query, fuzzy, PatientFilter.ALL, PatientPage.FIRST, 100);
+        assertFalse(page.hasMore());
+        int[] rows = new int[page.size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = page.getRow(i);
+        }
+        return rows;
+    }
+
+    @Test
+    void prefixQueryMatchesEveryTermInAnyOrder() {
+        add("John Smith", "Jane Smithers", "Johnny Appleseed", "Mary-Jane Smith");
+        assertArrayEquals(new int[] {0, 1, 3}, search("smi", false));
+        assertArrayEquals(new int[] {0, 2}, search("john", false));
+        assertArrayEquals(new int[] {1, 3}, search("smith jane", false));
+        assertArrayEquals(new int[0], search("smith johnny", false));
+        assertArrayEquals(new int[0], search("  ", false));
+    }
+
+    @Test
+    void foldsCaseAndAccents() {
+        add("José Álvarez", "JOSE ALVAREZ", "Zoë Brontë");
+        assertArrayEquals(new int[] {0, 1}, search("jose alvarez", false));
+        assertArrayEquals(new int[] {0, 1}, search("JOSÉ", false));
+        assertArrayEquals(new int[] {2}, search("zoe bronte", false));
+    }
+
+    @Test
+    void fuzzyQueryAllowsTyposByLength() {
+        add("John Smith", "Jon Smyth", "Anna Schmidt", "Al Li");
+        assertArrayEquals(new int[] {0}, search("smiht", true));
+        assertArrayEquals(new int[] {0, 1}, search("smith", true));
+        assertArrayEquals(new int[] {0, 1}, search("jhon", true));
+        assertArrayEquals(new int[] {2}, search("schmit", true));
+        // Two letters allow no typo
+        assertArrayEquals(new int[0], search("lo", true));
+        assertArrayEquals(new int[] {3}, search("li", true));
+    }
+
+    @Test
+    void editDistanceCountsSwapsAsOneEdit() {
+        assertTrue(PatientNameIndex.withinEdits("smith", "smiht", 1));
+        assertTrue(PatientNameIndex.withinEdits("smith", "smyth", 1));
+        assertFalse(PatientNameIndex.withinEdits("smith", "smyht", 1));
+        assertTrue(PatientNameIndex.withinEdits("smith", "smyht", 2));
+        assertEquals(0, PatientNameIndex.maxEdits("li"));
+        assertEquals(1, PatientNameIndex.maxEdits("smith"));
+        assertEquals(2, PatientNameIndex.maxEdits("johnson"));
+    }
+
+    @Test
+    void pagesResumeFromTheCursorAcrossSkipEntries() {
+        for (int i = 0; i < 1_000; i++) {
+            add(i % 3 == 0 ? "Ward Patient " + i : "Other Person " + i);
+        }
+        int seen = 0;
+        int lastRow = -1;
+        long cursor = PatientPage.FIRST;
+        while (cursor != PatientPage.END) {
+            PatientPage page = index.search("ward patient", false, PatientFilter.ALL, cursor, 50);
+            for (int i = 0; i < page.size(); i++) {
+                assertTrue(page.getRow(i) > lastRow);
+                assertEquals(0, page.getRow(i) % 3);
+                lastRow = page.getRow(i);
+                seen++;
+            }
+            cursor = page.getNextCursor();
+        }
+        assertEquals(334, seen);
+    }
+
+    @Test
+    void appliesTheFilter() {
+        add("Ann Lee", "Ann Lee");
+        columns.setDischargeDay(1, 19_005);
+        PatientFilter admitted = PatientFilter.ALL.withStatus(PatientFilter.Status.ADMITTED);
+        PatientPage page = index.search("ann", false, admitted, PatientPage.FIRST, 10);
+        assertEquals(1, page.size());
+        assertEquals(0, page.getRow(0));
+    }
+}
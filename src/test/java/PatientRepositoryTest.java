@@ -0,0 +1,57 @@
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PatientRepositoryTest {
+    private static final int DAY = 20_000;
+
+    private static List<Integer> ids(PatientRepository repository, PatientPage page) {
+        List<Integer> ids = new ArrayList<>();
+        PatientColumns.View view = repository.getColumns().view();
+        for (int i = 0; i < page.size(); i++) {
+            view.moveTo(page.getRow(i));
+            ids.add(view.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    void staysPageStaysPutWhileStaysComplete() {
+        PatientRepository repository = new PatientRepository();
+        for (int id = 1; id <= 7; id++) {
+            repository.add(new Patient(id, "Patient " + id, 50, Ward.GENERAL, id, DAY + id,
+                    StandardBillingPolicy.INSTANCE));
+            if (id % 2 == 0) {
+                repository.discharge(id, DAY + id + 1);
+            }
+        }
+
+        List<Integer> seen = new ArrayList<>();
+        PatientPage page = repository.findStays(Ward.GENERAL, DAY, DAY + 30, PatientPage.FIRST, 3);
+        seen.addAll(ids(repository, page));
+        assertEquals(List.of(1, 2, 3), seen);
+
+        // Moves patient 5 from the admitted index to the stay index between pages
+        repository.discharge(5, DAY + 9);
+        while (page.hasMore()) {
+            page = repository.findStays(Ward.GENERAL, DAY, DAY + 30, page.getNextCursor(), 3);
+            seen.addAll(ids(repository, page));
+        }
+        assertEquals(List.of(1, 2, 3, 4, 5, 6, 7), seen);
+    }
+
+    @Test
+    void staysBeforeTheRangeAreLeftOut() {
+        PatientRepository repository = new PatientRepository();
+        repository.add(new Patient(1, "Early", 50, Ward.ICU, 1, DAY, StandardBillingPolicy.INSTANCE));
+        repository.discharge(1, DAY + 2);
+        repository.add(new Patient(2, "Late", 50, Ward.ICU, 1, DAY + 5, StandardBillingPolicy.INSTANCE));
+
+        PatientPage page = repository.findStays(Ward.ICU, DAY + 3, DAY + 10, PatientPage.FIRST, 10);
+        assertEquals(List.of(2), ids(repository, page));
+        assertFalse(page.hasMore());
+    }
+}
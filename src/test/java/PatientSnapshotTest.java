@@ -0,0 +1,117 @@
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PatientSnapshotTest {
+    // Header: magic, version, rowCount, nameBytesLength, then one long offset per column
+    private static final int WARD_OFFSET_FIELD = 16 + 2 * Long.BYTES;
+    private static final int NAME_OFFSET_FIELD = 16 + 6 * Long.BYTES;
+
+    @TempDir
+    Path dir;
+
+    private static List<Patient> patients() {
+        Patient admitted = new Patient(7, "Zoë Ångström", 34, Ward.ICU, 3, 20_100, StandardBillingPolicy.INSTANCE);
+        Patient discharged = new Patient(9, "O'Brien, Pat", 71, Ward.PRIVATE, 1, 20_000,
+                StandardBillingPolicy.INSTANCE);
+        discharged.setDischargeEpochDay(20_012);
+        Patient unnamed = new Patient(12, "", 5, Ward.GENERAL, 40, 20_050, StandardBillingPolicy.INSTANCE);
+        unnamed.setDischargeEpochDay(20_051);
+        return Arrays.asList(admitted, discharged, unnamed);
+    }
+
+    private Path writeSnapshot() throws IOException {
+        Path file = dir.resolve("patients.snap");
+        PatientSnapshot.write(file, patients());
+        return file;
+    }
+
+    private static ByteBuffer read(Path file) throws IOException {
+        return ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Test
+    void roundTripsEveryField() throws IOException {
+        Path file = writeSnapshot();
+        List<Patient> expected = patients();
+
+        try (PatientSnapshot snapshot = PatientSnapshot.open(file)) {
+            assertEquals(expected.size(), snapshot.size());
+            for (int row = 0; row < expected.size(); row++) {
+                Patient patient = expected.get(row);
+                assertEquals(patient.getId(), snapshot.getId(row));
+                assertEquals(patient.getName(), snapshot.getName(row));
+                assertEquals(patient.getAge(), snapshot.getAge(row));
+                assertEquals(patient.getWard(), snapshot.getWard(row));
+                assertEquals(patient.getBedNumber(), snapshot.getBedNumber(row));
+                assertEquals(patient.getAdmitEpochDay(), snapshot.getAdmitEpochDay(row));
+                assertEquals(patient.getDischargeEpochDay(), snapshot.getDischargeEpochDay(row));
+            }
+            assertEquals(PatientSnapshot.NO_DATE, snapshot.getDischargeEpochDay(0));
+            assertEquals(expected.get(1).getName(), snapshot.toPatients().get(1).getName());
+        }
+    }
+
+    @Test
+    void writesTheColumnStoreLikeTheCollection() throws IOException {
+        PatientColumns columns = new PatientColumns(4);
+        for (Patient patient : patients()) {
+            columns.append(patient);
+        }
+        Path fromColumns = dir.resolve("columns.snap");
+        PatientSnapshot.write(fromColumns, columns);
+
+        assertArrayEquals(Files.readAllBytes(writeSnapshot()), Files.readAllBytes(fromColumns));
+    }
+
+    @Test
+    void refusesATruncatedFile() throws IOException {
+        Path file = writeSnapshot();
+        byte[] bytes = Files.readAllBytes(file);
+        for (int length : new int[] {0, 20, bytes.length / 2, bytes.length - 1}) {
+            Files.write(file, Arrays.copyOf(bytes, length));
+            assertThrows(IOException.class, () -> PatientSnapshot.open(file).close(), "length " + length);
+        }
+    }
+
+    @Test
+    void refusesABadWardByte() throws IOException {
+        Path file = writeSnapshot();
+        ByteBuffer data = read(file);
+        data.put((int) data.getLong(WARD_OFFSET_FIELD) + 1, (byte) 99);
+        Files.write(file, data.array());
+
+        IOException e = assertThrows(IOException.class, () -> PatientSnapshot.open(file).close());
+        assertTrue(e.getMessage().contains("Bad ward 99"), e.getMessage());
+    }
+
+    @Test
+    void refusesABadNameOffset() throws IOException {
+        Path file = writeSnapshot();
+        ByteBuffer data = read(file);
+        data.putInt((int) data.getLong(NAME_OFFSET_FIELD) + Integer.BYTES, 1_000_000);
+        Files.write(file, data.array());
+
+        IOException e = assertThrows(IOException.class, () -> PatientSnapshot.open(file).close());
+        assertTrue(e.getMessage().contains("Bad name offset"), e.getMessage());
+    }
+
+    @Test
+    void refusesAHugeRowCount() throws IOException {
+        Path file = writeSnapshot();
+        ByteBuffer data = read(file);
+        data.putInt(8, Integer.MAX_VALUE);
+        Files.write(file, data.array());
+
+        assertThrows(IOException.class, () -> PatientSnapshot.open(file).close());
+    }
+}
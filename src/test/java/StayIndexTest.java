@@ -0,0 +1,77 @@
+
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StayIndexTest {
+    private static int[] sorted(IntList rows) {
+        int[] array = rows.toArray();
+        Arrays.sort(array);
+        return array;
+    }
+
+    @Test
+    void findsStaysOverlappingHalfOpenRanges() {
+        StayIndex index = new StayIndex();
+        index.add(0, 100, 105);
+        index.add(1, 103, 104);
+        index.add(2, 110, 111);
+
+        IntList found = new IntList();
+        index.findOverlapping(104, 110, found);
+        assertArrayEquals(new int[] {0}, sorted(found));
+
+        found.clear();
+        index.findOverlapping(105, 110, found);
+        assertEquals(0, found.size());
+
+        found.clear();
+        index.findOverlapping(90, 200, found);
+        assertArrayEquals(new int[] {0, 1, 2}, sorted(found));
+        assertEquals(3, index.size());
+
+        found.clear();
+        index.findOverlapping(90, 200, 1, found);
+        assertArrayEquals(new int[] {1, 2}, sorted(found));
+    }
+
+    @Test
+    void matchesABruteForceScanAcrossRebasesAndGrowth() {
+        Random random = new Random(17);
+        StayIndex index = new StayIndex();
+        int n = 3_000;
+        int[] starts = new int[n];
+        int[] ends = new int[n];
+        for (int row = 0; row < n; row++) {
+            // Start days far apart in both directions force the index to rebase and grow
+            starts[row] = 18_000 + random.nextInt(4_000) - (row % 500 == 0 ? 3_000 : 0);
+            ends[row] = starts[row] + 1 + random.nextInt(30);
+            index.add(row, starts[row], ends[row]);
+        }
+
+        IntList found = new IntList();
+        for (int query = 0; query < 500; query++) {
+            int from = 14_000 + random.nextInt(9_000);
+            int to = from + 1 + random.nextInt(90);
+            found.clear();
+            index.findOverlapping(from, to, found);
+
+            IntList expected = new IntList();
+            for (int row = 0; row < n; row++) {
+                if (starts[row] < to && ends[row] > from) {
+                    expected.add(row);
+                }
+            }
+            assertArrayEquals(expected.toArray(), sorted(found), "query " + from + ".." + to);
+        }
+    }
+
+    @Test
+    void emptyIndexFindsNothing() {
+        IntList found = new IntList();
+        new StayIndex().findOverlapping(0, Integer.MAX_VALUE, found);
+        assertTrue(found.isEmpty());
+    }
+}
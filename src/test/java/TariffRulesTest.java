@@ -0,0 +1,55 @@
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.time.LocalDate;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TariffRulesTest {
+    private static TariffRules parse(String text) throws IOException {
+        return TariffRules.parse(new BufferedReader(new StringReader(text)), "tariffs.cfg");
+    }
+
+    private static String error(String text) {
+        return assertThrows(IOException.class, () -> parse(text)).getMessage();
+    }
+
+    @Test
+    void compilesBandsDiscountsAndAssignments() throws IOException {
+        TariffRules rules = parse("policy LongStay\n"
+                + "band 1-3 1.0\n"
+                + "band 4+ 0.5   # half price from day 4\n"
+                + "discount age 60+ 100%\n"
+                + "assign PRIVATE LongStay\n");
+
+        RuleBasedBillingPolicy policy = rules.getPolicy("LongStay");
+        assertSame(policy, rules.policyFor(Ward.PRIVATE));
+        assertNull(rules.policyFor(Ward.ICU));
+        assertEquals(400.0, policy.computeTotal(100.0, 5), 1e-9);
+
+        Patient senior = new Patient(1, "Senior", 70, Ward.PRIVATE, 1, LocalDate.of(2026, 1, 1), policy);
+        assertEquals(0.0, policy.computeTotal(senior, 100.0, 5), 1e-9);
+    }
+
+    @Test
+    void rejectsADiscountOverOneHundredPercent() {
+        String message = error("policy Generous\ndiscount age 0-12 150\n");
+        assertTrue(message.contains("line 2") && message.contains("discount over 100%"), message);
+    }
+
+    @Test
+    void rejectsABandStartingAtDayZero() {
+        String message = error("policy Free\nband 0-2 0.0\n");
+        assertTrue(message.contains("line 2") && message.contains("day bands start at day 1"), message);
+        assertFalse(message.contains("overlapping"), message);
+
+        assertTrue(error("policy Free\nband 0+ 0.0\n").contains("day bands start at day 1"));
+    }
+
+    @Test
+    void stillReportsOverlappingBands() {
+        assertTrue(error("policy Twice\nband 1-5 1.0\nband 3-8 0.9\n").contains("overlapping day bands"));
+    }
+}